@@ -1,5 +1,6 @@
 package com.example.aws.s3.config;
 
+import com.amazonaws.ClientConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -11,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
     private AmazonS3 amazonS3 = null;
     private String endpoint = null;
     private String bucketName = null;
+    private int maxConnections = ClientConfiguration.DEFAULT_MAX_CONNECTIONS;
 
     public AwsS3ClientBuilder(AmazonS3 amazonS3, String endpoint, String bucketName) {
         this.amazonS3 = amazonS3;
@@ -18,6 +20,14 @@ import lombok.extern.slf4j.Slf4j;
         this.bucketName = bucketName;
     }
 
+    /**
+     * @param maxConnections the connection pool size of the client, parallel transfers use at most this many connections
+     */
+    public AwsS3ClientBuilder(AmazonS3 amazonS3, String endpoint, String bucketName, int maxConnections) {
+        this(amazonS3, endpoint, bucketName);
+        this.maxConnections = maxConnections;
+    }
+
     private String massageEndpoint(String endpoint, String bucketName) {
         if (endpoint.endsWith(SUFFIX) && endpoint.contains(bucketName)) {
             return endpoint;
@@ -42,7 +42,7 @@ public class AwsS3ClientProvider extends AbstractAwsS3ClientProvider{
         }
         AmazonS3 amazonS3= AmazonS3ClientBuilder.standard().withClientConfiguration(clientConfiguration).withRegion(config.getRegion())
                 .withCredentials(this.awsCredentialsProvider(config.getAccessKey(), config.getSecretKey())).build();
-        return new AwsS3ClientBuilder(amazonS3, config.getBaseUrl(), config.getBucketName());
+        return new AwsS3ClientBuilder(amazonS3, config.getBaseUrl(), config.getBucketName(), clientConfiguration.getMaxConnections());
     }
 
     /**
@@ -49,7 +49,7 @@ public class AwsS3DummyClientProvider extends AbstractAwsS3ClientProvider{
                 .withPathStyleAccessEnabled(true).withCredentials(this.awsCredentialsProvider(config.getAccessKey(), config.getSecretKey()));
         builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(localS3StackUrl, config.getRegion()));
         AmazonS3 amazonS3=builder.build();
-        return new AwsS3ClientBuilder(amazonS3, config.getBaseUrl(), config.getBucketName());
+        return new AwsS3ClientBuilder(amazonS3, config.getBaseUrl(), config.getBucketName(), clientConfiguration.getMaxConnections());
     }
 
     /**
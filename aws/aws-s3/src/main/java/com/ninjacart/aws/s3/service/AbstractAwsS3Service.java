@@ -1,21 +1,113 @@
 package com.example.aws.s3.service;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.model.*;
 import com.amazonaws.util.IOUtils;
 import com.example.aws.s3.config.AbstractAwsS3ClientProvider;
 import com.example.aws.s3.config.AwsS3ClientBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 abstract class AbstractAwsS3Service {
 
+    static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_TRANSFER_BUFFERS = 64;
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
     @Autowired protected AbstractAwsS3ClientProvider awsClientProvider;
+    @Value ("${cloud.aws.s3.transfer.partSize:8388608}") private int transferPartSize;
+    @Value ("${cloud.aws.s3.transfer.partsInFlight:4}") private int transferPartsInFlight;
+    @Value ("${cloud.aws.s3.transfer.threads:16}") private int transferThreads;
+    @Value ("${cloud.aws.s3.cache.enabled:false}") private boolean objectCacheEnabled;
+    @Value ("${cloud.aws.s3.cache.directory:#{null}}") private String objectCacheDirectory;
+    @Value ("${cloud.aws.s3.cache.memoryMaxSize:16777216}") private long objectCacheMemoryMaxSize;
+    @Value ("${cloud.aws.s3.cache.memoryMaxObjectSize:65536}") private long objectCacheMemoryMaxObjectSize;
+    @Value ("${cloud.aws.s3.cache.diskMaxSize:1073741824}") private long objectCacheDiskMaxSize;
+    @Value ("${cloud.aws.s3.cache.diskMaxObjectSize:67108864}") private long objectCacheDiskMaxObjectSize;
+    @Value ("${cloud.aws.s3.cache.revalidateAfter:0}") private long objectCacheRevalidateAfter;
+
+    protected ExecutorService transferExecutor;
+    protected PartBufferPool partBufferPool;
+    protected PartBufferPool transferBufferPool;
+    private MultipartUploader multipartUploader;
+    private RangedDownloader rangedDownloader;
+    private S3ObjectCache objectCache;
+    private File objectCacheTempDirectory;
+
+    @PostConstruct
+    void initTransfers() throws IOException {
+        AtomicInteger threadCount = new AtomicInteger();
+        String threadNamePrefix = getClass().getSimpleName() + "-transfer-";
+        transferExecutor = Executors.newFixedThreadPool(Math.max(1, transferThreads), runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        partBufferPool = new PartBufferPool(Math.max(MultipartUploader.MIN_PART_SIZE, transferPartSize), transferThreads);
+        multipartUploader = new MultipartUploader(partBufferPool, transferExecutor, transferPartsInFlight);
+        transferBufferPool = new PartBufferPool(TRANSFER_BUFFER_SIZE, MAX_POOLED_TRANSFER_BUFFERS);
+        rangedDownloader = new RangedDownloader(transferExecutor, partBufferPool.getBufferSize(), transferBufferPool);
+        if (objectCacheEnabled && isObjectCacheSupported()) {
+            File directory;
+            if (objectCacheDirectory != null) {
+                directory = new File(objectCacheDirectory);
+            } else {
+                // a directory of its own, other services and processes on the host keep theirs
+                objectCacheTempDirectory = Files.createTempDirectory("s3-cache-" + getClass().getSimpleName() + "-").toFile();
+                directory = objectCacheTempDirectory;
+            }
+            objectCache = new S3ObjectCache(objectCacheMemoryMaxSize, objectCacheMemoryMaxObjectSize, objectCacheDiskMaxSize,
+                    objectCacheDiskMaxObjectSize, objectCacheRevalidateAfter, directory, transferBufferPool);
+        }
+    }
+
+    /**
+     * The read-through cache of {@link #download(String, String)} and {@link #downloadAsArray(String, String)}, which
+     * also records the hits, misses and bytes served.
+     * @return the cache, {@code null} if {@code cloud.aws.s3.cache.enabled} is not set
+     */
+    public S3ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    @PreDestroy
+    void destroyTransfers() {
+        transferExecutor.shutdown();
+        if (objectCache != null) {
+            objectCache.close();
+            if (objectCacheTempDirectory != null && !objectCacheTempDirectory.delete()) {
+                log.warn("Could not delete cache directory {}", objectCacheTempDirectory);
+            }
+        }
+    }
 
     /**
      * Upload file with mimeType
@@ -33,6 +125,7 @@ abstract class AbstractAwsS3Service {
         metadata.setContentType(mimeType);
         String path = awsS3ClientBuilder.getEndpoint() + massageFilePath(filePath);
         awsS3ClientBuilder.getAmazonS3().putObject(new PutObjectRequest(bucketName, filePath, new ByteArrayInputStream(fileData), metadata).withCannedAcl(CannedAccessControlList.Private));
+        invalidateCachedObject(bucketName, filePath);
         return path;
     }
 
@@ -49,9 +142,80 @@ abstract class AbstractAwsS3Service {
         AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
         String path = awsS3ClientBuilder.getEndpoint() + massageFilePath(filePath);
         awsS3ClientBuilder.getAmazonS3().putObject(new PutObjectRequest(bucketName, filePath, new ByteArrayInputStream(fileData), objectMetadata).withCannedAcl(CannedAccessControlList.Private));
+        invalidateCachedObject(bucketName, filePath);
         return path;
     }
 
+    /**
+     * Upload a stream of unknown length without buffering it on the heap. Streams longer than
+     * {@code cloud.aws.s3.transfer.partSize} are sent as a multipart upload with up to
+     * {@code cloud.aws.s3.transfer.partsInFlight} parts in parallel. The stream is read to its end but not closed.
+     * @param bucketName
+     * @param filePath
+     * @param inputStream
+     * @param mimeType
+     * @return
+     * @throws Exception
+     */
+    public String upload(String bucketName, final String filePath, InputStream inputStream, final String mimeType) throws Exception {
+        return uploadStream(bucketName, filePath, inputStream, null, mimeType);
+    }
+
+    /**
+     * Upload a stream of known length without buffering it on the heap. The length is verified against the stream
+     * and used to grow the part size of objects that would need more than 10000 parts.
+     * @param bucketName
+     * @param filePath
+     * @param inputStream
+     * @param contentLength
+     * @param mimeType
+     * @return
+     * @throws Exception
+     */
+    public String upload(String bucketName, final String filePath, InputStream inputStream, long contentLength, final String mimeType) throws Exception {
+        return uploadStream(bucketName, filePath, inputStream, contentLength, mimeType);
+    }
+
+    private String uploadStream(String bucketName, String filePath, InputStream inputStream, Long contentLength, String mimeType) throws Exception {
+        return uploadStream(bucketName, filePath, inputStream, contentLength, mimeType, isParallelPartUploadSupported());
+    }
+
+    private String uploadStream(String bucketName, String filePath, InputStream inputStream, Long contentLength, String mimeType,
+                                boolean parallelParts) throws Exception {
+        AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(mimeType);
+        String path = awsS3ClientBuilder.getEndpoint() + massageFilePath(filePath);
+        multipartUploader.upload(awsS3ClientBuilder.getAmazonS3(), bucketName, filePath, inputStream, contentLength, metadata,
+                parallelParts);
+        invalidateCachedObject(bucketName, filePath);
+        return path;
+    }
+
+    /**
+     * Whether downloaded objects may be kept in the local object cache.
+     * @return
+     */
+    protected boolean isObjectCacheSupported() {
+        return true;
+    }
+
+    /**
+     * Whether objects may be downloaded as byte ranges in parallel.
+     * @return
+     */
+    protected boolean isRangedDownloadSupported() {
+        return true;
+    }
+
+    /**
+     * Whether the parts of a multipart upload may be sent in parallel.
+     * @return
+     */
+    protected boolean isParallelPartUploadSupported() {
+        return true;
+    }
+
     /**
      * Get presigned url for given path than can expires in expiredIn
      * @param bucketName
@@ -86,6 +250,7 @@ abstract class AbstractAwsS3Service {
         metadata.setContentLength(content.length());
         String path = awsS3ClientBuilder.getEndpoint() + massageFilePath(key);
         awsS3ClientBuilder.getAmazonS3().putObject(bucketName, key, content);
+        invalidateCachedObject(bucketName, key);
         return path;
     }
 
@@ -97,6 +262,31 @@ abstract class AbstractAwsS3Service {
      * @throws Exception
      */
     public byte[] downloadAsArray(String bucketName, final String filePath) throws Exception {
+        if (objectCache != null) {
+            AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+            try {
+                S3ObjectCache.CachedObject cachedObject = objectCache.get(awsS3ClientBuilder.getAmazonS3(), bucketName, filePath);
+                if (!cachedObject.isPassedThrough() || !isRangedDownloadSupported()) {
+                    return cachedObject.toByteArray();
+                }
+                // too large to be cached, fetched as byte ranges over several connections instead
+                cachedObject.abort();
+            } catch (Exception e) {
+                log.error("Error during file download for bucket:{} path:{}", bucketName, filePath);
+                throw new Exception(e);
+            }
+        }
+        if (isRangedDownloadSupported()) {
+            AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+            RangedDownloader.ArrayTarget target = new RangedDownloader.ArrayTarget();
+            try {
+                rangedDownloader.download(awsS3ClientBuilder.getAmazonS3(), bucketName, filePath, awsS3ClientBuilder.getMaxConnections(), target);
+            } catch (Exception e) {
+                log.error("Error during file download for bucket:{} path:{}", bucketName, filePath);
+                throw new Exception(e);
+            }
+            return target.getArray();
+        }
         S3Object s3Object = download(bucketName, filePath);
         byte[] data = IOUtils.toByteArray(s3Object.getObjectContent());
         closeS3Object(s3Object);
@@ -113,6 +303,9 @@ abstract class AbstractAwsS3Service {
     public S3Object download(String bucketName, final String filePath) throws Exception {
         AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
         try {
+            if (objectCache != null) {
+                return objectCache.get(awsS3ClientBuilder.getAmazonS3(), bucketName, filePath).toS3Object(bucketName, filePath);
+            }
             return awsS3ClientBuilder.getAmazonS3().getObject(new GetObjectRequest(bucketName, filePath));
         } catch (Exception e) {
             log.error("Error during file download for bucket:{} path:{}", bucketName, filePath);
@@ -120,14 +313,257 @@ abstract class AbstractAwsS3Service {
         }
     }
 
+    /**
+     * Stream file to an OutputStream, for example to proxy it to a response. The object is copied through a pooled
+     * buffer and closed before this method returns, so memory use does not depend on the object size. The stream is
+     * not closed.
+     * @param bucketName
+     * @param filePath
+     * @param outputStream
+     * @return
+     * @throws Exception
+     */
+    public ObjectMetadata downloadTo(String bucketName, final String filePath, OutputStream outputStream) throws Exception {
+        return downloadTo(bucketName, new GetObjectRequest(bucketName, filePath), outputStream::write);
+    }
+
+    /**
+     * Stream a byte range of file to an OutputStream. The range is inclusive, as for an HTTP Range header.
+     * @param bucketName
+     * @param filePath
+     * @param start
+     * @param end
+     * @param outputStream
+     * @return
+     * @throws Exception
+     */
+    public ObjectMetadata downloadTo(String bucketName, final String filePath, long start, long end, OutputStream outputStream) throws Exception {
+        return downloadTo(bucketName, new GetObjectRequest(bucketName, filePath).withRange(start, end), outputStream::write);
+    }
+
+    /**
+     * Stream file to a channel. The channel is not closed.
+     * @param bucketName
+     * @param filePath
+     * @param channel
+     * @return
+     * @throws Exception
+     */
+    public ObjectMetadata downloadTo(String bucketName, final String filePath, WritableByteChannel channel) throws Exception {
+        return downloadTo(bucketName, new GetObjectRequest(bucketName, filePath), channelSink(channel));
+    }
+
+    /**
+     * Stream a byte range of file to a channel. The range is inclusive, as for an HTTP Range header.
+     * @param bucketName
+     * @param filePath
+     * @param start
+     * @param end
+     * @param channel
+     * @return
+     * @throws Exception
+     */
+    public ObjectMetadata downloadTo(String bucketName, final String filePath, long start, long end, WritableByteChannel channel) throws Exception {
+        return downloadTo(bucketName, new GetObjectRequest(bucketName, filePath).withRange(start, end), channelSink(channel));
+    }
+
+    private ObjectMetadata downloadTo(String bucketName, GetObjectRequest getObjectRequest, TransferSink sink) throws Exception {
+        AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+        byte[] buffer = transferBufferPool.take(TRANSFER_BUFFER_SIZE);
+        S3Object s3Object = null;
+        try {
+            s3Object = awsS3ClientBuilder.getAmazonS3().getObject(getObjectRequest);
+            S3ObjectInputStream inputStream = s3Object.getObjectContent();
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                sink.write(buffer, 0, read);
+            }
+            return s3Object.getObjectMetadata();
+        } catch (Exception e) {
+            if (s3Object != null) {
+                // closing would read the rest of the object first
+                s3Object.getObjectContent().abort();
+            }
+            log.error("Error during file download for bucket:{} path:{}", bucketName, getObjectRequest.getKey());
+            throw new Exception(e);
+        } finally {
+            closeS3Object(s3Object);
+            transferBufferPool.release(buffer);
+        }
+    }
+
+    private static TransferSink channelSink(WritableByteChannel channel) {
+        return (buffer, offset, length) -> {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        };
+    }
+
+    private interface TransferSink {
+        void write(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    /**
+     * Download file to a local file. Objects larger than {@code cloud.aws.s3.transfer.partSize} are fetched as byte
+     * ranges over up to {@code maxConnectionPool} connections and written in place, the file is deleted if the
+     * download fails.
+     * @param bucketName
+     * @param s3FilePath
+     * @param localFilePath
+     * @return
+     * @throws Exception
+     */
     public ObjectMetadata downloadAsFile(String bucketName, String s3FilePath, File localFilePath) throws Exception {
         AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
-        return awsS3ClientBuilder.getAmazonS3().getObject(new GetObjectRequest(bucketName, s3FilePath), localFilePath);
+        if (!isRangedDownloadSupported()) {
+            return awsS3ClientBuilder.getAmazonS3().getObject(new GetObjectRequest(bucketName, s3FilePath), localFilePath);
+        }
+        try (RangedDownloader.FileTarget target = new RangedDownloader.FileTarget(localFilePath)) {
+            return rangedDownloader.download(awsS3ClientBuilder.getAmazonS3(), bucketName, s3FilePath, awsS3ClientBuilder.getMaxConnections(), target);
+        } catch (Exception e) {
+            log.error("Error during file download for bucket:{} path:{}", bucketName, s3FilePath);
+            if (!localFilePath.delete()) {
+                log.warn("Could not delete partially downloaded file {}", localFilePath);
+            }
+            throw new Exception(e);
+        }
     }
 
     public void delete(String bucketName, final String filePath) throws Exception {
         AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
         awsS3ClientBuilder.getAmazonS3().deleteObject(bucketName, filePath);
+        invalidateCachedObject(bucketName, filePath);
+    }
+
+    /**
+     * Delete many files with up to 1000 keys per request. A failing request fails only the keys it contained.
+     * @param bucketName
+     * @param filePaths
+     * @return the outcome of every key, in the order of the keys
+     * @throws Exception
+     */
+    public List<S3KeyResult> deleteAll(String bucketName, Collection<String> filePaths) throws Exception {
+        AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+        List<String> keys = new ArrayList<>(filePaths);
+        List<S3KeyResult> results = new ArrayList<>(keys.size());
+        for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+            List<String> batch = keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()));
+            Map<String, MultiObjectDeleteException.DeleteError> errors = Collections.emptyMap();
+            try {
+                // quiet mode only reports the keys that could not be deleted
+                awsS3ClientBuilder.getAmazonS3().deleteObjects(new DeleteObjectsRequest(bucketName)
+                        .withKeys(batch.toArray(new String[0])).withQuiet(true));
+            } catch (MultiObjectDeleteException e) {
+                errors = new HashMap<>();
+                for (MultiObjectDeleteException.DeleteError error : e.getErrors()) {
+                    errors.put(error.getKey(), error);
+                }
+            } catch (Exception e) {
+                log.error("Error during bulk delete of {} keys for bucket:{}", batch.size(), bucketName, e);
+                for (String key : batch) {
+                    results.add(keyFailure(key, e));
+                }
+                continue;
+            }
+            for (String key : batch) {
+                MultiObjectDeleteException.DeleteError error = errors.get(key);
+                if (error != null) {
+                    results.add(S3KeyResult.failure(key, error.getCode(), error.getMessage()));
+                } else {
+                    invalidateCachedObject(bucketName, key);
+                    results.add(S3KeyResult.success(key, null));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Upload many files with mimeType in parallel, over at most {@code maxConnectionPool} connections of the bucket.
+     * @param bucketName
+     * @param files the content by file path
+     * @param mimeType
+     * @return the outcome of every file, in the iteration order of the map
+     * @throws Exception
+     */
+    public List<S3KeyResult> uploadAll(String bucketName, Map<String, byte[]> files, final String mimeType) throws Exception {
+        return uploadAll(bucketName, files.keySet(), filePath -> upload(bucketName, filePath, files.get(filePath), mimeType));
+    }
+
+    /**
+     * Upload many local files with mimeType in parallel, streaming each of them. The parts of a large file are
+     * uploaded one after another, the files in parallel.
+     * @param bucketName
+     * @param files the local file by file path
+     * @param mimeType
+     * @return the outcome of every file, in the iteration order of the map
+     * @throws Exception
+     */
+    public List<S3KeyResult> uploadAllFiles(String bucketName, Map<String, File> files, final String mimeType) throws Exception {
+        return uploadAll(bucketName, files.keySet(), filePath -> {
+            File file = files.get(filePath);
+            try (InputStream inputStream = new FileInputStream(file)) {
+                // the parts must not wait for transfer threads held by the uploads themselves
+                return uploadStream(bucketName, filePath, inputStream, file.length(), mimeType, false);
+            }
+        });
+    }
+
+    private List<S3KeyResult> uploadAll(String bucketName, Collection<String> filePaths, FileUpload fileUpload) throws Exception {
+        AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+        Semaphore permits = new Semaphore(Math.max(1, Math.min(awsS3ClientBuilder.getMaxConnections(), transferThreads)));
+        List<CompletableFuture<S3KeyResult>> uploads = new ArrayList<>(filePaths.size());
+        for (String filePath : filePaths) {
+            permits.acquire();
+            uploads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return S3KeyResult.success(filePath, fileUpload.upload(filePath));
+                } catch (Exception e) {
+                    log.error("Error during bulk upload for bucket:{} path:{}", bucketName, filePath, e);
+                    return keyFailure(filePath, e);
+                } finally {
+                    permits.release();
+                }
+            }, transferExecutor));
+        }
+        List<S3KeyResult> results = new ArrayList<>(uploads.size());
+        for (CompletableFuture<S3KeyResult> upload : uploads) {
+            results.add(upload.join());
+        }
+        return results;
+    }
+
+    private interface FileUpload {
+        String upload(String filePath) throws Exception;
+    }
+
+    private static S3KeyResult keyFailure(String key, Exception e) {
+        if (e instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) e;
+            return S3KeyResult.failure(key, serviceException.getErrorCode(), serviceException.getErrorMessage());
+        }
+        return S3KeyResult.failure(key, e.getClass().getSimpleName(), e.getMessage());
+    }
+
+    /**
+     * List the objects below a prefix. Pages of up to 1000 objects are requested as the iterator is consumed, so
+     * large prefixes are never held in memory as a whole.
+     * @param bucketName
+     * @param prefix
+     * @return
+     * @throws Exception
+     */
+    public Iterator<S3ObjectSummary> listObjects(String bucketName, String prefix) throws Exception {
+        AwsS3ClientBuilder awsS3ClientBuilder = getConfiguredClient(bucketName);
+        return new ObjectListingIterator(awsS3ClientBuilder.getAmazonS3(), bucketName, prefix);
+    }
+
+    protected void invalidateCachedObject(String bucketName, String filePath) {
+        if (objectCache != null) {
+            objectCache.invalidate(bucketName, filePath);
+        }
     }
 
     protected String massageFilePath(String path) {
@@ -19,4 +19,28 @@ public class AwsS3EncryptionService extends AbstractAwsS3Service {
         return awsS3ClientBuilder;
     }
 
+    /**
+     * The encryption client chains the cipher state from part to part, so parts are uploaded in order.
+     */
+    @Override
+    protected boolean isParallelPartUploadSupported() {
+        return false;
+    }
+
+    /**
+     * Decrypted objects must not be written to the local disk.
+     */
+    @Override
+    protected boolean isObjectCacheSupported() {
+        return false;
+    }
+
+    /**
+     * Ranges of an encrypted object do not line up with the ranges of its plain text.
+     */
+    @Override
+    protected boolean isRangedDownloadSupported() {
+        return false;
+    }
+
 }
@@ -0,0 +1,221 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CannedAccessControlList;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uploads a stream of unknown size without materializing it. The stream is read part by part into pooled buffers,
+ * and every full part is uploaded as a part of a multipart upload while the next one is read. An upload holds at most
+ * {@code partsInFlight} buffers, so its heap use is capped at {@code partsInFlight * partSize} regardless of the
+ * object size. Streams that end within the first part are sent with a single {@code PutObject} request.
+ */
+@Slf4j
+class MultipartUploader {
+
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final int MAX_PARTS = 10000;
+
+    private final PartBufferPool bufferPool;
+    private final Executor executor;
+    private final int partsInFlight;
+
+    MultipartUploader(PartBufferPool bufferPool, Executor executor, int partsInFlight) {
+        this.bufferPool = bufferPool;
+        this.executor = executor;
+        // one buffer is read ahead while the others are uploaded
+        this.partsInFlight = Math.max(2, partsInFlight);
+    }
+
+    /**
+     * @param contentLength
+     *         the length of the stream, {@code null} if it is not known
+     * @param parallel
+     *         {@code false} uploads the parts one after another on the calling thread, as the encryption client
+     *         requires
+     */
+    void upload(AmazonS3 amazonS3, String bucketName, String key, InputStream inputStream, Long contentLength,
+                ObjectMetadata metadata, boolean parallel) throws IOException, InterruptedException {
+        int partSize = partSize(contentLength);
+        byte[] firstPart = bufferPool.take(partSize);
+        int firstPartLength;
+        try {
+            firstPartLength = readFully(inputStream, firstPart);
+        } catch (IOException e) {
+            bufferPool.release(firstPart);
+            throw e;
+        }
+        if (firstPartLength < partSize) {
+            try {
+                checkLength(contentLength, firstPartLength);
+                metadata.setContentLength(firstPartLength);
+                amazonS3.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(firstPart, 0, firstPartLength), metadata)
+                        .withCannedAcl(CannedAccessControlList.Private));
+            } finally {
+                bufferPool.release(firstPart);
+            }
+            return;
+        }
+
+        String uploadId = amazonS3.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key, metadata)
+                .withCannedACL(CannedAccessControlList.Private)).getUploadId();
+        Executor partExecutor = parallel ? executor : Runnable::run;
+        Semaphore freeBuffers = new Semaphore(partsInFlight - 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        byte[] part = firstPart;
+        int partLength = firstPartLength;
+        long uploaded = 0;
+        try {
+            for (int partNumber = 1; ; partNumber++) {
+                rethrow(failure.get());
+                // the next part is read before this one is sent, because the last part has to be flagged
+                freeBuffers.acquire();
+                byte[] nextPart = bufferPool.take(partSize);
+                int nextPartLength;
+                try {
+                    nextPartLength = readFully(inputStream, nextPart);
+                    if (nextPartLength > 0 && partNumber == MAX_PARTS) {
+                        throw new IOException("Stream for '" + bucketName + "/" + key + "' exceeds " + MAX_PARTS + " parts of " + partSize + " bytes");
+                    }
+                } catch (IOException e) {
+                    bufferPool.release(nextPart);
+                    freeBuffers.release();
+                    throw e;
+                }
+                boolean lastPart = nextPartLength == 0;
+                UploadPartRequest uploadPartRequest = new UploadPartRequest().withBucketName(bucketName).withKey(key)
+                        .withUploadId(uploadId).withPartNumber(partNumber).withPartSize(partLength)
+                        .withInputStream(new ByteArrayInputStream(part, 0, partLength)).withLastPart(lastPart);
+                parts.add(uploadPart(amazonS3, uploadPartRequest, part, freeBuffers, failure, aborted, partExecutor));
+                uploaded += partLength;
+                part = null;
+                if (lastPart) {
+                    bufferPool.release(nextPart);
+                    freeBuffers.release();
+                    break;
+                }
+                part = nextPart;
+                partLength = nextPartLength;
+            }
+            checkLength(contentLength, uploaded);
+
+            List<PartETag> partETags = new ArrayList<>(parts.size());
+            for (CompletableFuture<PartETag> uploadedPart : parts) {
+                try {
+                    partETags.add(uploadedPart.join());
+                } catch (CompletionException e) {
+                    rethrow(e.getCause());
+                }
+            }
+            amazonS3.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            abort(amazonS3, bucketName, key, uploadId, parts, aborted);
+            throw e;
+        } finally {
+            if (part != null) {
+                bufferPool.release(part);
+            }
+        }
+    }
+
+    private CompletableFuture<PartETag> uploadPart(AmazonS3 amazonS3, UploadPartRequest uploadPartRequest, byte[] buffer,
+                                                   Semaphore freeBuffers, AtomicReference<Throwable> failure, AtomicBoolean aborted,
+                                                   Executor partExecutor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (aborted.get()) {
+                    throw new CancellationException("Multipart upload " + uploadPartRequest.getUploadId() + " was aborted");
+                }
+                return amazonS3.uploadPart(uploadPartRequest).getPartETag();
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, e);
+                throw e;
+            } finally {
+                bufferPool.release(buffer);
+                freeBuffers.release();
+            }
+        }, partExecutor);
+    }
+
+    /**
+     * Aborts the upload once the running parts completed, parts uploaded after the abort would be kept and billed.
+     * Parts that did not start yet are skipped. Running parts are not cancelled, since a cancelled future completes
+     * while its request is still in progress.
+     */
+    private void abort(AmazonS3 amazonS3, String bucketName, String key, String uploadId, List<CompletableFuture<PartETag>> parts,
+                       AtomicBoolean aborted) {
+        aborted.set(true);
+        // the upload is aborted anyway, so failed parts are ignored
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).handle((result, throwable) -> null).join();
+        try {
+            amazonS3.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+        } catch (RuntimeException e) {
+            log.error("Could not abort multipart upload {} of {}/{}, its parts are kept until a lifecycle rule removes them",
+                    uploadId, bucketName, key, e);
+        }
+    }
+
+    /**
+     * Grows the part size for streams of known length that would otherwise need more parts than S3 allows.
+     */
+    private int partSize(Long contentLength) {
+        int partSize = bufferPool.getBufferSize();
+        if (contentLength != null && contentLength > (long) partSize * MAX_PARTS) {
+            partSize = (int) ((contentLength + MAX_PARTS - 1) / MAX_PARTS);
+        }
+        return partSize;
+    }
+
+    private static void checkLength(Long contentLength, long actualLength) throws IOException {
+        if (contentLength != null && contentLength != actualLength) {
+            throw new IOException("Expected " + contentLength + " bytes but the stream had " + actualLength);
+        }
+    }
+
+    /**
+     * @return the number of bytes read, less than the buffer length only if the stream ended
+     */
+    static int readFully(InputStream inputStream, byte[] buffer) throws IOException {
+        int length = 0;
+        int read;
+        while (length < buffer.length && (read = inputStream.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+
+    private static void rethrow(Throwable throwable) throws IOException {
+        if (throwable == null) {
+            return;
+        }
+        if (throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        }
+        if (throwable instanceof Error) {
+            throw (Error) throwable;
+        }
+        throw new IOException(throwable);
+    }
+}
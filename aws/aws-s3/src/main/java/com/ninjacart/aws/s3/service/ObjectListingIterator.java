@@ -0,0 +1,46 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the objects of a prefix. A {@code ListObjectsV2} page is only requested once the previous page was
+ * consumed, so at most one page of summaries is held and callers that stop early do not list the whole prefix.
+ */
+class ObjectListingIterator implements Iterator<S3ObjectSummary> {
+
+    private final AmazonS3 amazonS3;
+    private final ListObjectsV2Request request;
+    private Iterator<S3ObjectSummary> page = Collections.emptyIterator();
+    private boolean lastPage;
+
+    ObjectListingIterator(AmazonS3 amazonS3, String bucketName, String prefix) {
+        this.amazonS3 = amazonS3;
+        this.request = new ListObjectsV2Request().withBucketName(bucketName).withPrefix(prefix);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!page.hasNext() && !lastPage) {
+            ListObjectsV2Result result = amazonS3.listObjectsV2(request);
+            page = result.getObjectSummaries().iterator();
+            lastPage = !result.isTruncated();
+            request.setContinuationToken(result.getNextContinuationToken());
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public S3ObjectSummary next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+}
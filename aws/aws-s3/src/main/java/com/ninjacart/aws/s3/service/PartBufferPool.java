@@ -0,0 +1,44 @@
+package com.example.aws.s3.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reuses the buffers of transfers, so large transfers do not allocate a new buffer of several megabytes for every
+ * part and streamed downloads do not allocate a copy buffer per call. At most {@code maxPooled} buffers are retained,
+ * buffers of another size are never pooled. The pool does not bound how many buffers are in use, callers limit that
+ * themselves.
+ */
+class PartBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    PartBufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, maxPooled));
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return a pooled buffer if the size matches the pooled buffers and one is free, otherwise a new one
+     */
+    byte[] take(int size) {
+        if (size == bufferSize) {
+            byte[] buffer = buffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        return new byte[size];
+    }
+
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads an object as byte ranges over several connections. The first range is requested right away and its
+ * response tells the length and ETag of the object, so no extra {@code HeadObject} request is needed and objects that
+ * fit into one range take a single request. The remaining ranges are fetched in parallel, each with the ETag as
+ * {@code If-Match} constraint so all ranges belong to the same version of the object, and are written at their
+ * position into a preallocated target. A range that fails while its body is read, or that is shorter than requested,
+ * is fetched again; an object that changed during the download fails it.
+ */
+@Slf4j
+class RangedDownloader {
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_DELAY_MS = 200;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+
+    private final Executor executor;
+    private final long rangeSize;
+    private final PartBufferPool copyBufferPool;
+
+    RangedDownloader(Executor executor, long rangeSize, PartBufferPool copyBufferPool) {
+        this.executor = executor;
+        this.rangeSize = rangeSize;
+        this.copyBufferPool = copyBufferPool;
+    }
+
+    /**
+     * @param parallelism
+     *         the maximum number of ranges fetched at the same time
+     * @return the metadata of the object, with the content length of the whole object
+     */
+    ObjectMetadata download(AmazonS3 amazonS3, String bucketName, String key, int parallelism, Target target) throws IOException, InterruptedException {
+        S3Object firstRange;
+        try {
+            firstRange = amazonS3.getObject(new GetObjectRequest(bucketName, key).withRange(0, rangeSize - 1));
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() != RANGE_NOT_SATISFIABLE) {
+                throw e;
+            }
+            // no range of an empty object is satisfiable
+            ObjectMetadata metadata = amazonS3.getObjectMetadata(bucketName, key);
+            target.allocate(0);
+            return metadata;
+        }
+        ObjectMetadata metadata = firstRange.getObjectMetadata();
+        long length = metadata.getInstanceLength();
+        metadata.setContentLength(length);
+        Download download = new Download(amazonS3, bucketName, key, metadata.getETag(), length, target);
+        try {
+            target.allocate(length);
+        } catch (IOException | RuntimeException e) {
+            abort(firstRange);
+            throw e;
+        }
+
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        int workerCount = Math.min(parallelism, download.ranges - 1);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(CompletableFuture.runAsync(download::fetchRanges, executor));
+        }
+        try {
+            download.copyFirstRange(firstRange);
+            for (CompletableFuture<Void> worker : workers) {
+                worker.join();
+            }
+        } catch (CompletionException e) {
+            download.cancelled.set(true);
+            awaitAll(workers);
+            Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            download.cancelled.set(true);
+            awaitAll(workers);
+            throw e;
+        }
+        return metadata;
+    }
+
+    private static void awaitAll(List<CompletableFuture<Void>> workers) {
+        for (CompletableFuture<Void> worker : workers) {
+            try {
+                worker.join();
+            } catch (RuntimeException e) {
+                // the first failure is reported
+            }
+        }
+    }
+
+    private static void abort(S3Object s3Object) {
+        s3Object.getObjectContent().abort();
+    }
+
+    /**
+     * The state of a single download, shared by its workers.
+     */
+    private class Download {
+        private final AmazonS3 amazonS3;
+        private final String bucketName;
+        private final String key;
+        private final String eTag;
+        private final long length;
+        private final int ranges;
+        private final Target target;
+        private final AtomicInteger nextRange = new AtomicInteger(1);
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+
+        private Download(AmazonS3 amazonS3, String bucketName, String key, String eTag, long length, Target target) {
+            this.amazonS3 = amazonS3;
+            this.bucketName = bucketName;
+            this.key = key;
+            this.eTag = eTag;
+            this.length = length;
+            this.ranges = (int) Math.max(1, (length + rangeSize - 1) / rangeSize);
+            this.target = target;
+        }
+
+        private void copyFirstRange(S3Object firstRange) throws IOException, InterruptedException {
+            try {
+                copy(firstRange, 0, rangeLength(0));
+            } catch (IOException | AmazonClientException e) {
+                log.warn("Fetching the first range of {}/{} failed, retrying", bucketName, key, e);
+                fetchRange(0, 2);
+            }
+        }
+
+        private void fetchRanges() {
+            int range;
+            while (!cancelled.get() && (range = nextRange.getAndIncrement()) < ranges) {
+                try {
+                    fetchRange(range, 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while downloading " + bucketName + "/" + key, e);
+                }
+            }
+        }
+
+        private void fetchRange(int range, int firstAttempt) throws IOException, InterruptedException {
+            long start = range * rangeSize;
+            long rangeLength = rangeLength(range);
+            for (int attempt = firstAttempt; ; attempt++) {
+                try {
+                    S3Object s3Object = amazonS3.getObject(new GetObjectRequest(bucketName, key)
+                            .withRange(start, start + rangeLength - 1).withMatchingETagConstraint(eTag));
+                    if (s3Object == null) {
+                        throw new IllegalStateException(bucketName + "/" + key + " changed during the download");
+                    }
+                    copy(s3Object, start, rangeLength);
+                    return;
+                } catch (IOException | AmazonClientException e) {
+                    if (attempt >= MAX_ATTEMPTS || cancelled.get() || (e instanceof AmazonClientException && !((AmazonClientException) e).isRetryable())) {
+                        throw e;
+                    }
+                    log.warn("Fetching range {} of {}/{} failed, retrying", range, bucketName, key, e);
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                }
+            }
+        }
+
+        private long rangeLength(int range) {
+            return Math.min(rangeSize, length - range * rangeSize);
+        }
+
+        private void copy(S3Object s3Object, long position, long rangeLength) throws IOException {
+            S3ObjectInputStream inputStream = s3Object.getObjectContent();
+            long copied = 0;
+            byte[] buffer = copyBufferPool.take(AbstractAwsS3Service.TRANSFER_BUFFER_SIZE);
+            try {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+                int read;
+                while (copied < rangeLength && (read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, rangeLength - copied))) != -1) {
+                    byteBuffer.clear();
+                    byteBuffer.limit(read);
+                    target.write(byteBuffer, position + copied);
+                    copied += read;
+                }
+            } catch (IOException | RuntimeException e) {
+                inputStream.abort();
+                throw e;
+            } finally {
+                copyBufferPool.release(buffer);
+            }
+            if (copied != rangeLength) {
+                inputStream.abort();
+                throw new IOException("Range at " + position + " of " + bucketName + "/" + key + " ended after " + copied + " of " + rangeLength + " bytes");
+            }
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Where the ranges of a download are written to. Ranges are written concurrently, each to its own region.
+     */
+    interface Target {
+
+        /**
+         * Called once the length of the object is known, before any range is written.
+         */
+        void allocate(long length) throws IOException;
+
+        void write(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    /**
+     * Writes the ranges with positional writes into a file that is preallocated to the length of the object.
+     */
+    static class FileTarget implements Target, Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+
+        FileTarget(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "rw");
+            this.channel = this.file.getChannel();
+        }
+
+        @Override
+        public void allocate(long length) throws IOException {
+            file.setLength(length);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    static class ArrayTarget implements Target {
+        private byte[] array;
+
+        @Override
+        public void allocate(long length) throws IOException {
+            if (length > Integer.MAX_VALUE - 8) {
+                throw new IOException("Object of " + length + " bytes does not fit into an array");
+            }
+            array = new byte[(int) length];
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, long position) {
+            buffer.get(array, (int) position, buffer.remaining());
+        }
+
+        byte[] getArray() {
+            return array;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.aws.s3.service;
+
+import lombok.Getter;
+
+/**
+ * Outcome of a bulk operation for a single key. Failed results keep the key, so callers can retry exactly the
+ * failed ones.
+ */
+@Getter
+public class S3KeyResult {
+    private final String key;
+    private final String path;
+    private final String errorCode;
+    private final String errorMessage;
+
+    private S3KeyResult(String key, String path, String errorCode, String errorMessage) {
+        this.key = key;
+        this.path = path;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    /**
+     * @param path the path of an uploaded object, {@code null} for other operations
+     */
+    static S3KeyResult success(String key, String path) {
+        return new S3KeyResult(key, path, null, null);
+    }
+
+    static S3KeyResult failure(String key, String errorCode, String errorMessage) {
+        return new S3KeyResult(key, null, errorCode, errorMessage);
+    }
+
+    public boolean isSuccessful() {
+        return errorCode == null;
+    }
+}
@@ -0,0 +1,473 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectInputStream;
+import com.amazonaws.util.IOUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-through cache of downloaded objects with two tiers. Objects up to {@code memoryMaxObjectSize} bytes are kept
+ * on the heap, larger objects up to {@code diskMaxObjectSize} bytes in files of the cache directory, which every hit
+ * reads through its own file channel. Each tier evicts its least recently used entries once it exceeds its maximum
+ * size, and evicted files are deleted right away. Larger objects are passed through.
+ * <p>
+ * A cached entry older than {@code revalidateAfter} milliseconds is validated with a conditional {@code GetObject}
+ * request carrying its ETag as {@code If-None-Match}, so an unchanged object costs a request but no transfer. Uploads
+ * and deletes through the owning service invalidate the entry of their key right away, and an object that was still
+ * being downloaded when its key was invalidated is returned but not cached.
+ * <p>
+ * The cache only deletes the files it created, so several caches, also of other processes, can share a directory.
+ * Files of a cache that was not {@link #close() closed} are left behind.
+ */
+@Slf4j
+public class S3ObjectCache {
+
+    private static final String FILE_SUFFIX = ".s3cache";
+    private static final int NOT_FOUND = 404;
+
+    private final long memoryMaxSize;
+    private final long memoryMaxObjectSize;
+    private final long diskMaxSize;
+    private final long diskMaxObjectSize;
+    private final long revalidateAfter;
+    private final File directory;
+    private final PartBufferPool transferBufferPool;
+
+    private final LinkedHashMap<String, Entry> memoryEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> diskEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Load> loads = new HashMap<>();
+    private long memorySize;
+    private long diskSize;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong hitBytes = new AtomicLong();
+    private final AtomicLong missBytes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    S3ObjectCache(long memoryMaxSize, long memoryMaxObjectSize, long diskMaxSize, long diskMaxObjectSize,
+                  long revalidateAfter, File directory, PartBufferPool transferBufferPool) throws IOException {
+        this.memoryMaxSize = memoryMaxSize;
+        this.memoryMaxObjectSize = Math.min(memoryMaxObjectSize, memoryMaxSize);
+        this.diskMaxSize = diskMaxSize;
+        this.diskMaxObjectSize = Math.min(diskMaxObjectSize, diskMaxSize);
+        this.revalidateAfter = revalidateAfter;
+        this.directory = directory;
+        this.transferBufferPool = transferBufferPool;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create cache directory " + directory);
+        }
+    }
+
+    /**
+     * @return the object from the cache if it is unchanged, otherwise the downloaded object
+     */
+    CachedObject get(AmazonS3 amazonS3, String bucketName, String key) throws IOException {
+        String cacheKey = cacheKey(bucketName, key);
+        Entry entry = lookup(cacheKey);
+        if (entry != null && System.currentTimeMillis() - entry.validatedAt < revalidateAfter) {
+            CachedObject cachedObject = hit(entry);
+            if (cachedObject != null) {
+                return cachedObject;
+            }
+            // evicted since the lookup
+            entry = null;
+        }
+        long generation = beginLoad(cacheKey);
+        try {
+            GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, key);
+            if (entry != null) {
+                getObjectRequest.withNonmatchingETagConstraint(entry.eTag);
+            }
+            S3Object s3Object;
+            try {
+                s3Object = amazonS3.getObject(getObjectRequest);
+            } catch (AmazonS3Exception e) {
+                if (e.getStatusCode() == NOT_FOUND) {
+                    invalidate(bucketName, key);
+                }
+                throw e;
+            }
+            if (s3Object == null) {
+                // not modified since it was cached
+                notModified.incrementAndGet();
+                entry.validatedAt = System.currentTimeMillis();
+                CachedObject cachedObject = hit(entry);
+                if (cachedObject != null) {
+                    return cachedObject;
+                }
+                // evicted during the request
+                s3Object = amazonS3.getObject(new GetObjectRequest(bucketName, key));
+            }
+            return store(cacheKey, s3Object, generation);
+        } finally {
+            endLoad(cacheKey);
+        }
+    }
+
+    synchronized void invalidate(String bucketName, String key) {
+        String cacheKey = cacheKey(bucketName, key);
+        remove(cacheKey);
+        Load load = loads.get(cacheKey);
+        if (load != null) {
+            // downloads in progress may have read the old object
+            load.generation++;
+        }
+    }
+
+    /**
+     * Empties the cache and deletes its files. Objects read from the disk tier before stay readable.
+     */
+    synchronized void close() {
+        memoryEntries.clear();
+        memorySize = 0;
+        for (Entry entry : diskEntries.values()) {
+            deleteFile(entry.file);
+        }
+        diskEntries.clear();
+        diskSize = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the hits that were validated with a conditional request
+     */
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    public long getHitBytes() {
+        return hitBytes.get();
+    }
+
+    public long getMissBytes() {
+        return missBytes.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * @return the cached object, {@code null} if its file was evicted in the meantime
+     */
+    private CachedObject hit(Entry entry) throws IOException {
+        CachedObject cachedObject;
+        if (entry.file == null) {
+            cachedObject = new CachedObject(entry.metadata.clone(), entry.data.duplicate(), null, null);
+        } else {
+            try {
+                cachedObject = new CachedObject(entry.metadata.clone(), null, open(entry.file), null);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+        hits.incrementAndGet();
+        hitBytes.addAndGet(entry.size);
+        return cachedObject;
+    }
+
+    private CachedObject store(String cacheKey, S3Object s3Object, long generation) throws IOException {
+        misses.incrementAndGet();
+        ObjectMetadata metadata = s3Object.getObjectMetadata();
+        long size = metadata.getContentLength();
+        missBytes.addAndGet(size);
+        if (size > diskMaxObjectSize && size > memoryMaxObjectSize) {
+            remove(cacheKey);
+            return new CachedObject(metadata, null, null, s3Object);
+        }
+
+        if (size <= memoryMaxObjectSize) {
+            byte[] data;
+            try (S3ObjectInputStream inputStream = s3Object.getObjectContent()) {
+                data = IOUtils.toByteArray(inputStream);
+            }
+            put(cacheKey, new Entry(metadata, ByteBuffer.wrap(data), null, data.length), generation);
+            return new CachedObject(metadata.clone(), ByteBuffer.wrap(data), null, null);
+        }
+
+        File file = File.createTempFile("s3-", FILE_SUFFIX, directory);
+        FileChannel channel = null;
+        try {
+            copy(s3Object.getObjectContent(), file);
+            // opened before the entry can be evicted
+            channel = open(file);
+            if (!put(cacheKey, new Entry(metadata, null, file, channel.size()), generation)) {
+                deleteFile(file);
+            }
+            return new CachedObject(metadata.clone(), null, channel, null);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            deleteFile(file);
+            throw e;
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    private void copy(S3ObjectInputStream inputStream, File file) throws IOException {
+        byte[] buffer = transferBufferPool.take(AbstractAwsS3Service.TRANSFER_BUFFER_SIZE);
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            inputStream.abort();
+            throw e;
+        } finally {
+            transferBufferPool.release(buffer);
+        }
+        inputStream.close();
+    }
+
+    private synchronized Entry lookup(String cacheKey) {
+        Entry entry = memoryEntries.get(cacheKey);
+        return entry != null ? entry : diskEntries.get(cacheKey);
+    }
+
+    /**
+     * @return {@code false} if the key was invalidated since the download started, the entry is not cached then
+     */
+    private synchronized boolean put(String cacheKey, Entry entry, long generation) {
+        Load load = loads.get(cacheKey);
+        if (load != null && load.generation != generation) {
+            return false;
+        }
+        remove(cacheKey);
+        if (entry.file == null) {
+            memoryEntries.put(cacheKey, entry);
+            memorySize += entry.size;
+            memorySize = evict(memoryEntries, memorySize, memoryMaxSize);
+        } else {
+            diskEntries.put(cacheKey, entry);
+            diskSize += entry.size;
+            diskSize = evict(diskEntries, diskSize, diskMaxSize);
+        }
+        return true;
+    }
+
+    /**
+     * Registers a download of the key.
+     *
+     * @return the invalidation generation of the key at the start of the download
+     */
+    private synchronized long beginLoad(String cacheKey) {
+        Load load = loads.computeIfAbsent(cacheKey, k -> new Load());
+        load.downloads++;
+        return load.generation;
+    }
+
+    private synchronized void endLoad(String cacheKey) {
+        Load load = loads.get(cacheKey);
+        if (--load.downloads == 0) {
+            loads.remove(cacheKey);
+        }
+    }
+
+    private synchronized void remove(String cacheKey) {
+        Entry entry = memoryEntries.remove(cacheKey);
+        if (entry != null) {
+            memorySize -= entry.size;
+        }
+        entry = diskEntries.remove(cacheKey);
+        if (entry != null) {
+            diskSize -= entry.size;
+            deleteFile(entry.file);
+        }
+    }
+
+    /**
+     * @return the size of the tier after evicting its least recently used entries
+     */
+    private long evict(LinkedHashMap<String, Entry> entries, long size, long maxSize) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            iterator.remove();
+            size -= entry.size;
+            evictions.incrementAndGet();
+            if (entry.file != null) {
+                deleteFile(entry.file);
+            }
+        }
+        return size;
+    }
+
+    private static void deleteFile(File file) {
+        // readers that opened the file keep reading it after it is deleted
+        if (!file.delete() && file.exists()) {
+            log.warn("Could not delete cache file {}", file);
+        }
+    }
+
+    private static String cacheKey(String bucketName, String key) {
+        return bucketName + "/" + key;
+    }
+
+    private static class Entry {
+        private final String eTag;
+        private final ObjectMetadata metadata;
+        private final long size;
+        private final ByteBuffer data;
+        private final File file;
+        private volatile long validatedAt = System.currentTimeMillis();
+
+        private Entry(ObjectMetadata metadata, ByteBuffer data, File file, long size) {
+            this.eTag = metadata.getETag();
+            this.metadata = metadata;
+            this.size = size;
+            this.data = data;
+            this.file = file;
+        }
+    }
+
+    /**
+     * The downloads of a key in progress. Invalidating the key increments its generation, so downloads that started
+     * before do not cache what they read.
+     */
+    private static class Load {
+        private int downloads;
+        private long generation;
+    }
+
+    /**
+     * An object read from the cache, or passed through if it is too large to be cached. An object read from the disk
+     * tier holds an open file channel until it is read with {@link #toByteArray()} or the content of
+     * {@link #toS3Object(String, String)} is closed.
+     */
+    static class CachedObject {
+        private final ObjectMetadata metadata;
+        private final ByteBuffer data;
+        private final FileChannel channel;
+        private final S3Object s3Object;
+
+        private CachedObject(ObjectMetadata metadata, ByteBuffer data, FileChannel channel, S3Object s3Object) {
+            this.metadata = metadata;
+            this.data = data;
+            this.channel = channel;
+            this.s3Object = s3Object;
+        }
+
+        /**
+         * @return {@code true} if the object was too large to be cached and its content is still to be downloaded
+         */
+        boolean isPassedThrough() {
+            return s3Object != null;
+        }
+
+        /**
+         * Closes the connection of an object that was passed through without reading its content.
+         */
+        void abort() {
+            if (s3Object != null) {
+                s3Object.getObjectContent().abort();
+            }
+        }
+
+        byte[] toByteArray() throws IOException {
+            if (s3Object != null) {
+                try (S3ObjectInputStream inputStream = s3Object.getObjectContent()) {
+                    return IOUtils.toByteArray(inputStream);
+                }
+            }
+            if (channel != null) {
+                try (FileChannel fileChannel = channel) {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) fileChannel.size());
+                    while (buffer.hasRemaining()) {
+                        if (fileChannel.read(buffer) == -1) {
+                            throw new EOFException("Cache file ended before " + buffer.capacity() + " bytes");
+                        }
+                    }
+                    return buffer.array();
+                }
+            }
+            byte[] array = new byte[data.remaining()];
+            data.get(array);
+            return array;
+        }
+
+        S3Object toS3Object(String bucketName, String key) {
+            if (s3Object != null) {
+                return s3Object;
+            }
+            S3Object cachedObject = new S3Object();
+            cachedObject.setBucketName(bucketName);
+            cachedObject.setKey(key);
+            cachedObject.setObjectMetadata(metadata);
+            cachedObject.setObjectContent(channel != null ? Channels.newInputStream(channel) : new ByteBufferInputStream(data));
+            return cachedObject;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
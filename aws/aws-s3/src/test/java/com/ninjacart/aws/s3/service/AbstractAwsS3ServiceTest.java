@@ -0,0 +1,234 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.example.aws.s3.config.AwsS3ClientBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AbstractAwsS3ServiceTest {
+
+    private final StubS3 amazonS3 = new StubS3();
+    private final AbstractAwsS3Service service = new AbstractAwsS3Service() {
+        @Override
+        AwsS3ClientBuilder getConfiguredClient(String bucketName) {
+            return new AwsS3ClientBuilder(amazonS3, "https://s3.local/", bucketName, 4);
+        }
+    };
+
+    @Before
+    public void initTransfers() throws Exception {
+        Field transferThreads = AbstractAwsS3Service.class.getDeclaredField("transferThreads");
+        transferThreads.setAccessible(true);
+        transferThreads.setInt(service, 4);
+        service.initTransfers();
+    }
+
+    @After
+    public void destroyTransfers() {
+        service.destroyTransfers();
+    }
+
+    @Test
+    public void deleteAllReportsKeysOfMultiObjectDeleteErrors() throws Exception {
+        amazonS3.deleteErrors.put("key-1", "AccessDenied");
+        amazonS3.deleteErrors.put("key-3", "InternalError");
+
+        List<S3KeyResult> results = service.deleteAll("bucket", keys(5));
+
+        assertEquals(keys(5), keysOf(results));
+        assertTrue(results.get(0).isSuccessful());
+        assertFalse(results.get(1).isSuccessful());
+        assertEquals("AccessDenied", results.get(1).getErrorCode());
+        assertEquals("key-1 not deleted", results.get(1).getErrorMessage());
+        assertTrue(results.get(2).isSuccessful());
+        assertEquals("InternalError", results.get(3).getErrorCode());
+        assertTrue(results.get(4).isSuccessful());
+    }
+
+    @Test
+    public void deleteAllFailsOnlyTheKeysOfAFailedRequest() throws Exception {
+        amazonS3.failingDeleteRequest = 1;
+
+        List<S3KeyResult> results = service.deleteAll("bucket", keys(2500));
+
+        assertEquals(Arrays.asList(1000, 1000, 500), amazonS3.deleteRequestSizes);
+        assertEquals(keys(2500), keysOf(results));
+        for (int i = 0; i < results.size(); i++) {
+            S3KeyResult result = results.get(i);
+            if (i >= 1000 && i < 2000) {
+                assertEquals(result.getKey(), "SlowDown", result.getErrorCode());
+            } else {
+                assertTrue(result.getKey(), result.isSuccessful());
+            }
+        }
+    }
+
+    @Test
+    public void uploadAllReportsResultsInTheOrderOfTheFiles() throws Exception {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        for (String key : keys(8)) {
+            files.put(key, key.getBytes());
+        }
+        // the first upload completes last, the third fails
+        amazonS3.slowUpload = "key-0";
+        amazonS3.failingUpload = "key-2";
+
+        List<S3KeyResult> results = service.uploadAll("bucket", files, "text/plain");
+
+        assertEquals(keys(8), keysOf(results));
+        assertEquals("https://s3.local/bucket/key-0", results.get(0).getPath());
+        assertFalse(results.get(2).isSuccessful());
+        assertEquals("SlowDown", results.get(2).getErrorCode());
+        assertNull(results.get(2).getPath());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).getKey(), i != 2, results.get(i).isSuccessful());
+        }
+        assertEquals(7, amazonS3.uploads);
+    }
+
+    @Test
+    public void listObjectsRequestsPagesAsTheyAreConsumed() throws Exception {
+        amazonS3.listedKeys = keys(2500);
+
+        Iterator<S3ObjectSummary> objects = service.listObjects("bucket", "key-");
+
+        assertEquals(0, amazonS3.listRequests.size());
+        List<String> listed = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            listed.add(objects.next().getKey());
+        }
+        assertEquals(1, amazonS3.listRequests.size());
+        while (objects.hasNext()) {
+            listed.add(objects.next().getKey());
+        }
+        assertEquals(keys(2500), listed);
+        assertEquals(Arrays.asList(null, "1000", "2000"), amazonS3.listRequests);
+        assertFalse(objects.hasNext());
+        assertEquals(3, amazonS3.listRequests.size());
+    }
+
+    private static List<String> keys(int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add("key-" + i);
+        }
+        return keys;
+    }
+
+    private static List<String> keysOf(List<S3KeyResult> results) {
+        List<String> keys = new ArrayList<>(results.size());
+        for (S3KeyResult result : results) {
+            keys.add(result.getKey());
+        }
+        return keys;
+    }
+
+    private static AmazonServiceException slowDown() {
+        AmazonServiceException e = new AmazonServiceException("Please reduce your request rate");
+        e.setErrorCode("SlowDown");
+        e.setStatusCode(503);
+        return e;
+    }
+
+    private static class StubS3 extends AbstractAmazonS3 {
+
+        private static final int PAGE_SIZE = 1000;
+
+        private final Map<String, String> deleteErrors = new LinkedHashMap<>();
+        private final List<Integer> deleteRequestSizes = new ArrayList<>();
+        private final List<String> listRequests = new ArrayList<>();
+        private List<String> listedKeys = Collections.emptyList();
+        private int failingDeleteRequest = -1;
+        private volatile String slowUpload;
+        private volatile String failingUpload;
+        private int uploads;
+
+        @Override
+        public DeleteObjectsResult deleteObjects(DeleteObjectsRequest request) {
+            int requestIndex = deleteRequestSizes.size();
+            deleteRequestSizes.add(request.getKeys().size());
+            if (requestIndex == failingDeleteRequest) {
+                throw slowDown();
+            }
+            List<MultiObjectDeleteException.DeleteError> errors = new ArrayList<>();
+            List<DeleteObjectsResult.DeletedObject> deleted = new ArrayList<>();
+            for (DeleteObjectsRequest.KeyVersion keyVersion : request.getKeys()) {
+                String code = deleteErrors.get(keyVersion.getKey());
+                if (code != null) {
+                    MultiObjectDeleteException.DeleteError error = new MultiObjectDeleteException.DeleteError();
+                    error.setKey(keyVersion.getKey());
+                    error.setCode(code);
+                    error.setMessage(keyVersion.getKey() + " not deleted");
+                    errors.add(error);
+                } else {
+                    DeleteObjectsResult.DeletedObject deletedObject = new DeleteObjectsResult.DeletedObject();
+                    deletedObject.setKey(keyVersion.getKey());
+                    deleted.add(deletedObject);
+                }
+            }
+            if (!errors.isEmpty()) {
+                throw new MultiObjectDeleteException(errors, deleted);
+            }
+            return new DeleteObjectsResult(deleted);
+        }
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            if (request.getKey().equals(failingUpload)) {
+                throw slowDown();
+            }
+            if (request.getKey().equals(slowUpload)) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            synchronized (this) {
+                uploads++;
+            }
+            return new PutObjectResult();
+        }
+
+        @Override
+        public ListObjectsV2Result listObjectsV2(ListObjectsV2Request request) {
+            listRequests.add(request.getContinuationToken());
+            int from = request.getContinuationToken() != null ? Integer.parseInt(request.getContinuationToken()) : 0;
+            int to = Math.min(from + PAGE_SIZE, listedKeys.size());
+            ListObjectsV2Result result = new ListObjectsV2Result();
+            for (String key : listedKeys.subList(from, to)) {
+                S3ObjectSummary summary = new S3ObjectSummary();
+                summary.setKey(key);
+                result.getObjectSummaries().add(summary);
+            }
+            result.setTruncated(to < listedKeys.size());
+            result.setNextContinuationToken(to < listedKeys.size() ? Integer.toString(to) : null);
+            return result;
+        }
+    }
+}
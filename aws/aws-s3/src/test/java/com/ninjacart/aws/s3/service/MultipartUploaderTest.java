@@ -0,0 +1,114 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class MultipartUploaderTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void abortWaitsForRunningParts() throws Exception {
+        FailingS3 amazonS3 = new FailingS3(1, 2);
+        MultipartUploader uploader = new MultipartUploader(new PartBufferPool(4, 4), executor, 4);
+
+        try {
+            uploader.upload(amazonS3, "bucket", "key", new ByteArrayInputStream(new byte[16]), null, new ObjectMetadata(), true);
+            fail("The failed part was not reported");
+        } catch (AmazonServiceException e) {
+            assertEquals("part 1 failed", e.getErrorMessage());
+        }
+
+        assertEquals(1, amazonS3.aborts.get());
+        assertEquals(0, amazonS3.runningAtAbort.get());
+        assertEquals(0, amazonS3.startedAfterAbort.get());
+        assertFalse(amazonS3.completed);
+    }
+
+    /**
+     * Fails one part right away while another part is still uploading.
+     */
+    private static class FailingS3 extends AbstractAmazonS3 {
+
+        private final int failingPart;
+        private final int slowPart;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger aborts = new AtomicInteger();
+        private final AtomicInteger runningAtAbort = new AtomicInteger(-1);
+        private final AtomicInteger startedAfterAbort = new AtomicInteger();
+        private volatile boolean completed;
+
+        FailingS3(int failingPart, int slowPart) {
+            this.failingPart = failingPart;
+            this.slowPart = slowPart;
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload");
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            if (aborts.get() > 0) {
+                startedAfterAbort.incrementAndGet();
+            }
+            running.incrementAndGet();
+            try {
+                if (request.getPartNumber() == failingPart) {
+                    throw new AmazonServiceException("part " + failingPart + " failed");
+                }
+                if (request.getPartNumber() == slowPart) {
+                    Thread.sleep(300);
+                }
+                UploadPartResult result = new UploadPartResult();
+                result.setPartNumber(request.getPartNumber());
+                result.setETag("etag-" + request.getPartNumber());
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            runningAtAbort.set(running.get());
+            aborts.incrementAndGet();
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completed = true;
+            return new CompleteMultipartUploadResult();
+        }
+    }
+}
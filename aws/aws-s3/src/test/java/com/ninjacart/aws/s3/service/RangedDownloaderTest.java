@@ -0,0 +1,162 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RangedDownloaderTest {
+
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final RangedDownloader downloader = new RangedDownloader(executor, 4, new PartBufferPool(1024, 1));
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rangeFailingWhileItsBodyIsReadIsFetchedAgain() throws Exception {
+        StubS3 amazonS3 = new StubS3(CONTENT);
+        // the first response of the second range breaks off after two bytes
+        amazonS3.failingRange = 4;
+        RangedDownloader.ArrayTarget target = new RangedDownloader.ArrayTarget();
+
+        ObjectMetadata metadata = downloader.download(amazonS3, "bucket", "key", 2, target);
+
+        assertArrayEquals(CONTENT, target.getArray());
+        assertEquals(CONTENT.length, metadata.getContentLength());
+        assertEquals(2, amazonS3.requests(4));
+        assertEquals(1, amazonS3.requests(0));
+        assertEquals(1, amazonS3.requests(8));
+    }
+
+    @Test
+    public void objectChangedDuringDownloadFailsIt() throws Exception {
+        StubS3 amazonS3 = new StubS3(CONTENT);
+        // S3 answers a range whose If-Match constraint does not match with 412, which the client returns as null
+        amazonS3.eTag = "changed";
+        RangedDownloader.ArrayTarget target = new RangedDownloader.ArrayTarget();
+
+        try {
+            downloader.download(amazonS3, "bucket", "key", 2, target);
+            fail("The changed object was downloaded");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("changed during the download"));
+        }
+    }
+
+    @Test
+    public void emptyObjectIsDownloadedWithoutRanges() throws Exception {
+        StubS3 amazonS3 = new StubS3(new byte[0]);
+        RangedDownloader.ArrayTarget target = new RangedDownloader.ArrayTarget();
+
+        ObjectMetadata metadata = downloader.download(amazonS3, "bucket", "key", 2, target);
+
+        assertEquals(0, target.getArray().length);
+        assertEquals(0, metadata.getContentLength());
+        assertEquals(1, amazonS3.metadataRequests.get());
+    }
+
+    /**
+     * Serves ranges of a single object like S3 does, with the first range answered with the original ETag.
+     */
+    private static class StubS3 extends AbstractAmazonS3 {
+
+        private static final String ORIGINAL_ETAG = "original";
+
+        private final byte[] content;
+        private final Map<Long, AtomicInteger> requestsByRange = new ConcurrentHashMap<>();
+        private final AtomicInteger metadataRequests = new AtomicInteger();
+        private volatile String eTag = ORIGINAL_ETAG;
+        private volatile long failingRange = -1;
+
+        StubS3(byte[] content) {
+            this.content = content;
+        }
+
+        int requests(long rangeStart) {
+            AtomicInteger requests = requestsByRange.get(rangeStart);
+            return requests != null ? requests.get() : 0;
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            long start = request.getRange()[0];
+            int attempt = requestsByRange.computeIfAbsent(start, range -> new AtomicInteger()).incrementAndGet();
+            if (content.length == 0) {
+                AmazonS3Exception e = new AmazonS3Exception("The requested range is not satisfiable");
+                e.setStatusCode(416);
+                throw e;
+            }
+            String currentETag = start == 0 ? ORIGINAL_ETAG : eTag;
+            if (!request.getMatchingETagConstraints().isEmpty() && !request.getMatchingETagConstraints().contains(currentETag)) {
+                return null;
+            }
+            int end = (int) Math.min(request.getRange()[1], content.length - 1);
+            byte[] range = Arrays.copyOfRange(content, (int) start, end + 1);
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(range.length);
+            metadata.setHeader("ETag", currentETag);
+            metadata.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+            S3Object s3Object = new S3Object();
+            s3Object.setKey(request.getKey());
+            s3Object.setObjectMetadata(metadata);
+            s3Object.setObjectContent(start == failingRange && attempt == 1 ? new BrokenInputStream(range, 2) : new ByteArrayInputStream(range));
+            return s3Object;
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+            metadataRequests.incrementAndGet();
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            metadata.setHeader("ETag", eTag);
+            return metadata;
+        }
+    }
+
+    /**
+     * Returns the first bytes of a range and then fails like a connection that was reset.
+     */
+    private static class BrokenInputStream extends InputStream {
+
+        private final byte[] content;
+        private final int failAfter;
+        private int position;
+
+        BrokenInputStream(byte[] content, int failAfter) {
+            this.content = content;
+            this.failAfter = failAfter;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (position >= failAfter) {
+                throw new IOException("Connection reset");
+            }
+            return content[position++] & 0xff;
+        }
+    }
+}
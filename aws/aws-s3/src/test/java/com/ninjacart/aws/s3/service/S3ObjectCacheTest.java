@@ -0,0 +1,153 @@
+package com.example.aws.s3.service;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3Object;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class S3ObjectCacheTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("s3-cache-test").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void invalidationDuringDownloadIsNotOverwritten() throws IOException {
+        S3ObjectCache cache = cache(1024, 1024);
+        StubS3 amazonS3 = new StubS3();
+        amazonS3.objects.put("key", "old");
+        // an upload replaces the object and invalidates its key while the old object is being downloaded
+        amazonS3.onGet = () -> {
+            amazonS3.onGet = null;
+            amazonS3.objects.put("key", "new");
+            cache.invalidate("bucket", "key");
+        };
+
+        assertEquals("old", read(cache.get(amazonS3, "bucket", "key")));
+        assertEquals("new", read(cache.get(amazonS3, "bucket", "key")));
+        assertEquals(2, amazonS3.gets);
+        assertEquals("new", read(cache.get(amazonS3, "bucket", "key")));
+        assertEquals(2, amazonS3.gets);
+    }
+
+    @Test
+    public void evictedFilesAreDeletedWhileReadersFinish() throws IOException {
+        S3ObjectCache cache = cache(0, 10);
+        StubS3 amazonS3 = new StubS3();
+        amazonS3.objects.put("first", "123456");
+        amazonS3.objects.put("second", "abcdef");
+
+        cache.get(amazonS3, "bucket", "first");
+        S3ObjectCache.CachedObject first = cache.get(amazonS3, "bucket", "first");
+        cache.get(amazonS3, "bucket", "second");
+
+        assertEquals(6, cache.getDiskSize());
+        assertEquals(1, cacheFiles());
+        assertEquals("123456", read(first));
+        assertEquals("abcdef", read(cache.get(amazonS3, "bucket", "second")));
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void objectsTooLargeToCacheArePassedThrough() throws IOException {
+        S3ObjectCache cache = cache(4, 4);
+        StubS3 amazonS3 = new StubS3();
+        amazonS3.objects.put("key", "123456");
+
+        S3ObjectCache.CachedObject cachedObject = cache.get(amazonS3, "bucket", "key");
+
+        assertTrue(cachedObject.isPassedThrough());
+        assertEquals("123456", read(cachedObject));
+        assertTrue(cache.get(amazonS3, "bucket", "key").isPassedThrough());
+        assertEquals(2, amazonS3.gets);
+        assertEquals(0, cacheFiles());
+    }
+
+    @Test
+    public void cachesSharingDirectoryOnlyDeleteTheirOwnFiles() throws IOException {
+        S3ObjectCache first = cache(0, 10);
+        StubS3 amazonS3 = new StubS3();
+        amazonS3.objects.put("key", "123456");
+        first.get(amazonS3, "bucket", "key");
+
+        // another service or process starts a cache in the same directory
+        S3ObjectCache second = cache(0, 10);
+        assertEquals(1, cacheFiles());
+        assertEquals("123456", read(first.get(amazonS3, "bucket", "key")));
+        assertEquals(1, amazonS3.gets);
+
+        second.get(amazonS3, "bucket", "key");
+        assertEquals(2, cacheFiles());
+        second.close();
+        assertEquals(1, cacheFiles());
+        assertEquals(0, second.getDiskSize());
+        first.close();
+        assertEquals(0, cacheFiles());
+    }
+
+    private S3ObjectCache cache(long memoryMaxSize, long diskMaxSize) throws IOException {
+        return new S3ObjectCache(memoryMaxSize, memoryMaxSize, diskMaxSize, diskMaxSize, Long.MAX_VALUE, directory,
+                new PartBufferPool(1024, 1));
+    }
+
+    private int cacheFiles() {
+        File[] files = directory.listFiles();
+        return files != null ? files.length : 0;
+    }
+
+    private static String read(S3ObjectCache.CachedObject cachedObject) throws IOException {
+        return new String(cachedObject.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class StubS3 extends AbstractAmazonS3 {
+
+        private final Map<String, String> objects = new HashMap<>();
+        private Runnable onGet;
+        private int gets;
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            gets++;
+            byte[] content = objects.get(request.getKey()).getBytes(StandardCharsets.UTF_8);
+            if (onGet != null) {
+                onGet.run();
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(content.length);
+            metadata.setHeader("ETag", Integer.toHexString(new String(content, StandardCharsets.UTF_8).hashCode()));
+            S3Object s3Object = new S3Object();
+            s3Object.setKey(request.getKey());
+            s3Object.setObjectMetadata(metadata);
+            s3Object.setObjectContent(new ByteArrayInputStream(content));
+            return s3Object;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.aws.sqs.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Raw zlib streams, without the gzip header and checksum.
+ */
+public class DeflateMessageCodec implements MessageCodec {
+
+	public static final String NAME = "deflate";
+
+	private final int level;
+
+	public DeflateMessageCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level
+	 * 		the compression level from {@code 1} (fastest) to {@code 9} (smallest)
+	 */
+	public DeflateMessageCodec(int level) {
+		this.level = level;
+	}
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		Deflater deflater = new Deflater(level);
+		try(DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+			deflate.write(data);
+		} finally {
+			deflater.end();
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public byte[] decode(byte[] data) throws IOException {
+		return decode(data, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public byte[] decode(byte[] data, int maxDecodedSize) throws IOException {
+		try(InflaterInputStream inflate = new InflaterInputStream(new ByteArrayInputStream(data))) {
+			return MessageCompressor.readFully(inflate, data.length * 4, maxDecodedSize);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.example.aws.sqs.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class GzipMessageCodec implements MessageCodec {
+
+	public static final String NAME = "gzip";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(data);
+		}
+		return out.toByteArray();
+	}
+
+	@Override
+	public byte[] decode(byte[] data) throws IOException {
+		return decode(data, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public byte[] decode(byte[] data, int maxDecodedSize) throws IOException {
+		try(GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return MessageCompressor.readFully(gzip, data.length * 4, maxDecodedSize);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.example.aws.sqs.codec;
+
+import java.io.IOException;
+
+/**
+ * Compression of SQS message bodies. The name is sent along with every encoded message, so a codec must keep
+ * decoding what it encoded under the same name.
+ */
+public interface MessageCodec {
+
+	/**
+	 * @return the value of the content encoding attribute of messages encoded by this codec
+	 */
+	String getName();
+
+	byte[] encode(byte[] data) throws IOException;
+
+	byte[] decode(byte[] data) throws IOException;
+
+	/**
+	 * Decodes data that must not grow beyond a maximum size. This implementation decodes all of the data before it
+	 * checks the size, codecs decoding a stream override it to stop as soon as the limit is exceeded.
+	 *
+	 * @throws IOException
+	 * 		if the decoded data is larger than {@code maxDecodedSize} bytes
+	 */
+	default byte[] decode(byte[] data, int maxDecodedSize) throws IOException {
+		byte[] decoded = decode(data);
+		if(decoded.length > maxDecodedSize) {
+			throw new IOException("Decompressed message body exceeds " + maxDecodedSize + " bytes");
+		}
+		return decoded;
+	}
+}
@@ -0,0 +1,172 @@
+package com.example.aws.sqs.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+/**
+ * Compresses SQS message bodies above a size threshold with a {@link MessageCodec} and sends them Base64 encoded,
+ * marked with the {@link #CONTENT_ENCODING_ATTRIBUTE} message attribute. A body is only compressed if the encoded
+ * result is actually smaller. Received bodies are decompressed with the codec named by the attribute, so a
+ * receiver only needs to know the codec, not the threshold of the sender.
+ * <p>
+ * Decompressed bodies are limited in size, so that a small compressed message cannot inflate into more memory than
+ * the receiver can spare.
+ * <p>
+ * The counters show how many bytes compression saved.
+ */
+public class MessageCompressor {
+
+	public static final String CONTENT_ENCODING_ATTRIBUTE = "ContentEncoding";
+	public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 16 * 1024 * 1024;
+
+	private final Map<String, MessageCodec> codecs = new HashMap<>();
+	private final MessageCodec codec;
+	private final int threshold;
+	private final int maxDecompressedSize;
+
+	private final AtomicLong compressedMessages = new AtomicLong();
+	private final AtomicLong uncompressedBytes = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong decompressedMessages = new AtomicLong();
+
+	/**
+	 * @param codecs
+	 * 		the codecs received messages may be encoded with
+	 * @param codecName
+	 * 		the name of the codec to compress with, {@code null} to only decompress
+	 * @param threshold
+	 * 		the size in bytes above which bodies are compressed
+	 */
+	public MessageCompressor(Collection<? extends MessageCodec> codecs, String codecName, int threshold) {
+		this(codecs, codecName, threshold, DEFAULT_MAX_DECOMPRESSED_SIZE);
+	}
+
+	/**
+	 * @param codecs
+	 * 		the codecs received messages may be encoded with
+	 * @param codecName
+	 * 		the name of the codec to compress with, {@code null} to only decompress
+	 * @param threshold
+	 * 		the size in bytes above which bodies are compressed
+	 * @param maxDecompressedSize
+	 * 		the size in bytes a received body may have once decompressed
+	 */
+	public MessageCompressor(Collection<? extends MessageCodec> codecs, String codecName, int threshold, int maxDecompressedSize) {
+		for(MessageCodec messageCodec : codecs) {
+			this.codecs.put(messageCodec.getName(), messageCodec);
+		}
+		if(codecName != null && !this.codecs.containsKey(codecName)) {
+			throw new IllegalArgumentException("Unknown message codec " + codecName + ", known are " + this.codecs.keySet());
+		}
+		this.codec = codecName != null ? this.codecs.get(codecName) : null;
+		this.threshold = threshold;
+		this.maxDecompressedSize = maxDecompressedSize;
+	}
+
+	public static List<MessageCodec> defaultCodecs() {
+		return Arrays.asList(new GzipMessageCodec(), new DeflateMessageCodec());
+	}
+
+	/**
+	 * @return the body to send, compressed if worthwhile. The content encoding attribute is added in that case.
+	 */
+	public String compress(String body, Map<String, MessageAttributeValue> attributes) {
+		if(codec == null) {
+			return body;
+		}
+		byte[] data = body.getBytes(StandardCharsets.UTF_8);
+		if(data.length <= threshold) {
+			return body;
+		}
+		String encoded;
+		try {
+			encoded = Base64.getEncoder().encodeToString(codec.encode(data));
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not compress message body with " + codec.getName(), e);
+		}
+		if(encoded.length() >= data.length) {
+			return body;
+		}
+		compressedMessages.incrementAndGet();
+		uncompressedBytes.addAndGet(data.length);
+		compressedBytes.addAndGet(encoded.length());
+		attributes.put(CONTENT_ENCODING_ATTRIBUTE, new MessageAttributeValue().withDataType("String").withStringValue(codec.getName()));
+		return encoded;
+	}
+
+	/**
+	 * @return the original body of a compressed message, the body itself if the message is not compressed
+	 * @throws IOException
+	 * 		if the body cannot be decoded or is larger than the maximum decompressed size
+	 */
+	public String decompress(String body, Map<String, MessageAttributeValue> attributes) throws IOException {
+		byte[] data = decompressToBytes(body, attributes);
+		return data != null ? new String(data, StandardCharsets.UTF_8) : body;
+	}
+
+	/**
+	 * @return the UTF-8 encoded original body of a compressed message, {@code null} if the message is not compressed
+	 * @throws IOException
+	 * 		if the body cannot be decoded or is larger than the maximum decompressed size
+	 */
+	public byte[] decompressToBytes(String body, Map<String, MessageAttributeValue> attributes) throws IOException {
+		MessageAttributeValue contentEncoding = attributes != null ? attributes.get(CONTENT_ENCODING_ATTRIBUTE) : null;
+		if(contentEncoding == null) {
+			return null;
+		}
+		MessageCodec messageCodec = codecs.get(contentEncoding.getStringValue());
+		if(messageCodec == null) {
+			throw new IOException("Unknown content encoding " + contentEncoding.getStringValue());
+		}
+		byte[] data = messageCodec.decode(Base64.getDecoder().decode(body), maxDecompressedSize);
+		decompressedMessages.incrementAndGet();
+		return data;
+	}
+
+	public long getCompressedMessages() {
+		return compressedMessages.get();
+	}
+
+	public long getDecompressedMessages() {
+		return decompressedMessages.get();
+	}
+
+	/**
+	 * @return the number of bytes compression saved on the sent bodies
+	 */
+	public long getSavedBytes() {
+		return uncompressedBytes.get() - compressedBytes.get();
+	}
+
+	/**
+	 * @return the size of the compressed bodies relative to their original size, {@code 1} if nothing was compressed
+	 */
+	public double getCompressionRatio() {
+		long uncompressed = uncompressedBytes.get();
+		return uncompressed == 0 ? 1 : (double) compressedBytes.get() / uncompressed;
+	}
+
+	static byte[] readFully(InputStream in, int sizeHint, int maxSize) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(Math.max(sizeHint, 256), maxSize));
+		byte[] buffer = new byte[8192];
+		int read;
+		while((read = in.read(buffer)) != -1) {
+			if(read > maxSize - out.size()) {
+				throw new IOException("Decompressed message body exceeds " + maxSize + " bytes");
+			}
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
@@ -14,7 +14,6 @@ import org.springframework.cloud.aws.messaging.support.destination.DynamicQueueU
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
-import org.springframework.messaging.converter.MappingJackson2MessageConverter;
 import org.springframework.messaging.core.CachingDestinationResolverProxy;
 import org.springframework.messaging.handler.annotation.support.PayloadArgumentResolver;
 import org.springframework.messaging.handler.invocation.HandlerMethodArgumentResolver;
@@ -27,9 +26,9 @@ import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.sqs.AmazonSQSAsync;
 import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
 import com.amazonaws.services.sqs.buffered.AmazonSQSBufferedAsyncClient;
+import com.example.aws.sqs.converter.CachingJackson2MessageConverter;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.netflix.config.DynamicPropertyFactory;
 
@@ -89,7 +88,7 @@ public class AwsSqsConfig {
 
 	@Bean
 	public QueueMessagingTemplate queueMessagingTemplate() {
-		return new QueueMessagingTemplate(amazonSqsAsync(), cachingDestinationResolverProxy(), null);
+		return new QueueMessagingTemplate(amazonSqsAsync(), cachingDestinationResolverProxy(), sqsMessageConverter());
 	}
 
 	@Bean
@@ -121,17 +120,20 @@ public class AwsSqsConfig {
 	public QueueMessageHandler queueMessageHandler() {
 		QueueMessageHandlerFactory factory = new QueueMessageHandlerFactory();
 		factory.setAmazonSqs(amazonSqsAsync());
-		MappingJackson2MessageConverter messageConverter = new MappingJackson2MessageConverter();
-		messageConverter.setObjectMapper(new ObjectMapper()
-				.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
-				.registerModule(new JavaTimeModule())
-				.enable(SerializationFeature.INDENT_OUTPUT));
-		messageConverter.setStrictContentTypeMatch(false);
-		factory.setArgumentResolvers(Collections.<HandlerMethodArgumentResolver>singletonList(new PayloadArgumentResolver(messageConverter)));
+		factory.setArgumentResolvers(Collections.<HandlerMethodArgumentResolver>singletonList(new PayloadArgumentResolver(sqsMessageConverter())));
 		QueueMessageHandler queueMessageHandler = factory.createQueueMessageHandler();
 		return queueMessageHandler;
 	}
 
+	@Bean
+	public CachingJackson2MessageConverter sqsMessageConverter() {
+		CachingJackson2MessageConverter messageConverter = new CachingJackson2MessageConverter(new ObjectMapper()
+				.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+				.registerModule(new JavaTimeModule()));
+		messageConverter.setStrictContentTypeMatch(false);
+		return messageConverter;
+	}
+
 	@Bean
 	public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
 		return new PropertySourcesPlaceholderConfigurer();
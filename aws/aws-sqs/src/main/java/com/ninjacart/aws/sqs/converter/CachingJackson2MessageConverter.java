@@ -0,0 +1,151 @@
+package com.example.aws.sqs.converter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.core.MethodParameter;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.ObjectUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * {@link MappingJackson2MessageConverter} that resolves the target type of a handler parameter once and keeps an
+ * {@link ObjectReader} per parameter and an {@link ObjectWriter} per payload class. The plain converter resolves the
+ * generic parameter type, constructs a {@code JavaType} and looks up the root (de)serializer on every message.
+ * Strings are written through Jackson's recycled buffers instead of a fresh {@code StringWriter}.
+ * <p>
+ * Conversions with a {@code @JsonView} are delegated to the plain converter.
+ */
+public class CachingJackson2MessageConverter extends MappingJackson2MessageConverter {
+
+	private final ConcurrentHashMap<ReaderKey, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	public CachingJackson2MessageConverter(ObjectMapper objectMapper) {
+		setObjectMapper(objectMapper);
+		setSerializedPayloadClass(String.class);
+	}
+
+	@Override
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		super.setObjectMapper(objectMapper);
+		if(this.readers != null) {
+			this.readers.clear();
+			this.writers.clear();
+		}
+	}
+
+	/**
+	 * Serializes the payload to JSON with the cached writer of its class.
+	 */
+	public String writeValueAsString(Object payload) {
+		try {
+			return getWriter(payload.getClass()).writeValueAsString(payload);
+		} catch(JsonProcessingException e) {
+			throw new MessageConversionException("Could not write JSON: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected Object convertFromInternal(Message<?> message, Class<?> targetClass, @Nullable Object conversionHint) {
+		if(getSerializationView(conversionHint) != null) {
+			return super.convertFromInternal(message, targetClass, conversionHint);
+		}
+		ObjectReader reader = getReader(targetClass, conversionHint);
+		Object payload = message.getPayload();
+		try {
+			if(payload instanceof byte[]) {
+				return reader.readValue((byte[]) payload);
+			}
+			return reader.readValue(payload.toString());
+		} catch(IOException e) {
+			throw new MessageConversionException(message, "Could not read JSON: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected Object convertToInternal(Object payload, @Nullable MessageHeaders headers, @Nullable Object conversionHint) {
+		if(getSerializedPayloadClass() != String.class || getSerializationView(conversionHint) != null) {
+			return super.convertToInternal(payload, headers, conversionHint);
+		}
+		return writeValueAsString(payload);
+	}
+
+	private ObjectReader getReader(Class<?> targetClass, @Nullable Object conversionHint) {
+		ReaderKey key = conversionHint instanceof MethodParameter
+				? new ReaderKey((MethodParameter) conversionHint, targetClass)
+				: new ReaderKey(null, targetClass);
+		ObjectReader reader = this.readers.get(key);
+		if(reader == null) {
+			reader = this.readers.computeIfAbsent(key, k -> getObjectMapper().readerFor(
+					getObjectMapper().getTypeFactory().constructType(resolveType(targetClass, conversionHint))));
+		}
+		return reader;
+	}
+
+	private ObjectWriter getWriter(Class<?> payloadClass) {
+		ObjectWriter writer = this.writers.get(payloadClass);
+		if(writer == null) {
+			writer = this.writers.computeIfAbsent(payloadClass, c -> getObjectMapper().writerFor(c));
+		}
+		return writer;
+	}
+
+	/**
+	 * Resolves the type to read the same way {@link MappingJackson2MessageConverter} does.
+	 */
+	private static Type resolveType(Class<?> targetClass, @Nullable Object conversionHint) {
+		if(!(conversionHint instanceof MethodParameter)) {
+			return targetClass;
+		}
+		MethodParameter param = ((MethodParameter) conversionHint).nestedIfOptional();
+		if(Message.class.isAssignableFrom(param.getParameterType())) {
+			param = param.nested();
+		}
+		return GenericTypeResolver.resolveType(param.getNestedGenericParameterType(), param.getContainingClass());
+	}
+
+	/**
+	 * The containing class is part of the key because a generic handler method inherited by several listeners
+	 * resolves to a different type in each of them.
+	 */
+	private static final class ReaderKey {
+		private final MethodParameter parameter;
+		private final Class<?> containingClass;
+		private final Class<?> targetClass;
+
+		private ReaderKey(@Nullable MethodParameter parameter, Class<?> targetClass) {
+			this.parameter = parameter;
+			this.containingClass = parameter != null ? parameter.getContainingClass() : null;
+			this.targetClass = targetClass;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(this == other) {
+				return true;
+			}
+			if(!(other instanceof ReaderKey)) {
+				return false;
+			}
+			ReaderKey otherKey = (ReaderKey) other;
+			return this.targetClass == otherKey.targetClass && this.containingClass == otherKey.containingClass
+					&& ObjectUtils.nullSafeEquals(this.parameter, otherKey.parameter);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * ObjectUtils.nullSafeHashCode(this.parameter) + this.targetClass.hashCode();
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.example.aws.sqs.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.config.DynamicDoubleProperty;
+import com.netflix.config.DynamicPropertyFactory;
+
+/**
+ * Token bucket implemented as a generic cell rate algorithm: instead of a token count it keeps the theoretical
+ * arrival time of the next permit, so taking permits is a single compare-and-set and never locks. The rate and the
+ * burst are Archaius properties and are read on every call, so they can be changed at runtime.
+ * <ul>
+ * <li>{@code <propertyName>}: permits per second, {@code 0} or less disables the limit</li>
+ * <li>{@code <propertyName>.burst}: permits that can be taken at once after an idle period, defaults to one
+ * second worth of permits</li>
+ * </ul>
+ */
+public class RateLimiter {
+
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final String propertyName;
+	private final DynamicDoubleProperty rate;
+	private final DynamicDoubleProperty burst;
+	private final AtomicLong theoreticalArrivalTime = new AtomicLong(System.nanoTime());
+
+	/**
+	 * @param defaultRate
+	 * 		the permits per second if the property is not set
+	 */
+	public RateLimiter(String propertyName, double defaultRate) {
+		this.propertyName = propertyName;
+		this.rate = DynamicPropertyFactory.getInstance().getDoubleProperty(propertyName, defaultRate);
+		this.burst = DynamicPropertyFactory.getInstance().getDoubleProperty(propertyName + ".burst", 0);
+	}
+
+	public String getPropertyName() {
+		return propertyName;
+	}
+
+	public boolean isLimited() {
+		return rate.get() > 0;
+	}
+
+	/**
+	 * Takes a permit if one is available right away.
+	 *
+	 * @return {@code true} if the permit was taken
+	 */
+	public boolean tryAcquire() {
+		return tryAcquireUpTo(1) == 1;
+	}
+
+	/**
+	 * Takes as many of the requested permits as are available right away.
+	 *
+	 * @return the number of permits taken, {@code 0} if none is available
+	 */
+	public int tryAcquireUpTo(int permits) {
+		double permitsPerSecond = rate.get();
+		if(permitsPerSecond <= 0) {
+			return permits;
+		}
+		long interval = intervalNanos(permitsPerSecond);
+		long tolerance = toleranceNanos(permitsPerSecond, interval);
+		while(true) {
+			long now = System.nanoTime();
+			long tat = theoreticalArrivalTime.get();
+			long start = Math.max(tat, now);
+			// permits whose arrival time lies within the burst tolerance
+			long available = (now + tolerance - start) / interval;
+			if(available <= 0) {
+				return 0;
+			}
+			int taken = (int) Math.min(permits, available);
+			if(theoreticalArrivalTime.compareAndSet(tat, start + taken * interval)) {
+				return taken;
+			}
+		}
+	}
+
+	/**
+	 * Takes at least one and at most the requested number of permits, waiting up to the timeout for the first one.
+	 *
+	 * @return the number of permits taken, {@code 0} if none became available within the timeout
+	 */
+	public int acquireUpTo(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(true) {
+			int taken = tryAcquireUpTo(permits);
+			if(taken > 0) {
+				return taken;
+			}
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0) {
+				return 0;
+			}
+			TimeUnit.NANOSECONDS.sleep(Math.min(remaining, Math.max(nanosUntilAvailable(), 1)));
+		}
+	}
+
+	/**
+	 * Takes the requested number of permits, waiting as long as it takes. The permits are reserved right away, so
+	 * callers that wait concurrently are served in order.
+	 */
+	public void acquire(int permits) throws InterruptedException {
+		double permitsPerSecond = rate.get();
+		if(permitsPerSecond <= 0) {
+			return;
+		}
+		long interval = intervalNanos(permitsPerSecond);
+		long tolerance = toleranceNanos(permitsPerSecond, interval);
+		long now;
+		long start;
+		while(true) {
+			now = System.nanoTime();
+			long tat = theoreticalArrivalTime.get();
+			start = Math.max(tat, now);
+			if(theoreticalArrivalTime.compareAndSet(tat, start + permits * interval)) {
+				break;
+			}
+		}
+		long wait = start + permits * interval - tolerance - now;
+		if(wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * Returns permits that were taken but not used, for example because a receive returned fewer messages.
+	 */
+	public void release(int permits) {
+		double permitsPerSecond = rate.get();
+		if(permits <= 0 || permitsPerSecond <= 0) {
+			return;
+		}
+		long interval = intervalNanos(permitsPerSecond);
+		long now = System.nanoTime();
+		long tat;
+		do {
+			tat = theoreticalArrivalTime.get();
+			if(tat <= now) {
+				// the bucket is full already
+				return;
+			}
+		} while(!theoreticalArrivalTime.compareAndSet(tat, Math.max(now, tat - permits * interval)));
+	}
+
+	private long nanosUntilAvailable() {
+		double permitsPerSecond = rate.get();
+		if(permitsPerSecond <= 0) {
+			return 0;
+		}
+		long interval = intervalNanos(permitsPerSecond);
+		return theoreticalArrivalTime.get() + interval - toleranceNanos(permitsPerSecond, interval) - System.nanoTime();
+	}
+
+	private static long intervalNanos(double permitsPerSecond) {
+		return Math.max(1, (long) (NANOS_PER_SECOND / permitsPerSecond));
+	}
+
+	private long toleranceNanos(double permitsPerSecond, long interval) {
+		double burstPermits = burst.get() > 0 ? burst.get() : Math.max(1, permitsPerSecond);
+		return (long) (burstPermits * interval);
+	}
+}
@@ -0,0 +1,48 @@
+package com.example.aws.sqs.service;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+
+import com.example.aws.s3.service.AwsS3Service;
+
+/**
+ * Keeps claim-check payloads in S3 through the {@link AwsS3Service} of the aws-s3 module.
+ * <p>
+ * This class is only loaded when the aws-s3 module is on the classpath.
+ */
+public class AwsS3ClaimCheckStore implements ClaimCheckStore {
+
+	public static final String AWS_S3_SERVICE_CLASS_NAME = "com.example.aws.s3.service.AwsS3Service";
+
+	private final AwsS3Service awsS3Service;
+
+	public AwsS3ClaimCheckStore(AwsS3Service awsS3Service) {
+		this.awsS3Service = awsS3Service;
+	}
+
+	/**
+	 * @return the store of the {@link AwsS3Service} bean, or {@code null} if the bean factory has no such bean
+	 */
+	public static ClaimCheckStore create(BeanFactory beanFactory) {
+		try {
+			return new AwsS3ClaimCheckStore(beanFactory.getBean(AwsS3Service.class));
+		} catch(NoSuchBeanDefinitionException e) {
+			return null;
+		}
+	}
+
+	@Override
+	public void upload(String bucketName, String key, String payload) throws Exception {
+		awsS3Service.upload(bucketName, key, payload);
+	}
+
+	@Override
+	public byte[] download(String bucketName, String key) throws Exception {
+		return awsS3Service.downloadAsArray(bucketName, key);
+	}
+
+	@Override
+	public void delete(String bucketName, String key) throws Exception {
+		awsS3Service.delete(bucketName, key);
+	}
+}
@@ -0,0 +1,15 @@
+package com.example.aws.sqs.service;
+
+/**
+ * Where the payloads of claim-check messages are kept. The aws-s3 module is an optional dependency, so the
+ * publisher and the listener container only refer to this interface. {@link AwsS3ClaimCheckStore} is only loaded
+ * when the module is on the classpath.
+ */
+public interface ClaimCheckStore {
+
+	void upload(String bucketName, String key, String payload) throws Exception;
+
+	byte[] download(String bucketName, String key) throws Exception;
+
+	void delete(String bucketName, String key) throws Exception;
+}
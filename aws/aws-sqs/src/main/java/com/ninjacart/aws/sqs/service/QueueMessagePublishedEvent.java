@@ -0,0 +1,24 @@
+package com.example.aws.sqs.service;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published by {@link QueuePublisher} after a message without delay was sent to a queue. Listener containers of the
+ * same application use it as a hint to stop parking an idle queue and receive right away.
+ */
+public class QueueMessagePublishedEvent extends ApplicationEvent {
+
+	private final String queueName;
+
+	public QueueMessagePublishedEvent(Object source, String queueName) {
+		super(source);
+		this.queueName = queueName;
+	}
+
+	/**
+	 * @return the queue name or url the message was sent to
+	 */
+	public String getQueueName() {
+		return this.queueName;
+	}
+}
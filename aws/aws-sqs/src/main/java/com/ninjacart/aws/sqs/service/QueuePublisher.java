@@ -1,12 +1,47 @@
 package com.example.aws.sqs.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.aws.messaging.core.QueueMessagingTemplate;
-import org.springframework.cloud.aws.messaging.core.SqsMessageHeaders;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.core.CachingDestinationResolverProxy;
 import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import com.example.aws.sqs.codec.MessageCodec;
+import com.example.aws.sqs.codec.MessageCompressor;
+import com.example.aws.sqs.converter.CachingJackson2MessageConverter;
+import com.example.aws.sqs.ratelimit.RateLimiter;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -14,14 +49,485 @@ import lombok.extern.slf4j.Slf4j;
 @Service
 public class QueuePublisher {
 
-	@Autowired private QueueMessagingTemplate queueMessagingTemplate;
+	static final int MAX_BATCH_ENTRIES = 10;
+	static final int MAX_BATCH_PAYLOAD_SIZE = 256 * 1024;
+	/**
+	 * Error code of the batch entries whose outcome is unknown because the sending thread was interrupted.
+	 */
+	public static final String OUTCOME_UNKNOWN = "OutcomeUnknown";
+	private static final String RATE_LIMIT_PROPERTY_PREFIX = "cloud.aws.sqs.publisher.rateLimit.";
+	private static final String TEXT_CONTENT_TYPE = "text/plain;charset=UTF-8";
+	private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+
+	@Autowired private CachingJackson2MessageConverter messageConverter;
+	@Autowired private ApplicationEventPublisher applicationEventPublisher;
+	@Autowired private AmazonSQSAsync amazonSqsAsync;
+	@Autowired private CachingDestinationResolverProxy<String> destinationResolver;
+	@Value("${cloud.aws.sqs.publisher.maxInFlight:1000}") private int maxInFlightPublishes;
+	@Value("${cloud.aws.sqs.publisher.backpressure:BLOCK}") private BackpressurePolicy backpressurePolicy;
+	@Value("${cloud.aws.sqs.claimCheck.bucket:#{null}}") private String claimCheckBucket;
+	@Value("${cloud.aws.sqs.claimCheck.threshold:262144}") private int claimCheckThreshold;
+	@Autowired private BeanFactory beanFactory;
+	@Value("${cloud.aws.sqs.compression.codec:#{null}}") private String compressionCodec;
+	@Value("${cloud.aws.sqs.compression.threshold:1024}") private int compressionThreshold;
+	@Autowired(required = false) private List<MessageCodec> messageCodecs;
+
+	private MessageCompressor messageCompressor;
+	private ClaimCheckStore claimCheckStore;
+
+	private Semaphore inFlightPublishes;
+	private final ConcurrentHashMap<String, RateLimiter> rateLimiters = new ConcurrentHashMap<>();
+
+	/**
+	 * What {@link #sendMessageToQueueAsync} does when {@code cloud.aws.sqs.publisher.maxInFlight} publishes are
+	 * already in flight.
+	 */
+	public enum BackpressurePolicy {
+		/** wait until an in-flight publish completed */
+		BLOCK,
+		/** return a future failed with a {@link RejectedExecutionException} */
+		FAIL_FAST,
+		/** send synchronously on the calling thread */
+		CALLER_RUNS
+	}
+
+	@PostConstruct
+	public void init() {
+		inFlightPublishes = new Semaphore(maxInFlightPublishes);
+		List<MessageCodec> codecs = new ArrayList<>(MessageCompressor.defaultCodecs());
+		if(messageCodecs != null) {
+			codecs.addAll(messageCodecs);
+		}
+		messageCompressor = new MessageCompressor(codecs, compressionCodec, compressionThreshold);
+		if(claimCheckBucket != null) {
+			if(ClassUtils.isPresent(AwsS3ClaimCheckStore.AWS_S3_SERVICE_CLASS_NAME, getClass().getClassLoader())) {
+				claimCheckStore = AwsS3ClaimCheckStore.create(beanFactory);
+			}
+			if(claimCheckStore == null) {
+				throw new IllegalStateException("cloud.aws.sqs.claimCheck.bucket is set but no AwsS3Service is configured");
+			}
+		}
+	}
+
+	/**
+	 * @return the compression stage of this publisher, its counters show how many bytes compression saved
+	 */
+	public MessageCompressor getMessageCompressor() {
+		return messageCompressor;
+	}
 
 	public <T> void sendMessageToQueue(String queueName, T payload) {
 		sendMessageToQueue(queueName, payload, 0l);
 	}
 
 	public <T> void sendMessageToQueue(String queueName, T payload, Long delayInMillis) {
-		Map<String, Object> headers = new HashMap<>();
+		int delaySeconds = toDelaySeconds(delayInMillis);
+		log.debug("Posting To Queue: {} Payload: {}", queueName, payload);
+		acquireRate(queueName, 1);
+		SendMessageRequest request = toSendMessageRequest(destinationResolver.resolveDestination(queueName), payload, delaySeconds);
+		offloadIfLarge(request);
+		try {
+			amazonSqsAsync.sendMessage(request);
+		} catch(RuntimeException e) {
+			deleteOffloadedPayload(request.getMessageBody(), request.getMessageAttributes(), e);
+			throw e;
+		}
+		if(delaySeconds == 0) {
+			applicationEventPublisher.publishEvent(new QueueMessagePublishedEvent(this, queueName));
+		}
+	}
+
+	public <T> CompletableFuture<SendResult<T>> sendMessageToQueueAsync(String queueName, T payload) {
+		return sendMessageToQueueAsync(queueName, payload, 0l);
+	}
+
+	/**
+	 * Sends the payload with the asynchronous SQS client and returns without waiting for the response. At most
+	 * {@code cloud.aws.sqs.publisher.maxInFlight} publishes are in flight at a time, beyond that the configured
+	 * {@link BackpressurePolicy} applies. The policy also decides what happens when the rate limit of the queue is
+	 * exhausted: FAIL_FAST rejects the message, the other policies wait for the rate limit. The future completes
+	 * with a failed {@link SendResult} if SQS rejected the message, it only completes exceptionally if the publish
+	 * was not attempted at all.
+	 * <p>
+	 * A payload above the claim-check threshold is only uploaded once the publish was admitted, and the object is
+	 * deleted again if SQS rejects the message.
+	 */
+	public <T> CompletableFuture<SendResult<T>> sendMessageToQueueAsync(String queueName, T payload, Long delayInMillis) {
+		CompletableFuture<SendResult<T>> future = new CompletableFuture<>();
+		SendMessageRequest request;
+		try {
+			request = toSendMessageRequest(destinationResolver.resolveDestination(queueName), payload, toDelaySeconds(delayInMillis));
+		} catch(RuntimeException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		RateLimiter rateLimiter = getRateLimiter(queueName);
+		if(backpressurePolicy == BackpressurePolicy.FAIL_FAST) {
+			// the in-flight permit is taken first, so a rejected message never spends a token of the rate limit
+			if(!inFlightPublishes.tryAcquire()) {
+				future.completeExceptionally(new RejectedExecutionException(
+						"More than " + maxInFlightPublishes + " messages in flight, rejected message to queue " + queueName));
+				return future;
+			}
+			if(!rateLimiter.tryAcquire()) {
+				inFlightPublishes.release();
+				future.completeExceptionally(new RejectedExecutionException(
+						"Rate limit of queue " + queueName + " exceeded, rejected message"));
+				return future;
+			}
+		} else {
+			try {
+				rateLimiter.acquire(1);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				future.completeExceptionally(e);
+				return future;
+			}
+			if(!inFlightPublishes.tryAcquire()) {
+				if(backpressurePolicy == BackpressurePolicy.CALLER_RUNS) {
+					try {
+						offloadIfLarge(request);
+					} catch(RuntimeException e) {
+						rateLimiter.release(1);
+						future.completeExceptionally(e);
+						return future;
+					}
+					future.complete(send(queueName, payload, request));
+					return future;
+				}
+				try {
+					inFlightPublishes.acquire();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					rateLimiter.release(1);
+					future.completeExceptionally(e);
+					return future;
+				}
+			}
+		}
+
+		try {
+			offloadIfLarge(request);
+		} catch(RuntimeException e) {
+			inFlightPublishes.release();
+			rateLimiter.release(1);
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		log.debug("Posting async To Queue: {} Payload: {}", queueName, payload);
+		try {
+			amazonSqsAsync.sendMessageAsync(request, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+
+				@Override
+				public void onError(Exception exception) {
+					inFlightPublishes.release();
+					deleteOffloadedPayload(request.getMessageBody(), request.getMessageAttributes(), exception);
+					future.complete(toFailure(payload, exception));
+				}
+
+				@Override
+				public void onSuccess(SendMessageRequest request, SendMessageResult result) {
+					inFlightPublishes.release();
+					publishedMessage(queueName, request.getDelaySeconds());
+					future.complete(SendResult.success(payload, result.getMessageId()));
+				}
+			});
+		} catch(RuntimeException e) {
+			inFlightPublishes.release();
+			deleteOffloadedPayload(request.getMessageBody(), request.getMessageAttributes(), e);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	private <T> SendResult<T> send(String queueName, T payload, SendMessageRequest request) {
+		log.debug("Posting To Queue: {} Payload: {}", queueName, payload);
+		try {
+			SendMessageResult result = amazonSqsAsync.sendMessage(request);
+			publishedMessage(queueName, request.getDelaySeconds());
+			return SendResult.success(payload, result.getMessageId());
+		} catch(RuntimeException e) {
+			deleteOffloadedPayload(request.getMessageBody(), request.getMessageAttributes(), e);
+			return toFailure(payload, e);
+		}
+	}
+
+	/**
+	 * The rate limit of a queue is read from the Archaius property {@code cloud.aws.sqs.publisher.rateLimit.<queue>}
+	 * in messages per second, and can be changed at runtime. A queue without the property is not limited.
+	 */
+	RateLimiter getRateLimiter(String queueName) {
+		RateLimiter rateLimiter = rateLimiters.get(queueName);
+		if(rateLimiter == null) {
+			rateLimiter = rateLimiters.computeIfAbsent(queueName, name -> new RateLimiter(RATE_LIMIT_PROPERTY_PREFIX + name, 0));
+		}
+		return rateLimiter;
+	}
+
+	private void acquireRate(String queueName, int permits) {
+		try {
+			getRateLimiter(queueName).acquire(permits);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for the rate limit of queue " + queueName, e);
+		}
+	}
+
+	private static <T> SendResult<T> toFailure(T payload, Exception exception) {
+		if(exception instanceof AmazonServiceException) {
+			AmazonServiceException serviceException = (AmazonServiceException) exception;
+			return SendResult.failure(payload, serviceException.getErrorCode(), serviceException.getErrorMessage(),
+					serviceException.getErrorType() == AmazonServiceException.ErrorType.Client);
+		}
+		return SendResult.failure(payload, exception.getClass().getSimpleName(), exception.getMessage(), false);
+	}
+
+	private void publishedMessage(String queueName, Integer delaySeconds) {
+		if(delaySeconds == null || delaySeconds == 0) {
+			applicationEventPublisher.publishEvent(new QueueMessagePublishedEvent(this, queueName));
+		}
+	}
+
+	public <T> List<SendResult<T>> sendMessagesToQueue(String queueName, Collection<T> payloads) {
+		return sendMessagesToQueue(queueName, payloads, 0l);
+	}
+
+	/**
+	 * Sends the payloads with {@code SendMessageBatch} requests. Every payload is serialized once with the SQS message
+	 * converter, then the entries are packed into requests of at most 10 entries and
+	 * 256 KB. All requests are sent concurrently and this method returns once all of them completed. Claim-check
+	 * objects of entries that SQS rejected are deleted again. If the calling thread is interrupted, the requests that
+	 * completed are still reported as they completed, the others fail with the error code {@value #OUTCOME_UNKNOWN}
+	 * because SQS may accept them later.
+	 *
+	 * @return one result per payload, in the iteration order of {@code payloads}
+	 */
+	public <T> List<SendResult<T>> sendMessagesToQueue(String queueName, Collection<T> payloads, Long delayInMillis) {
+		if(payloads.isEmpty()) {
+			return Collections.emptyList();
+		}
+		int delaySeconds = toDelaySeconds(delayInMillis);
+		String queueUrl = destinationResolver.resolveDestination(queueName);
+		List<T> payloadList = new ArrayList<>(payloads);
+		List<SendResult<T>> results = new ArrayList<>(Collections.<SendResult<T>>nCopies(payloadList.size(), null));
+
+		List<List<Integer>> batches = new ArrayList<>();
+		List<SendMessageBatchRequest> requests = new ArrayList<>();
+		List<SendMessageBatchRequestEntry> entries = new ArrayList<>(MAX_BATCH_ENTRIES);
+		List<Integer> batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+		int batchSize = 0;
+		for(int i = 0; i < payloadList.size(); i++) {
+			SendMessageBatchRequestEntry entry;
+			try {
+				entry = toBatchEntry(Integer.toString(i), payloadList.get(i), delaySeconds);
+			} catch(RuntimeException e) {
+				log.warn("Could not prepare message {} for queue {}", i, queueName, e);
+				results.set(i, SendResult.failure(payloadList.get(i), e.getClass().getSimpleName(), e.getMessage(), false));
+				continue;
+			}
+			int entrySize = sizeOf(entry.getMessageBody(), entry.getMessageAttributes());
+			if(entrySize > MAX_BATCH_PAYLOAD_SIZE) {
+				results.set(i, SendResult.failure(payloadList.get(i), "MessageTooLong",
+						"Message of " + entrySize + " bytes exceeds the limit of " + MAX_BATCH_PAYLOAD_SIZE + " bytes", true));
+				continue;
+			}
+			if(entries.size() == MAX_BATCH_ENTRIES || batchSize + entrySize > MAX_BATCH_PAYLOAD_SIZE) {
+				requests.add(new SendMessageBatchRequest(queueUrl, entries));
+				batches.add(batch);
+				entries = new ArrayList<>(MAX_BATCH_ENTRIES);
+				batch = new ArrayList<>(MAX_BATCH_ENTRIES);
+				batchSize = 0;
+			}
+			entries.add(entry);
+			batch.add(i);
+			batchSize += entrySize;
+		}
+		if(!entries.isEmpty()) {
+			requests.add(new SendMessageBatchRequest(queueUrl, entries));
+			batches.add(batch);
+		}
+
+		log.debug("Posting {} messages to queue {} in {} batches", payloadList.size(), queueName, requests.size());
+		List<Future<SendMessageBatchResult>> futures = new ArrayList<>(requests.size());
+		RateLimiter rateLimiter = getRateLimiter(queueName);
+		for(int b = 0; b < requests.size(); b++) {
+			try {
+				rateLimiter.acquire(requests.get(b).getEntries().size());
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for(int unsent = b; unsent < requests.size(); unsent++) {
+					failBatch(batches.get(unsent), payloadList, results, e);
+					deleteOffloadedPayloads(requests.get(unsent), e);
+				}
+				break;
+			}
+			futures.add(amazonSqsAsync.sendMessageBatchAsync(requests.get(b)));
+		}
+
+		boolean sent = false;
+		boolean interrupted = false;
+		for(int b = 0; b < futures.size(); b++) {
+			Future<SendMessageBatchResult> future = futures.get(b);
+			if(interrupted && !future.isDone()) {
+				// SQS may still accept the batch, so resending it could duplicate its messages
+				for(int i : batches.get(b)) {
+					results.set(i, SendResult.failure(payloadList.get(i), OUTCOME_UNKNOWN,
+							"Interrupted while the batch was in flight, it may have been sent", false));
+				}
+				continue;
+			}
+			try {
+				SendMessageBatchResult result = future.get();
+				for(SendMessageBatchResultEntry successful : result.getSuccessful()) {
+					int i = Integer.parseInt(successful.getId());
+					results.set(i, SendResult.success(payloadList.get(i), successful.getMessageId()));
+					sent = true;
+				}
+				for(BatchResultErrorEntry failed : result.getFailed()) {
+					int i = Integer.parseInt(failed.getId());
+					results.set(i, SendResult.failure(payloadList.get(i), failed.getCode(), failed.getMessage(), failed.isSenderFault()));
+					for(SendMessageBatchRequestEntry entry : requests.get(b).getEntries()) {
+						if(entry.getId().equals(failed.getId())) {
+							deleteOffloadedPayload(entry.getMessageBody(), entry.getMessageAttributes(), null);
+						}
+					}
+				}
+			} catch(InterruptedException e) {
+				// collect the batches that completed anyway, the interrupt is restored once all of them were checked
+				interrupted = true;
+				b--;
+			} catch(ExecutionException e) {
+				log.warn("Batch of {} messages to queue {} failed", batches.get(b).size(), queueName, e.getCause());
+				failBatch(batches.get(b), payloadList, results, e.getCause());
+				deleteOffloadedPayloads(requests.get(b), e.getCause());
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if(sent && delaySeconds == 0) {
+			applicationEventPublisher.publishEvent(new QueueMessagePublishedEvent(this, queueName));
+		}
+		return results;
+	}
+
+	private <T> SendMessageBatchRequestEntry toBatchEntry(String id, T payload, int delaySeconds) {
+		Map<String, MessageAttributeValue> attributes = new HashMap<>(4);
+		String body = offloadIfLarge(messageCompressor.compress(serialize(payload, attributes), attributes), attributes);
+		return new SendMessageBatchRequestEntry(id, body)
+				.withMessageAttributes(attributes)
+				.withDelaySeconds(delaySeconds);
+	}
+
+	/**
+	 * @return the request with the serialized and compressed payload, not yet offloaded to the claim-check bucket
+	 */
+	private <T> SendMessageRequest toSendMessageRequest(String queueUrl, T payload, int delaySeconds) {
+		Map<String, MessageAttributeValue> attributes = new HashMap<>(4);
+		String body = messageCompressor.compress(serialize(payload, attributes), attributes);
+		return new SendMessageRequest(queueUrl, body)
+				.withMessageAttributes(attributes)
+				.withDelaySeconds(delaySeconds);
+	}
+
+	private void offloadIfLarge(SendMessageRequest request) {
+		request.setMessageBody(offloadIfLarge(request.getMessageBody(), request.getMessageAttributes()));
+	}
+
+	/**
+	 * Uploads the body to the claim-check bucket if the message exceeds the threshold.
+	 *
+	 * @return the body to send, either the original one or a {@link S3PayloadPointer}
+	 */
+	private String offloadIfLarge(String body, Map<String, MessageAttributeValue> attributes) {
+		if(claimCheckBucket == null) {
+			return body;
+		}
+		int size = sizeOf(body, attributes);
+		if(size <= claimCheckThreshold) {
+			return body;
+		}
+		S3PayloadPointer pointer = new S3PayloadPointer(claimCheckBucket, UUID.randomUUID().toString());
+		try {
+			claimCheckStore.upload(pointer.getS3BucketName(), pointer.getS3Key(), body);
+		} catch(Exception e) {
+			throw new IllegalStateException("Could not upload payload of " + size + " bytes to bucket " + claimCheckBucket, e);
+		}
+		log.debug("Offloaded payload of {} bytes to {}/{}", size, pointer.getS3BucketName(), pointer.getS3Key());
+		attributes.put(S3PayloadPointer.SIZE_ATTRIBUTE,
+				new MessageAttributeValue().withDataType("Number").withStringValue(Integer.toString(size)));
+		return pointer.toJson();
+	}
+
+	/**
+	 * Deletes the claim-check object of a message that SQS rejected. If the outcome of a send is unknown, for
+	 * example after a network error, the object is kept, as the message may have been sent. Those objects, and
+	 * objects of messages lost between upload and send, are left to a lifecycle rule of the bucket.
+	 *
+	 * @param cause
+	 * 		why the message was not sent, {@code null} if SQS rejected it as a failed batch entry
+	 */
+	private void deleteOffloadedPayload(String body, Map<String, MessageAttributeValue> attributes, Throwable cause) {
+		if(claimCheckBucket == null || (cause != null && !(cause instanceof AmazonServiceException) && !(cause instanceof InterruptedException))) {
+			return;
+		}
+		S3PayloadPointer pointer = S3PayloadPointer.fromMessage(body, attributes);
+		if(pointer == null) {
+			return;
+		}
+		try {
+			claimCheckStore.delete(pointer.getS3BucketName(), pointer.getS3Key());
+		} catch(Exception e) {
+			log.warn("Could not delete payload {}/{} of a message that was not sent", pointer.getS3BucketName(), pointer.getS3Key(), e);
+		}
+	}
+
+	private void deleteOffloadedPayloads(SendMessageBatchRequest request, Throwable cause) {
+		for(SendMessageBatchRequestEntry entry : request.getEntries()) {
+			deleteOffloadedPayload(entry.getMessageBody(), entry.getMessageAttributes(), cause);
+		}
+	}
+
+	/**
+	 * Serializes the payload the same way {@link QueueMessagingTemplate#convertAndSend} does, strings as they are and
+	 * everything else as JSON, and sets the matching content type attribute.
+	 */
+	private <T> String serialize(T payload, Map<String, MessageAttributeValue> attributes) {
+		String body;
+		String contentType;
+		if(payload instanceof String) {
+			body = (String) payload;
+			contentType = TEXT_CONTENT_TYPE;
+		} else {
+			body = messageConverter.writeValueAsString(payload);
+			contentType = JSON_CONTENT_TYPE;
+		}
+		attributes.put(MessageHeaders.CONTENT_TYPE, new MessageAttributeValue().withDataType("String").withStringValue(contentType));
+		return body;
+	}
+
+	private static int sizeOf(String body, Map<String, MessageAttributeValue> attributes) {
+		int size = body.getBytes(StandardCharsets.UTF_8).length;
+		for(Map.Entry<String, MessageAttributeValue> attribute : attributes.entrySet()) {
+			size += attribute.getKey().getBytes(StandardCharsets.UTF_8).length
+					+ attribute.getValue().getDataType().getBytes(StandardCharsets.UTF_8).length
+					+ attribute.getValue().getStringValue().getBytes(StandardCharsets.UTF_8).length;
+		}
+		return size;
+	}
+
+	private static <T> void failBatch(List<Integer> batch, List<T> payloads, List<SendResult<T>> results, Throwable cause) {
+		for(int i : batch) {
+			results.set(i, SendResult.failure(payloads.get(i), cause.getClass().getSimpleName(), cause.getMessage(), false));
+		}
+	}
+
+	/**
+	 * SQS delays messages by whole seconds, from 1 second up to 15 minutes.
+	 */
+	private static int toDelaySeconds(Long delayInMillis) {
 		int delay = delayInMillis.intValue();
 		if(delay > 0 && delay < 1000) {
 			log.debug("Too small a delay: {}. Assuming 1000ms", delay);
@@ -31,9 +537,7 @@ public class QueuePublisher {
 			log.debug("Too big a delay: {}. Assuming 900s", delay);
 			delay = 900000;
 		}
-		headers.put(SqsMessageHeaders.SQS_DELAY_HEADER, delay/1000);
-		log.debug(String.format("Posting To Queue: %s Payload: %s", queueName, payload));
-		queueMessagingTemplate.convertAndSend(queueName, payload, headers);
+		return delay/1000;
 	}
 
 }
\ No newline at end of file
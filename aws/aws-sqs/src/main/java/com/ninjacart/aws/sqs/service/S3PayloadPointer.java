@@ -0,0 +1,55 @@
+package com.example.aws.sqs.service;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Body of a claim-check message. {@link QueuePublisher} uploads payloads above the configured threshold to S3
+ * and sends this pointer instead, marked with the {@link #SIZE_ATTRIBUTE} message attribute that holds the size
+ * of the original payload. The listener container downloads the payload before invoking the handler and deletes
+ * the object once the message was deleted.
+ */
+@Data
+@NoArgsConstructor
+public class S3PayloadPointer {
+
+	public static final String SIZE_ATTRIBUTE = "ExtendedPayloadSize";
+
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+	private String s3BucketName;
+	private String s3Key;
+
+	public S3PayloadPointer(String s3BucketName, String s3Key) {
+		this.s3BucketName = s3BucketName;
+		this.s3Key = s3Key;
+	}
+
+	/**
+	 * @return the pointer of a claim-check message, {@code null} if the message carries its payload itself
+	 */
+	public static S3PayloadPointer fromMessage(String body, Map<String, MessageAttributeValue> messageAttributes) {
+		if(messageAttributes == null || !messageAttributes.containsKey(SIZE_ATTRIBUTE)) {
+			return null;
+		}
+		try {
+			return OBJECT_MAPPER.readValue(body, S3PayloadPointer.class);
+		} catch(IOException e) {
+			throw new IllegalArgumentException("Invalid S3 payload pointer: " + body, e);
+		}
+	}
+
+	public String toJson() {
+		try {
+			return OBJECT_MAPPER.writeValueAsString(this);
+		} catch(IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
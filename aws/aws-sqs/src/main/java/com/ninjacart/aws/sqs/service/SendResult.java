@@ -0,0 +1,40 @@
+package com.example.aws.sqs.service;
+
+import lombok.Getter;
+
+/**
+ * Outcome of sending a single payload with {@link QueuePublisher#sendMessagesToQueue}. Failed results keep the
+ * payload, so callers can resend exactly the failed ones.
+ */
+@Getter
+public class SendResult<T> {
+	private final T payload;
+	private final String messageId;
+	private final String errorCode;
+	private final String errorMessage;
+	private final boolean senderFault;
+
+	private SendResult(T payload, String messageId, String errorCode, String errorMessage, boolean senderFault) {
+		this.payload = payload;
+		this.messageId = messageId;
+		this.errorCode = errorCode;
+		this.errorMessage = errorMessage;
+		this.senderFault = senderFault;
+	}
+
+	static <T> SendResult<T> success(T payload, String messageId) {
+		return new SendResult<>(payload, messageId, null, null, false);
+	}
+
+	/**
+	 * @param senderFault
+	 * 		{@code true} if the entry itself was invalid and resending it unchanged fails again
+	 */
+	static <T> SendResult<T> failure(T payload, String errorCode, String errorMessage, boolean senderFault) {
+		return new SendResult<>(payload, null, errorCode, errorMessage, senderFault);
+	}
+
+	public boolean isSuccessful() {
+		return this.messageId != null;
+	}
+}
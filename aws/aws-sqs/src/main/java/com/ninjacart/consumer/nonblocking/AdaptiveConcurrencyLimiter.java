@@ -0,0 +1,119 @@
+package com.example.consumer.nonblocking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * AIMD concurrency limit of a single queue. Handler executions are sampled in windows of at least
+ * {@link #MIN_WINDOW_SAMPLES} executions (or one second). A window whose average latency stays within
+ * {@link #LATENCY_TOLERANCE} times the healthy baseline and whose error rate stays below {@link #MAX_ERROR_RATE}
+ * raises the limit by one, as long as the limit was actually used. Any other window multiplies the limit with
+ * {@link #BACKOFF_RATIO}. The limit always stays within the configured bounds.
+ */
+class AdaptiveConcurrencyLimiter {
+
+	static final int MIN_WINDOW_SAMPLES = 10;
+	static final double LATENCY_TOLERANCE = 2.0;
+	static final double MAX_ERROR_RATE = 0.1;
+	static final double BACKOFF_RATIO = 0.9;
+	private static final double BASELINE_SMOOTHING = 0.1;
+	private static final long MAX_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final IntConsumer limitChangeListener;
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile int limit;
+
+	private long windowStartNanos = System.nanoTime();
+	private int windowSamples;
+	private int windowErrors;
+	private long windowLatencyNanos;
+	private int windowMaxInFlight;
+	private double baselineLatencyNanos;
+
+	/**
+	 * @param limitChangeListener
+	 * 		called with the difference between the new and the old limit every time the limit changes
+	 */
+	AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, IntConsumer limitChangeListener) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+		this.limitChangeListener = limitChangeListener;
+	}
+
+	int getLimit() {
+		return this.limit;
+	}
+
+	int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	void onStart() {
+		this.inFlight.incrementAndGet();
+	}
+
+	void onComplete(long latencyNanos, boolean failed) {
+		int inFlightBeforeCompletion = this.inFlight.getAndDecrement();
+		int delta = 0;
+		synchronized (this) {
+			this.windowSamples++;
+			this.windowLatencyNanos += latencyNanos;
+			this.windowMaxInFlight = Math.max(this.windowMaxInFlight, inFlightBeforeCompletion);
+			if (failed) {
+				this.windowErrors++;
+			}
+
+			long now = System.nanoTime();
+			if (this.windowSamples >= Math.max(MIN_WINDOW_SAMPLES, this.limit) || now - this.windowStartNanos >= MAX_WINDOW_NANOS) {
+				delta = closeWindow();
+				this.windowStartNanos = now;
+			}
+		}
+
+		if (delta != 0) {
+			this.limitChangeListener.accept(delta);
+		}
+	}
+
+	private int closeWindow() {
+		double averageLatency = (double) this.windowLatencyNanos / this.windowSamples;
+		double errorRate = (double) this.windowErrors / this.windowSamples;
+		boolean limitUsed = this.windowMaxInFlight >= this.limit;
+		this.windowSamples = 0;
+		this.windowErrors = 0;
+		this.windowLatencyNanos = 0;
+		this.windowMaxInFlight = 0;
+
+		if (this.baselineLatencyNanos == 0) {
+			this.baselineLatencyNanos = averageLatency;
+			return 0;
+		}
+
+		int oldLimit = this.limit;
+		int newLimit = oldLimit;
+		if (errorRate > MAX_ERROR_RATE || averageLatency > this.baselineLatencyNanos * LATENCY_TOLERANCE) {
+			newLimit = Math.max(this.minLimit, Math.min(oldLimit - 1, (int) (oldLimit * BACKOFF_RATIO)));
+			if (newLimit == oldLimit) {
+				// already at the lower bound, accept the degraded latency as the new normal
+				updateBaseline(averageLatency);
+			}
+		} else {
+			updateBaseline(averageLatency);
+			if (limitUsed) {
+				newLimit = Math.min(this.maxLimit, oldLimit + 1);
+			}
+		}
+
+		this.limit = newLimit;
+		return newLimit - oldLimit;
+	}
+
+	private void updateBaseline(double averageLatency) {
+		this.baselineLatencyNanos += (averageLatency - this.baselineLatencyNanos) * BASELINE_SMOOTHING;
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.consumer.nonblocking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The free worker slots of a single queue. Pollers wait for released slots on a {@link Condition} rather than on
+ * the monitor of the counter, so a poller running on a virtual thread does not pin its carrier thread while it
+ * waits.
+ */
+class AvailableSlots extends AtomicInteger {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = this.lock.newCondition();
+
+	AvailableSlots(int slots) {
+		super(slots);
+	}
+
+	/**
+	 * Waits until {@link #signalRelease()} is called or the time elapsed.
+	 */
+	void awaitRelease(long timeMillis) throws InterruptedException {
+		this.lock.lock();
+		try {
+			this.released.await(timeMillis, TimeUnit.MILLISECONDS);
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Wakes up one poller waiting for slots.
+	 */
+	void signalRelease() {
+		this.lock.lock();
+		try {
+			this.released.signal();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch listener invocation. A handler of a batch listener queue receives all messages of a receive
+ * as one {@code List} payload and can declare a parameter
+ * {@code @Header(BatchAcknowledgment.HEADER) BatchAcknowledgment acknowledgment} to report single messages as
+ * failed. The deletion policy of the queue is then applied per message: failed messages are treated as if their
+ * handler had thrown, all others as processed successfully. If the handler itself throws, every message of the
+ * batch is treated as failed.
+ */
+public class BatchAcknowledgment {
+
+	public static final String HEADER = "BatchAcknowledgment";
+
+	private final List<String> messageIds;
+	private final BitSet failedMessages;
+
+	BatchAcknowledgment(List<Message> messages) {
+		List<String> messageIds = new ArrayList<>(messages.size());
+		for (Message message : messages) {
+			messageIds.add(message.getMessageId());
+		}
+		this.messageIds = Collections.unmodifiableList(messageIds);
+		this.failedMessages = new BitSet(messages.size());
+	}
+
+	/**
+	 * @return the number of messages in the batch
+	 */
+	public int size() {
+		return this.messageIds.size();
+	}
+
+	/**
+	 * @return the SQS message ids of the batch, in the order of the payload list
+	 */
+	public List<String> getMessageIds() {
+		return this.messageIds;
+	}
+
+	/**
+	 * Marks the message at the given position of the payload list as failed.
+	 *
+	 * @param index
+	 * 		the position of the message in the payload list
+	 */
+	public synchronized void failed(int index) {
+		if (index < 0 || index >= this.messageIds.size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.messageIds.size());
+		}
+		this.failedMessages.set(index);
+	}
+
+	/**
+	 * Marks the message with the given SQS message id as failed.
+	 *
+	 * @param messageId
+	 * 		the id of the failed message
+	 */
+	public void failed(String messageId) {
+		int index = this.messageIds.indexOf(messageId);
+		if (index < 0) {
+			throw new IllegalArgumentException("Message '" + messageId + "' is not part of this batch");
+		}
+		failed(index);
+	}
+
+	public synchronized boolean isFailed(int index) {
+		return this.failedMessages.get(index);
+	}
+}
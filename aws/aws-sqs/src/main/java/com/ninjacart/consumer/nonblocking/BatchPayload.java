@@ -0,0 +1,60 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Builds the payload of a batch listener invocation: one JSON array with an element per message, in receive order.
+ * A body that is exactly one JSON value, for example a serialized object, is embedded as it is. Any other body, like
+ * plain text, is embedded as a JSON string, so the array stays valid and a {@code List<String>} parameter receives
+ * the bodies unchanged.
+ */
+final class BatchPayload {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private BatchPayload() {
+	}
+
+	static String toJsonArray(List<Message> messages) {
+		int payloadLength = messages.size() + 1;
+		for (Message message : messages) {
+			payloadLength += message.getBody().length();
+		}
+		StringBuilder payload = new StringBuilder(payloadLength).append('[');
+		for (int i = 0; i < messages.size(); i++) {
+			if (i > 0) {
+				payload.append(',');
+			}
+			String body = messages.get(i).getBody();
+			if (isJsonValue(body)) {
+				payload.append(body);
+			} else {
+				payload.append('"').append(JsonStringEncoder.getInstance().quoteAsString(body)).append('"');
+			}
+		}
+		return payload.append(']').toString();
+	}
+
+	/**
+	 * Scans the body with a streaming parser, which validates it without building a tree.
+	 *
+	 * @return {@code true} if the body consists of exactly one JSON value
+	 */
+	static boolean isJsonValue(String body) {
+		try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+			if (parser.nextToken() == null) {
+				return false;
+			}
+			parser.skipChildren();
+			return parser.nextToken() == null;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+}
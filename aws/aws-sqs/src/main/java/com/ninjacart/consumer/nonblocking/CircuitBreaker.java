@@ -0,0 +1,113 @@
+package com.example.consumer.nonblocking;
+
+/**
+ * Failure rate based circuit breaker of a single queue. The outcomes of the last {@code windowSize} handler
+ * invocations are kept in a ring buffer. Once the window is full and the share of failures reaches the threshold,
+ * the circuit opens and the container stops polling the queue. After the open time the circuit is half-open and
+ * polling resumes; the next {@code halfOpenProbes} outcomes decide whether it closes again or opens for another
+ * period.
+ */
+class CircuitBreaker {
+
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final float failureRateThreshold;
+	private final boolean[] outcomes;
+	private final int halfOpenProbes;
+
+	private State state = State.CLOSED;
+	private int index;
+	private int calls;
+	private int failures;
+	private int probeCalls;
+	private int probeFailures;
+
+	/**
+	 * @param failureRateThreshold
+	 * 		the share of failed invocations, between {@code 0} and {@code 1}, at which the circuit opens
+	 */
+	CircuitBreaker(float failureRateThreshold, int windowSize, int halfOpenProbes) {
+		this.failureRateThreshold = failureRateThreshold;
+		this.outcomes = new boolean[Math.max(1, windowSize)];
+		this.halfOpenProbes = Math.max(1, halfOpenProbes);
+	}
+
+	synchronized State getState() {
+		return this.state;
+	}
+
+	/**
+	 * Records the outcome of a handler invocation. Outcomes of invocations that complete while the circuit is open
+	 * are ignored.
+	 *
+	 * @return {@code true} if this outcome opened the circuit
+	 */
+	synchronized boolean record(boolean failed) {
+		switch (this.state) {
+			case OPEN:
+				return false;
+			case HALF_OPEN:
+				this.probeCalls++;
+				if (failed) {
+					this.probeFailures++;
+				}
+				if (this.probeCalls < this.halfOpenProbes) {
+					return false;
+				}
+				if (this.probeFailures >= this.failureRateThreshold * this.probeCalls) {
+					this.state = State.OPEN;
+					return true;
+				}
+				this.state = State.CLOSED;
+				clearWindow();
+				return false;
+			default:
+				if (this.calls == this.outcomes.length) {
+					if (this.outcomes[this.index]) {
+						this.failures--;
+					}
+				} else {
+					this.calls++;
+				}
+				this.outcomes[this.index] = failed;
+				if (failed) {
+					this.failures++;
+				}
+				this.index = (this.index + 1) % this.outcomes.length;
+				if (this.calls == this.outcomes.length && this.failures >= this.failureRateThreshold * this.calls) {
+					this.state = State.OPEN;
+					clearWindow();
+					return true;
+				}
+				return false;
+		}
+	}
+
+	/**
+	 * Moves an open circuit to half-open.
+	 *
+	 * @return {@code true} if the circuit was open
+	 */
+	synchronized boolean halfOpen() {
+		if (this.state != State.OPEN) {
+			return false;
+		}
+		this.state = State.HALF_OPEN;
+		this.probeCalls = 0;
+		this.probeFailures = 0;
+		return true;
+	}
+
+	synchronized void reset() {
+		this.state = State.CLOSED;
+		clearWindow();
+	}
+
+	private void clearWindow() {
+		this.index = 0;
+		this.calls = 0;
+		this.failures = 0;
+	}
+}
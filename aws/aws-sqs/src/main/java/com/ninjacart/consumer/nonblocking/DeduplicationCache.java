@@ -0,0 +1,151 @@
+package com.example.consumer.nonblocking;
+
+import java.util.Arrays;
+
+/**
+ * Remembers the keys of processed messages for a time window, so redeliveries of a message that was already
+ * processed can be skipped. Keys are stored as 64 bit hashes in two open addressing {@code long} tables, the current
+ * and the previous generation. When the current generation is older than the window, or holds half of the maximum
+ * size, it becomes the previous one and the old previous table is cleared and reused. A key is therefore remembered
+ * for at least the window unless more than half of the maximum size is processed within it, and for at most twice
+ * the window. The cache never allocates after construction.
+ * <p>
+ * Two different keys collide with a probability of about {@code n / 2^64} for {@code n} remembered keys, in which
+ * case a message would wrongly be skipped.
+ */
+class DeduplicationCache {
+
+	private static final long EMPTY = 0;
+	// stored instead of a hash that happens to be the empty marker
+	private static final long ZERO_HASH = 0x9E3779B97F4A7C15L;
+
+	private final long windowMillis;
+	private final int maxEntriesPerGeneration;
+
+	private long[] currentTable;
+	private long[] previousTable;
+	private int currentSize;
+	private long generationStart;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param windowMillis
+	 * 		the time in milliseconds a processed key is remembered for
+	 * @param maxSize
+	 * 		the maximum number of remembered keys
+	 */
+	DeduplicationCache(long windowMillis, int maxSize) {
+		this.windowMillis = windowMillis;
+		this.maxEntriesPerGeneration = Math.max(1, maxSize / 2);
+		// load factor of at most one half keeps probe sequences short
+		int capacity = Integer.highestOneBit(this.maxEntriesPerGeneration) << 2;
+		this.currentTable = new long[capacity];
+		this.previousTable = new long[capacity];
+		this.generationStart = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return {@code true} if the key was processed within the window
+	 */
+	synchronized boolean contains(String key) {
+		long hash = hash(key);
+		rotateIfExpired(System.currentTimeMillis());
+		boolean duplicate = contains(this.currentTable, hash) || contains(this.previousTable, hash);
+		if (duplicate) {
+			this.hits++;
+		} else {
+			this.misses++;
+		}
+		return duplicate;
+	}
+
+	synchronized void add(String key) {
+		long hash = hash(key);
+		rotateIfExpired(System.currentTimeMillis());
+		if (contains(this.currentTable, hash)) {
+			return;
+		}
+		if (this.currentSize >= this.maxEntriesPerGeneration) {
+			rotate(System.currentTimeMillis());
+		}
+		long[] table = this.currentTable;
+		int mask = table.length - 1;
+		int index = (int) hash & mask;
+		while (table[index] != EMPTY) {
+			index = (index + 1) & mask;
+		}
+		table[index] = hash;
+		this.currentSize++;
+	}
+
+	synchronized long getHits() {
+		return this.hits;
+	}
+
+	synchronized long getMisses() {
+		return this.misses;
+	}
+
+	synchronized int size() {
+		int size = this.currentSize;
+		for (long hash : this.previousTable) {
+			if (hash != EMPTY) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	private void rotateIfExpired(long now) {
+		long age = now - this.generationStart;
+		if (age >= this.windowMillis) {
+			if (age >= 2 * this.windowMillis) {
+				// both generations are outside the window
+				rotate(now);
+			}
+			rotate(now);
+		}
+	}
+
+	private void rotate(long now) {
+		long[] table = this.previousTable;
+		Arrays.fill(table, EMPTY);
+		this.previousTable = this.currentTable;
+		this.currentTable = table;
+		this.currentSize = 0;
+		this.generationStart = now;
+	}
+
+	private static boolean contains(long[] table, long hash) {
+		int mask = table.length - 1;
+		int index = (int) hash & mask;
+		long entry;
+		while ((entry = table[index]) != EMPTY) {
+			if (entry == hash) {
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * 64 bit FNV-1a over the characters of the key, finished with the MurmurHash3 mixer so the low bits used for
+	 * the table index depend on all characters.
+	 */
+	static long hash(String key) {
+		long hash = 0xCBF29CE484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001B3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash != EMPTY ? hash : ZERO_HASH;
+	}
+}
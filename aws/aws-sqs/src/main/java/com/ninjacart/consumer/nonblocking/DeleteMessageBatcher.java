@@ -0,0 +1,246 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageResult;
+import org.slf4j.Logger;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Acknowledgement stage of a single queue. Receipt handles of processed messages are collected and deleted
+ * with one {@code DeleteMessageBatch} request as soon as {@link #MAX_BATCH_SIZE} handles are pending or the
+ * linger time of the oldest pending handle elapses, whichever comes first. Entries of a batch that could not
+ * be deleted are retried individually. The size and linger time of every flushed batch and the retries are
+ * recorded in the {@link ListenerMetrics} of the queue.
+ */
+class DeleteMessageBatcher {
+
+	static final int MAX_BATCH_SIZE = 10;
+
+	private final AmazonSQSAsync amazonSqs;
+	private final String queueUrl;
+	private final TaskScheduler taskScheduler;
+	private final long lingerTime;
+	private final ListenerMetrics listenerMetrics;
+	private final Logger logger;
+
+	private final Object monitor = new Object();
+	private final ConcurrentHashMap<String, Runnable> deletionCallbacks = new ConcurrentHashMap<>();
+	private List<String> pendingReceiptHandles = new ArrayList<>(MAX_BATCH_SIZE);
+	private long oldestPendingNanos;
+	private ScheduledFuture<?> lingerFlush;
+	private long lingerGeneration;
+	private final AtomicInteger pendingDeletes = new AtomicInteger();
+
+	/**
+	 * @param lingerTime
+	 * 		the maximum number of milliseconds a receipt handle waits for a batch to fill up. A value of {@code 0}
+	 * 		or less disables batching and deletes every message with its own request.
+	 */
+	DeleteMessageBatcher(AmazonSQSAsync amazonSqs, String queueUrl, TaskScheduler taskScheduler, long lingerTime,
+			ListenerMetrics listenerMetrics, Logger logger) {
+		this.amazonSqs = amazonSqs;
+		this.queueUrl = queueUrl;
+		this.taskScheduler = taskScheduler;
+		this.lingerTime = lingerTime;
+		this.listenerMetrics = listenerMetrics;
+		this.logger = logger;
+	}
+
+	/**
+	 * Acknowledges the message and runs the callback once SQS confirmed its deletion. The callback is dropped if
+	 * the message could not be deleted.
+	 */
+	void acknowledge(final String receiptHandle, final Runnable onDeleted) {
+		this.deletionCallbacks.put(receiptHandle, onDeleted);
+		acknowledge(receiptHandle);
+	}
+
+	void acknowledge(final String receiptHandle) {
+		this.pendingDeletes.incrementAndGet();
+		if (this.lingerTime <= 0) {
+			deleteIndividually(receiptHandle);
+			return;
+		}
+
+		List<String> batch = null;
+		synchronized (this.monitor) {
+			if (this.pendingReceiptHandles.isEmpty()) {
+				this.oldestPendingNanos = System.nanoTime();
+			}
+			this.pendingReceiptHandles.add(receiptHandle);
+			if (this.pendingReceiptHandles.size() >= MAX_BATCH_SIZE) {
+				batch = takePendingBatch(true);
+			} else if (this.lingerFlush == null) {
+				final long generation = ++this.lingerGeneration;
+				this.lingerFlush = this.taskScheduler.schedule(() -> flushOnLinger(generation),
+						new Date(System.currentTimeMillis() + this.lingerTime));
+			}
+		}
+
+		if (batch != null) {
+			deleteBatch(batch);
+		}
+	}
+
+	/**
+	 * Deletes all pending receipt handles right away, regardless of the linger time.
+	 */
+	void flush() {
+		List<String> batch;
+		synchronized (this.monitor) {
+			if (this.pendingReceiptHandles.isEmpty()) {
+				return;
+			}
+			batch = takePendingBatch(false);
+		}
+		deleteBatch(batch);
+	}
+
+	/**
+	 * Flushes the pending receipt handles and waits until SQS answered all outstanding delete requests, including
+	 * individual retries, or the timeout elapsed.
+	 *
+	 * @return the number of messages whose deletion is still outstanding
+	 */
+	int flushAndAwait(long timeoutMillis) throws InterruptedException {
+		flush();
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		synchronized (this.pendingDeletes) {
+			long remaining;
+			while (this.pendingDeletes.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+				TimeUnit.NANOSECONDS.timedWait(this.pendingDeletes, remaining);
+			}
+		}
+		return this.pendingDeletes.get();
+	}
+
+	/**
+	 * @param generation
+	 * 		the linger timer this task belongs to. Cancelling does not stop a task that already runs, so a task whose
+	 * 		batch was flushed in the meantime must neither flush nor clear the timer of the next batch.
+	 */
+	private void flushOnLinger(final long generation) {
+		List<String> batch;
+		synchronized (this.monitor) {
+			if (this.lingerFlush == null || generation != this.lingerGeneration) {
+				return;
+			}
+			this.lingerFlush = null;
+			if (this.pendingReceiptHandles.isEmpty()) {
+				return;
+			}
+			batch = takePendingBatch(false);
+		}
+		deleteBatch(batch);
+	}
+
+	private List<String> takePendingBatch(boolean full) {
+		if (this.lingerFlush != null) {
+			this.lingerFlush.cancel(false);
+			this.lingerFlush = null;
+		}
+		List<String> batch = this.pendingReceiptHandles;
+		this.pendingReceiptHandles = new ArrayList<>(MAX_BATCH_SIZE);
+		this.listenerMetrics.deleteBatchFlushed(batch.size(), System.nanoTime() - this.oldestPendingNanos, full);
+		return batch;
+	}
+
+	private void deleteBatch(final List<String> receiptHandles) {
+		List<DeleteMessageBatchRequestEntry> entries = new ArrayList<>(receiptHandles.size());
+		for (int i = 0; i < receiptHandles.size(); i++) {
+			entries.add(new DeleteMessageBatchRequestEntry(Integer.toString(i), receiptHandles.get(i)));
+		}
+
+		final long startNanos = System.nanoTime();
+		this.amazonSqs.deleteMessageBatchAsync(new DeleteMessageBatchRequest(this.queueUrl, entries),
+				new AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult>() {
+
+					@Override
+					public void onError(Exception exception) {
+						DeleteMessageBatcher.this.listenerMetrics.deleteCompleted(System.nanoTime() - startNanos,
+								receiptHandles.size(), receiptHandles.size());
+						DeleteMessageBatcher.this.logger.warn("Batch delete of {} messages failed for queue '{}'. " +
+								"Retrying them individually", receiptHandles.size(), DeleteMessageBatcher.this.queueUrl, exception);
+						for (String receiptHandle : receiptHandles) {
+							retryIndividually(receiptHandle);
+						}
+					}
+
+					@Override
+					public void onSuccess(DeleteMessageBatchRequest request, DeleteMessageBatchResult result) {
+						DeleteMessageBatcher.this.listenerMetrics.deleteCompleted(System.nanoTime() - startNanos,
+								receiptHandles.size(), result.getFailed().size());
+						for (DeleteMessageBatchResultEntry successfulEntry : result.getSuccessful()) {
+							deleted(receiptHandles.get(Integer.parseInt(successfulEntry.getId())));
+						}
+						for (BatchResultErrorEntry failedEntry : result.getFailed()) {
+							DeleteMessageBatcher.this.logger.debug("Batch delete entry failed for queue '{}' with code '{}'. " +
+									"Retrying it individually", DeleteMessageBatcher.this.queueUrl, failedEntry.getCode());
+							retryIndividually(receiptHandles.get(Integer.parseInt(failedEntry.getId())));
+						}
+					}
+				});
+	}
+
+	private void retryIndividually(final String receiptHandle) {
+		this.listenerMetrics.deleteRetried();
+		deleteIndividually(receiptHandle);
+	}
+
+	private void deleteIndividually(final String receiptHandle) {
+		final long startNanos = System.nanoTime();
+		this.amazonSqs.deleteMessageAsync(new DeleteMessageRequest(this.queueUrl, receiptHandle),
+				new AsyncHandler<DeleteMessageRequest, DeleteMessageResult>() {
+
+					@Override
+					public void onError(Exception exception) {
+						DeleteMessageBatcher.this.listenerMetrics.deleteCompleted(System.nanoTime() - startNanos, 1, 1);
+						DeleteMessageBatcher.this.deletionCallbacks.remove(receiptHandle);
+						DeleteMessageBatcher.this.logger.warn("Error deleting message from queue '{}'",
+								DeleteMessageBatcher.this.queueUrl, exception);
+						deleteCompleted();
+					}
+
+					@Override
+					public void onSuccess(DeleteMessageRequest request, DeleteMessageResult result) {
+						DeleteMessageBatcher.this.listenerMetrics.deleteCompleted(System.nanoTime() - startNanos, 1, 0);
+						deleted(receiptHandle);
+					}
+				});
+	}
+
+	private void deleted(final String receiptHandle) {
+		Runnable onDeleted = this.deletionCallbacks.remove(receiptHandle);
+		if (onDeleted != null) {
+			try {
+				onDeleted.run();
+			} catch (RuntimeException e) {
+				this.logger.warn("Error after deleting a message from queue '{}'", this.queueUrl, e);
+			}
+		}
+		deleteCompleted();
+	}
+
+	private void deleteCompleted() {
+		if (this.pendingDeletes.decrementAndGet() <= 0) {
+			synchronized (this.pendingDeletes) {
+				this.pendingDeletes.notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Dispatches the messages of a FIFO queue so that different message groups are processed in parallel while the
+ * messages of one group are processed one after the other, in receive order. Every group with pending messages has
+ * a lane and at most {@code maxGroupsInFlight} lanes are worked on at a time. After each message a worker moves its
+ * lane to the back of the ready queue and continues with the lane at the front, so a group with many pending
+ * messages cannot starve the others. If a message fails, the remaining messages of its group are not processed but
+ * handed to the skip handler, so they are received again after the failed message.
+ */
+class FifoGroupDispatcher {
+
+	static final String MESSAGE_GROUP_ID = "MessageGroupId";
+
+	private final Executor executor;
+	private final int maxGroupsInFlight;
+	private final MessageProcessor messageProcessor;
+	private final Consumer<List<Message>> skippedMessagesHandler;
+	private final Logger logger;
+
+	private final Map<String, GroupLane> lanes = new HashMap<>();
+	private final ArrayDeque<GroupLane> readyLanes = new ArrayDeque<>();
+	private int activeWorkers;
+
+	/**
+	 * @param maxGroupsInFlight
+	 * 		the maximum number of groups processed at the same time, {@code <= 0} for no limit
+	 */
+	FifoGroupDispatcher(Executor executor, int maxGroupsInFlight, MessageProcessor messageProcessor,
+			Consumer<List<Message>> skippedMessagesHandler, Logger logger) {
+		this.executor = executor;
+		this.maxGroupsInFlight = maxGroupsInFlight > 0 ? maxGroupsInFlight : Integer.MAX_VALUE;
+		this.messageProcessor = messageProcessor;
+		this.skippedMessagesHandler = skippedMessagesHandler;
+		this.logger = logger;
+	}
+
+	static boolean isFifoQueue(String queueUrl) {
+		return queueUrl.endsWith(".fifo");
+	}
+
+	synchronized int getActiveGroups() {
+		return this.activeWorkers;
+	}
+
+	synchronized int getPendingGroups() {
+		return this.lanes.size();
+	}
+
+	/**
+	 * Queues the received messages on the lanes of their groups and starts workers for ready lanes as long as
+	 * fewer than {@code maxGroupsInFlight} groups are in flight.
+	 */
+	void dispatch(List<Message> messages, long receiveTime) {
+		List<GroupLane> startedLanes = new ArrayList<>();
+		synchronized (this) {
+			for (Message message : messages) {
+				String groupId = message.getAttributes().get(MESSAGE_GROUP_ID);
+				GroupLane lane = this.lanes.get(groupId);
+				if (lane == null) {
+					lane = new GroupLane(groupId);
+					this.lanes.put(groupId, lane);
+					this.readyLanes.addLast(lane);
+				}
+				lane.messages.addLast(new PendingMessage(message, receiveTime));
+			}
+			while (this.activeWorkers < this.maxGroupsInFlight && !this.readyLanes.isEmpty()) {
+				this.activeWorkers++;
+				startedLanes.add(this.readyLanes.pollFirst());
+			}
+		}
+
+		for (int i = 0; i < startedLanes.size(); i++) {
+			final GroupLane lane = startedLanes.get(i);
+			try {
+				this.executor.execute(() -> work(lane));
+			} catch (RuntimeException e) {
+				// the lanes stay pending and are picked up by the next dispatch or a running worker
+				synchronized (this) {
+					for (int j = startedLanes.size() - 1; j >= i; j--) {
+						this.activeWorkers--;
+						this.readyLanes.addFirst(startedLanes.get(j));
+					}
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void work(GroupLane firstLane) {
+		GroupLane lane = firstLane;
+		while (lane != null) {
+			PendingMessage pendingMessage;
+			synchronized (this) {
+				pendingMessage = lane.messages.pollFirst();
+			}
+
+			boolean processed = false;
+			try {
+				processed = this.messageProcessor.process(pendingMessage.message, pendingMessage.receiveTime);
+			} catch (RuntimeException e) {
+				this.logger.error("Exception encountered while processing a message of group '{}'.", lane.groupId, e);
+			}
+
+			List<Message> skippedMessages = null;
+			synchronized (this) {
+				if (!processed && !lane.messages.isEmpty()) {
+					skippedMessages = new ArrayList<>(lane.messages.size());
+					for (PendingMessage skippedMessage : lane.messages) {
+						skippedMessages.add(skippedMessage.message);
+					}
+					lane.messages.clear();
+				}
+				if (lane.messages.isEmpty()) {
+					this.lanes.remove(lane.groupId);
+				} else {
+					this.readyLanes.addLast(lane);
+				}
+				lane = this.readyLanes.pollFirst();
+				if (lane == null) {
+					this.activeWorkers--;
+				}
+			}
+			if (skippedMessages != null) {
+				this.skippedMessagesHandler.accept(skippedMessages);
+			}
+		}
+	}
+
+	interface MessageProcessor {
+
+		/**
+		 * @return {@code true} if the message was processed successfully
+		 */
+		boolean process(Message message, long receiveTime);
+	}
+
+	private static class GroupLane {
+		private final String groupId;
+		private final ArrayDeque<PendingMessage> messages = new ArrayDeque<>();
+
+		private GroupLane(String groupId) {
+			this.groupId = groupId;
+		}
+	}
+
+	private static class PendingMessage {
+		private final Message message;
+		private final long receiveTime;
+
+		private PendingMessage(Message message, long receiveTime) {
+			this.message = message;
+			this.receiveTime = receiveTime;
+		}
+	}
+}
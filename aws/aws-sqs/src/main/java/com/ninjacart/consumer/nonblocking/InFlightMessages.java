@@ -0,0 +1,61 @@
+package com.example.consumer.nonblocking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the messages of a single queue that were handed to a worker and have not completed yet, and the messages
+ * that were received but returned to the queue instead. A queue being drained waits on this count until its
+ * in-flight messages completed.
+ */
+class InFlightMessages {
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger returned = new AtomicInteger();
+
+	void started(int messages) {
+		this.inFlight.addAndGet(messages);
+	}
+
+	void completed(int messages) {
+		if (this.inFlight.addAndGet(-messages) <= 0) {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Records messages that were made visible again without being processed.
+	 */
+	void returned(int messages) {
+		this.returned.addAndGet(messages);
+	}
+
+	int getInFlight() {
+		return this.inFlight.get();
+	}
+
+	/**
+	 * @return the number of messages returned to the queue since the last call
+	 */
+	int takeReturned() {
+		return this.returned.getAndSet(0);
+	}
+
+	/**
+	 * Waits until no message is in flight anymore or the timeout elapsed.
+	 *
+	 * @return the number of messages still in flight
+	 */
+	int awaitCompletion(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		synchronized (this) {
+			long remaining;
+			while (this.inFlight.get() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+		}
+		return Math.max(0, this.inFlight.get());
+	}
+}
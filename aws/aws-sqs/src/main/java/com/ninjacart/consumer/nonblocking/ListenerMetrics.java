@@ -0,0 +1,137 @@
+package com.example.consumer.nonblocking;
+
+/**
+ * Instrumentation of the hot path of a single queue. It is called for every receive and every message, so
+ * implementations must not block and should not allocate.
+ */
+interface ListenerMetrics {
+
+	ListenerMetrics NOOP = new ListenerMetrics() {
+
+		@Override
+		public void receiveCompleted(long durationNanos, int messages) {
+		}
+
+		@Override
+		public void slotWaitCompleted(long durationNanos) {
+		}
+
+		@Override
+		public void executionCompleted(long durationNanos, boolean failed) {
+		}
+
+		@Override
+		public void deleteCompleted(long durationNanos, int messages, int failedMessages) {
+		}
+
+		@Override
+		public void deleteBatchFlushed(int messages, long lingerNanos, boolean full) {
+		}
+
+		@Override
+		public void deleteRetried() {
+		}
+
+		@Override
+		public void deduplicationChecked(boolean duplicate) {
+		}
+
+		@Override
+		public void drainCompleted(int completed, int released, int abandoned) {
+		}
+
+		@Override
+		public void circuitBreakerOpened() {
+		}
+
+		@Override
+		public void messageQuarantined(boolean moved) {
+		}
+
+		@Override
+		public void messageDecompressed(int compressedBytes, int decompressedBytes) {
+		}
+	};
+
+	/**
+	 * @param messages
+	 * 		the number of received messages, {@code 0} for an empty receive
+	 */
+	void receiveCompleted(long durationNanos, int messages);
+
+	/**
+	 * Records the time a poller waited for free worker slots.
+	 */
+	void slotWaitCompleted(long durationNanos);
+
+	/**
+	 * Records the time the handler of a message, or of a batch of messages, took.
+	 */
+	void executionCompleted(long durationNanos, boolean failed);
+
+	/**
+	 * Records a {@code DeleteMessage} or {@code DeleteMessageBatch} request.
+	 *
+	 * @param failedMessages
+	 * 		the number of messages the request could not delete
+	 */
+	void deleteCompleted(long durationNanos, int messages, int failedMessages);
+
+	/**
+	 * Records a batch of receipt handles that is handed to a {@code DeleteMessageBatch} request.
+	 *
+	 * @param lingerNanos
+	 * 		the time the oldest receipt handle of the batch waited for the batch to fill up
+	 * @param full
+	 * 		whether the batch was sent because it was full, or because its linger time elapsed or the queue was flushed
+	 */
+	void deleteBatchFlushed(int messages, long lingerNanos, boolean full);
+
+	/**
+	 * Records a receipt handle that could not be deleted with its batch and is retried with its own request.
+	 */
+	void deleteRetried();
+
+	/**
+	 * Records a lookup of a received message in the deduplication cache.
+	 *
+	 * @param duplicate
+	 * 		whether the message was already processed and is skipped
+	 */
+	void deduplicationChecked(boolean duplicate);
+
+	/**
+	 * Records the outcome of draining the queue on stop.
+	 *
+	 * @param completed
+	 * 		the in-flight messages that completed within the drain timeout
+	 * @param released
+	 * 		the received messages that were made visible again without being processed
+	 * @param abandoned
+	 * 		the in-flight messages that were still processed when the drain timeout elapsed
+	 */
+	void drainCompleted(int completed, int released, int abandoned);
+
+	/**
+	 * Records that the circuit breaker of the queue opened and polling was paused.
+	 */
+	void circuitBreakerOpened();
+
+	/**
+	 * Records a message that exceeded the maximum receive count.
+	 *
+	 * @param moved
+	 * 		whether the message was moved to the quarantine queue, or could not be sent there and stays in the queue
+	 */
+	void messageQuarantined(boolean moved);
+
+	/**
+	 * Records a received message with a compressed body.
+	 *
+	 * @param compressedBytes
+	 * 		the size of the received body, Base64 encoding included
+	 * @param decompressedBytes
+	 * 		the size of the body once decompressed
+	 */
+	void messageDecompressed(int compressedBytes, int decompressedBytes);
+}
@@ -0,0 +1,81 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Skips redeliveries of the messages a single queue already processed within the deduplication window. A message
+ * is identified by the value of the configured string message attribute, or by its message id if it has no such
+ * attribute. Skipped messages are deleted like processed ones.
+ */
+class MessageDeduplicator {
+
+	private final String logicalQueueName;
+	private final DeduplicationCache deduplicationCache;
+	private final String deduplicationKeyAttribute;
+	private final DeleteMessageBatcher deleteMessageBatcher;
+	private final ListenerMetrics listenerMetrics;
+	private final Logger logger;
+
+	/**
+	 * @param deduplicationKeyAttribute
+	 * 		the message attribute identifying a message, {@code null} to use the message id
+	 */
+	MessageDeduplicator(String logicalQueueName, DeduplicationCache deduplicationCache, String deduplicationKeyAttribute,
+			DeleteMessageBatcher deleteMessageBatcher, ListenerMetrics listenerMetrics, Logger logger) {
+		this.logicalQueueName = logicalQueueName;
+		this.deduplicationCache = deduplicationCache;
+		this.deduplicationKeyAttribute = deduplicationKeyAttribute;
+		this.deleteMessageBatcher = deleteMessageBatcher;
+		this.listenerMetrics = listenerMetrics;
+		this.logger = logger;
+	}
+
+	/**
+	 * Deletes the received messages that were already processed within the deduplication window.
+	 *
+	 * @return the messages to process
+	 */
+	List<Message> skipDuplicates(List<Message> messages) {
+		if (messages.isEmpty()) {
+			return messages;
+		}
+		List<Message> newMessages = null;
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			boolean duplicate = this.deduplicationCache.contains(getDeduplicationKey(message));
+			this.listenerMetrics.deduplicationChecked(duplicate);
+			if (duplicate) {
+				if (newMessages == null) {
+					newMessages = new ArrayList<>(messages.subList(0, i));
+				}
+				this.logger.debug("Skipping message '{}' of queue '{}', it was already processed", message.getMessageId(), this.logicalQueueName);
+				this.deleteMessageBatcher.acknowledge(message.getReceiptHandle());
+			} else if (newMessages != null) {
+				newMessages.add(message);
+			}
+		}
+		return newMessages != null ? newMessages : messages;
+	}
+
+	/**
+	 * Remembers a successfully processed message, so that redeliveries of it are skipped.
+	 */
+	void processed(Message message) {
+		this.deduplicationCache.add(getDeduplicationKey(message));
+	}
+
+	private String getDeduplicationKey(Message message) {
+		if (this.deduplicationKeyAttribute != null) {
+			MessageAttributeValue attribute = message.getMessageAttributes().get(this.deduplicationKeyAttribute);
+			if (attribute != null && attribute.getStringValue() != null) {
+				return attribute.getStringValue();
+			}
+		}
+		return message.getMessageId();
+	}
+}
@@ -0,0 +1,116 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the poison messages of a single queue to its quarantine queue before they reach a worker. A message is
+ * poison once its approximate receive count exceeds the maximum receive count. It is sent to the quarantine queue
+ * as it was received, with the name of the queue it came from in an additional message attribute.
+ */
+class MessageQuarantine {
+
+	private static final String APPROXIMATE_RECEIVE_COUNT_ATTRIBUTE = "ApproximateReceiveCount";
+	private static final String QUARANTINED_FROM_ATTRIBUTE = "QuarantinedFrom";
+
+	private final AmazonSQSAsync amazonSqs;
+	private final String logicalQueueName;
+	private final String quarantineQueueUrl;
+	private final int maxReceiveCount;
+	private final DeleteMessageBatcher deleteMessageBatcher;
+	private final ListenerMetrics listenerMetrics;
+	private final Logger logger;
+
+	MessageQuarantine(AmazonSQSAsync amazonSqs, String logicalQueueName, String quarantineQueueUrl, int maxReceiveCount,
+			DeleteMessageBatcher deleteMessageBatcher, ListenerMetrics listenerMetrics, Logger logger) {
+		this.amazonSqs = amazonSqs;
+		this.logicalQueueName = logicalQueueName;
+		this.quarantineQueueUrl = quarantineQueueUrl;
+		this.maxReceiveCount = maxReceiveCount;
+		this.deleteMessageBatcher = deleteMessageBatcher;
+		this.listenerMetrics = listenerMetrics;
+		this.logger = logger;
+	}
+
+	/**
+	 * Moves the received messages that exceeded the maximum receive count to the quarantine queue.
+	 *
+	 * @return the messages to process
+	 */
+	List<Message> quarantinePoisonMessages(List<Message> messages) {
+		if (messages.isEmpty()) {
+			return messages;
+		}
+		List<Message> healthyMessages = null;
+		for (int i = 0; i < messages.size(); i++) {
+			Message message = messages.get(i);
+			if (getReceiveCount(message) > this.maxReceiveCount) {
+				if (healthyMessages == null) {
+					healthyMessages = new ArrayList<>(messages.subList(0, i));
+				}
+				quarantine(message);
+			} else if (healthyMessages != null) {
+				healthyMessages.add(message);
+			}
+		}
+		return healthyMessages != null ? healthyMessages : messages;
+	}
+
+	/**
+	 * Sends a poison message to the quarantine queue as it was received, and deletes it once the send succeeded.
+	 * If the send fails, the message becomes visible again after its visibility timeout and the next receive
+	 * retries.
+	 */
+	private void quarantine(final Message message) {
+		this.logger.warn("Moving message '{}' of queue '{}' to its quarantine queue, it was received {} times",
+				message.getMessageId(), this.logicalQueueName, getReceiveCount(message));
+		Map<String, MessageAttributeValue> messageAttributes = new HashMap<>(message.getMessageAttributes());
+		if (messageAttributes.size() < 10) {
+			messageAttributes.put(QUARANTINED_FROM_ATTRIBUTE, new MessageAttributeValue().withDataType("String").withStringValue(this.logicalQueueName));
+		}
+		SendMessageRequest sendMessageRequest = new SendMessageRequest(this.quarantineQueueUrl, message.getBody())
+				.withMessageAttributes(messageAttributes);
+		if (FifoGroupDispatcher.isFifoQueue(this.quarantineQueueUrl)) {
+			String messageGroupId = message.getAttributes().get(FifoGroupDispatcher.MESSAGE_GROUP_ID);
+			sendMessageRequest.withMessageGroupId(messageGroupId != null ? messageGroupId : this.logicalQueueName)
+					.withMessageDeduplicationId(message.getMessageId());
+		}
+		this.amazonSqs.sendMessageAsync(sendMessageRequest, new AsyncHandler<SendMessageRequest, SendMessageResult>() {
+
+			@Override
+			public void onError(Exception exception) {
+				MessageQuarantine.this.listenerMetrics.messageQuarantined(false);
+				MessageQuarantine.this.logger.warn("Could not move message '{}' of queue '{}' to its quarantine queue",
+						message.getMessageId(), MessageQuarantine.this.logicalQueueName, exception);
+			}
+
+			@Override
+			public void onSuccess(SendMessageRequest request, SendMessageResult sendMessageResult) {
+				MessageQuarantine.this.listenerMetrics.messageQuarantined(true);
+				MessageQuarantine.this.deleteMessageBatcher.acknowledge(message.getReceiptHandle());
+			}
+		});
+	}
+
+	private static int getReceiveCount(Message message) {
+		String receiveCount = message.getAttributes().get(APPROXIMATE_RECEIVE_COUNT_ATTRIBUTE);
+		if (receiveCount == null) {
+			return 0;
+		}
+		try {
+			return Integer.parseInt(receiveCount);
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Changes the visibility timeout of received messages with {@code ChangeMessageVisibilityBatch} requests.
+ */
+final class MessageVisibility {
+
+	static final int MAX_BATCH_SIZE = 10;
+
+	private MessageVisibility() {
+	}
+
+	/**
+	 * Sets the visibility timeout of the given messages, splitting them into batches of {@link #MAX_BATCH_SIZE}.
+	 * Failures are logged only, a message that could not be changed keeps its current visibility timeout.
+	 *
+	 * @param visibilityTimeout
+	 * 		the new visibility timeout in seconds, {@code 0} makes the messages visible again right away
+	 */
+	static void changeVisibility(final AmazonSQSAsync amazonSqs, final String queueUrl, List<String> receiptHandles,
+			int visibilityTimeout, final Logger logger) {
+		for (int offset = 0; offset < receiptHandles.size(); offset += MAX_BATCH_SIZE) {
+			List<String> batch = receiptHandles.subList(offset, Math.min(offset + MAX_BATCH_SIZE, receiptHandles.size()));
+			final List<ChangeMessageVisibilityBatchRequestEntry> entries = new ArrayList<>(batch.size());
+			for (int i = 0; i < batch.size(); i++) {
+				entries.add(new ChangeMessageVisibilityBatchRequestEntry(Integer.toString(i), batch.get(i))
+						.withVisibilityTimeout(visibilityTimeout));
+			}
+
+			amazonSqs.changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries),
+					new AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult>() {
+
+						@Override
+						public void onError(Exception exception) {
+							logger.warn("Error changing the visibility of {} messages of queue '{}'", entries.size(), queueUrl, exception);
+						}
+
+						@Override
+						public void onSuccess(ChangeMessageVisibilityBatchRequest request, ChangeMessageVisibilityBatchResult result) {
+							for (BatchResultErrorEntry failedEntry : result.getFailed()) {
+								logger.warn("Could not change the visibility of a message of queue '{}': {} {}",
+										queueUrl, failedEntry.getCode(), failedEntry.getMessage());
+							}
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package com.example.consumer.nonblocking;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the metrics of a queue in a Micrometer {@link MeterRegistry}. All meters are tagged with the logical queue
+ * name and registered up front, so recording is a plain timer or counter update. Timers publish no percentiles or
+ * histograms unless configured through a {@code MeterFilter}.
+ * <p>
+ * This class is only loaded when Micrometer is on the classpath.
+ */
+final class MicrometerListenerMetrics implements ListenerMetrics {
+
+	static final String METER_REGISTRY_CLASS_NAME = "io.micrometer.core.instrument.MeterRegistry";
+
+	private final Timer receiveTimer;
+	private final Timer emptyReceiveTimer;
+	private final DistributionSummary messagesPerReceive;
+	private final Timer slotWaitTimer;
+	private final Timer successfulExecutionTimer;
+	private final Timer failedExecutionTimer;
+	private final Timer successfulDeleteTimer;
+	private final Timer failedDeleteTimer;
+	private final Counter failedDeletes;
+	private final DistributionSummary fullDeleteBatchSize;
+	private final DistributionSummary partialDeleteBatchSize;
+	private final Timer deleteBatchLingerTimer;
+	private final Counter deleteRetries;
+	private final Counter deduplicationHits;
+	private final Counter deduplicationMisses;
+	private final Counter drainedCompleted;
+	private final Counter drainedReleased;
+	private final Counter drainedAbandoned;
+	private final Counter circuitBreakerOpenings;
+	private final Counter quarantinedMessages;
+	private final Counter failedQuarantines;
+	private final Counter decompressedMessages;
+	private final Counter compressionSavedBytes;
+
+	private MicrometerListenerMetrics(MeterRegistry meterRegistry, String queue, AtomicInteger availableSlots) {
+		Tags tags = Tags.of("queue", queue);
+		this.receiveTimer = Timer.builder("sqs.listener.receive").description("Receive requests that returned messages")
+				.tags(tags).tag("result", "messages").register(meterRegistry);
+		this.emptyReceiveTimer = Timer.builder("sqs.listener.receive").description("Receive requests that returned no messages")
+				.tags(tags).tag("result", "empty").register(meterRegistry);
+		this.messagesPerReceive = DistributionSummary.builder("sqs.listener.receive.messages")
+				.description("Messages returned per receive request").tags(tags).register(meterRegistry);
+		this.slotWaitTimer = Timer.builder("sqs.listener.slot.wait").description("Time pollers waited for free worker slots")
+				.tags(tags).register(meterRegistry);
+		this.successfulExecutionTimer = Timer.builder("sqs.listener.execution").description("Handler execution time")
+				.tags(tags).tag("outcome", "success").register(meterRegistry);
+		this.failedExecutionTimer = Timer.builder("sqs.listener.execution").description("Handler execution time")
+				.tags(tags).tag("outcome", "failure").register(meterRegistry);
+		this.successfulDeleteTimer = Timer.builder("sqs.listener.delete").description("Delete request latency")
+				.tags(tags).tag("outcome", "success").register(meterRegistry);
+		this.failedDeleteTimer = Timer.builder("sqs.listener.delete").description("Delete request latency")
+				.tags(tags).tag("outcome", "failure").register(meterRegistry);
+		this.failedDeletes = Counter.builder("sqs.listener.delete.failed.messages")
+				.description("Messages a delete request could not delete").tags(tags).register(meterRegistry);
+		this.fullDeleteBatchSize = DistributionSummary.builder("sqs.listener.delete.batch.size")
+				.description("Receipt handles per delete batch").tags(tags).tag("trigger", "full").register(meterRegistry);
+		this.partialDeleteBatchSize = DistributionSummary.builder("sqs.listener.delete.batch.size")
+				.description("Receipt handles per delete batch").tags(tags).tag("trigger", "linger").register(meterRegistry);
+		this.deleteBatchLingerTimer = Timer.builder("sqs.listener.delete.batch.linger")
+				.description("Time the oldest receipt handle of a delete batch waited for the batch to fill up").tags(tags).register(meterRegistry);
+		this.deleteRetries = Counter.builder("sqs.listener.delete.retries")
+				.description("Receipt handles of failed delete batches retried with their own request").tags(tags).register(meterRegistry);
+		this.deduplicationHits = Counter.builder("sqs.listener.deduplication")
+				.description("Received messages that were already processed and skipped").tags(tags).tag("result", "hit").register(meterRegistry);
+		this.deduplicationMisses = Counter.builder("sqs.listener.deduplication")
+				.description("Received messages that were not processed before").tags(tags).tag("result", "miss").register(meterRegistry);
+		this.drainedCompleted = Counter.builder("sqs.listener.drain.messages")
+				.description("In-flight messages that completed while the queue was drained").tags(tags).tag("outcome", "completed").register(meterRegistry);
+		this.drainedReleased = Counter.builder("sqs.listener.drain.messages")
+				.description("Received messages made visible again while the queue was drained").tags(tags).tag("outcome", "released").register(meterRegistry);
+		this.drainedAbandoned = Counter.builder("sqs.listener.drain.messages")
+				.description("In-flight messages still running when the drain timeout elapsed").tags(tags).tag("outcome", "abandoned").register(meterRegistry);
+		this.circuitBreakerOpenings = Counter.builder("sqs.listener.circuit.opened")
+				.description("Times the circuit breaker paused polling of the queue").tags(tags).register(meterRegistry);
+		this.quarantinedMessages = Counter.builder("sqs.listener.quarantine.messages")
+				.description("Poison messages moved to the quarantine queue").tags(tags).tag("outcome", "moved").register(meterRegistry);
+		this.failedQuarantines = Counter.builder("sqs.listener.quarantine.messages")
+				.description("Poison messages that could not be sent to the quarantine queue").tags(tags).tag("outcome", "failed").register(meterRegistry);
+		this.decompressedMessages = Counter.builder("sqs.listener.decompression.messages")
+				.description("Received messages with a compressed body").tags(tags).register(meterRegistry);
+		this.compressionSavedBytes = Counter.builder("sqs.listener.compression.saved.bytes")
+				.description("Bytes compression saved on the received bodies, Base64 encoding included").tags(tags).register(meterRegistry);
+		Gauge.builder("sqs.listener.available.slots", availableSlots, AtomicInteger::get)
+				.description("Free worker slots of the queue").tags(tags).register(meterRegistry);
+	}
+
+	/**
+	 * @return the metrics of the queue, or {@code null} if the bean factory has no {@link MeterRegistry}
+	 */
+	static ListenerMetrics create(BeanFactory beanFactory, String queue, AtomicInteger availableSlots) {
+		MeterRegistry meterRegistry;
+		try {
+			meterRegistry = beanFactory.getBean(MeterRegistry.class);
+		} catch (NoSuchBeanDefinitionException e) {
+			return null;
+		}
+		return new MicrometerListenerMetrics(meterRegistry, queue, availableSlots);
+	}
+
+	@Override
+	public void receiveCompleted(long durationNanos, int messages) {
+		(messages > 0 ? this.receiveTimer : this.emptyReceiveTimer).record(durationNanos, TimeUnit.NANOSECONDS);
+		this.messagesPerReceive.record(messages);
+	}
+
+	@Override
+	public void slotWaitCompleted(long durationNanos) {
+		this.slotWaitTimer.record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void executionCompleted(long durationNanos, boolean failed) {
+		(failed ? this.failedExecutionTimer : this.successfulExecutionTimer).record(durationNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void deleteCompleted(long durationNanos, int messages, int failedMessages) {
+		(failedMessages == messages ? this.failedDeleteTimer : this.successfulDeleteTimer).record(durationNanos, TimeUnit.NANOSECONDS);
+		if (failedMessages > 0) {
+			this.failedDeletes.increment(failedMessages);
+		}
+	}
+
+	@Override
+	public void deleteBatchFlushed(int messages, long lingerNanos, boolean full) {
+		(full ? this.fullDeleteBatchSize : this.partialDeleteBatchSize).record(messages);
+		this.deleteBatchLingerTimer.record(lingerNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public void deleteRetried() {
+		this.deleteRetries.increment();
+	}
+
+	@Override
+	public void deduplicationChecked(boolean duplicate) {
+		(duplicate ? this.deduplicationHits : this.deduplicationMisses).increment();
+	}
+
+	@Override
+	public void drainCompleted(int completed, int released, int abandoned) {
+		this.drainedCompleted.increment(completed);
+		this.drainedReleased.increment(released);
+		this.drainedAbandoned.increment(abandoned);
+	}
+
+	@Override
+	public void circuitBreakerOpened() {
+		this.circuitBreakerOpenings.increment();
+	}
+
+	@Override
+	public void messageQuarantined(boolean moved) {
+		(moved ? this.quarantinedMessages : this.failedQuarantines).increment();
+	}
+
+	@Override
+	public void messageDecompressed(int compressedBytes, int decompressedBytes) {
+		this.decompressedMessages.increment();
+		this.compressionSavedBytes.increment(decompressedBytes - compressedBytes);
+	}
+}
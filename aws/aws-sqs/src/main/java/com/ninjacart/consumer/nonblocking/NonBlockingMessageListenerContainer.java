@@ -1,45 +1,130 @@
 package com.example.consumer.nonblocking;
 
-import com.amazonaws.services.sqs.model.DeleteMessageRequest;
 import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.example.aws.sqs.codec.MessageCodec;
+import com.example.aws.sqs.codec.MessageCompressor;
+import com.example.aws.sqs.ratelimit.RateLimiter;
+import com.example.aws.sqs.service.AwsS3ClaimCheckStore;
+import com.example.aws.sqs.service.ClaimCheckStore;
+import com.example.aws.sqs.service.QueueMessagePublishedEvent;
+import com.example.aws.sqs.service.S3PayloadPointer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.cloud.aws.messaging.listener.QueueMessageAcknowledgment;
 import org.springframework.cloud.aws.messaging.listener.SqsMessageDeletionPolicy;
+import org.springframework.context.ApplicationListener;
 import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.createMessage;
 
- class NonBlockingMessageListenerContainer extends AbstractMessageListenerContainer {
+ class NonBlockingMessageListenerContainer extends AbstractMessageListenerContainer
+		implements BeanFactoryAware, ApplicationListener<QueueMessagePublishedEvent> {
 	static final String LOGICAL_RESOURCE_ID = "LogicalResourceId";
 	static final String ACKNOWLEDGMENT = "Acknowledgment";
 	private static final int DEFAULT_MIN_AVAILABLE_SLOTS_TO_POLL_THRESHOLD = 1;
 	private static final int DEFAULT_MAX_FREE_WORKER_SLOT_WAIT_TIME_MS = 1000;
 	private static final int DEFAULT_WORKER_THREADS = 2;
+	private static final long DEFAULT_DELETE_BATCH_LINGER_TIME_MS = 100;
+	private static final int DEFAULT_MIN_CONCURRENCY = 1;
+	private static final int DEFAULT_MAX_CONCURRENCY = 50;
+	private static final int MAX_MESSAGES_PER_RECEIVE = 10;
+	private static final int DEFAULT_VIRTUAL_THREADS_MAX_IN_FLIGHT_MESSAGES = 1000;
+	private static final long DEFAULT_PREFETCH_MAX_PAYLOAD_SIZE = 2 * 1024 * 1024;
+	private static final long DEFAULT_MAX_BACK_OFF_TIME_MS = 300000;
+	private static final int DEFAULT_IDLE_RECEIVES_BEFORE_PARKING = 3;
+	private static final int DEFAULT_DEDUPLICATION_MAX_SIZE = 100000;
+	private static final int DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE = 20;
+	private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_TIME_MS = 30000;
+	private static final String RATE_LIMIT_PROPERTY_PREFIX = "cloud.aws.sqs.listener.rateLimit.";
 	private static final String DEFAULT_THREAD_NAME_PREFIX =
 			ClassUtils.getShortName(NonBlockingMessageListenerContainer.class) + "-";
 
 	private boolean defaultTaskExecutor;
-	private long backOffTime = 10000;
+	private boolean defaultTaskScheduler;
+	private long backOffTime = 1000;
+	private long maxBackOffTime = DEFAULT_MAX_BACK_OFF_TIME_MS;
+	private int idleReceivesBeforeParking = DEFAULT_IDLE_RECEIVES_BEFORE_PARKING;
+	private long maxParkTime;
+	private ClaimCheckStore claimCheckStore;
+	private List<MessageCodec> messageCodecs = MessageCompressor.defaultCodecs();
+	private int maxDecompressedSize = MessageCompressor.DEFAULT_MAX_DECOMPRESSED_SIZE;
+	private MessageCompressor messageCompressor = new MessageCompressor(this.messageCodecs, null, 0, this.maxDecompressedSize);
 	private long queueStopTimeout = 10000;
-
+	private long drainTimeout;
+	private long deleteBatchLingerTime = DEFAULT_DELETE_BATCH_LINGER_TIME_MS;
+	private boolean adaptiveConcurrency;
+	private int minConcurrency = DEFAULT_MIN_CONCURRENCY;
+	private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+	private boolean virtualThreads;
+	private int maxInFlightMessages;
+	private int pollersPerQueue = 1;
+	private boolean receivePipelining;
+	private boolean extendVisibilityTimeout;
+	private int prefetchBatches;
+	private long prefetchMaxPayloadSize = DEFAULT_PREFETCH_MAX_PAYLOAD_SIZE;
+	private Set<String> batchListenerQueues = Collections.emptySet();
+	private int maxGroupsInFlight;
+	private long deduplicationWindow;
+	private int deduplicationMaxSize = DEFAULT_DEDUPLICATION_MAX_SIZE;
+	private String deduplicationKeyAttribute;
+	private Map<String, Double> rateLimits = Collections.emptyMap();
+	private Map<String, Integer> queueWeights = Collections.emptyMap();
+	private float circuitBreakerFailureRate;
+	private int circuitBreakerWindowSize = DEFAULT_CIRCUIT_BREAKER_WINDOW_SIZE;
+	private long circuitBreakerOpenTime = DEFAULT_CIRCUIT_BREAKER_OPEN_TIME_MS;
+	private int maxReceiveCount;
+	private Map<String, String> quarantineQueues = Collections.emptyMap();
+
+	private BeanFactory beanFactory;
 	private AsyncTaskExecutor taskExecutor;
-	private ConcurrentHashMap<String, Future<?>> scheduledFutureByQueue;
+	private TaskScheduler taskScheduler;
+	private ConcurrentHashMap<String, List<Future<?>>> scheduledFutureByQueue;
 	private ConcurrentHashMap<String, Boolean> runningStateByQueue;
+	private ConcurrentHashMap<String, DeleteMessageBatcher> deleteMessageBatcherByQueue;
+	private ConcurrentHashMap<String, AvailableSlots> availableSlotsByQueue;
+	private ConcurrentHashMap<String, AdaptiveConcurrencyLimiter> concurrencyLimiterByQueue;
+	private Semaphore inFlightPermits;
+	private WeightedSlotAllocator weightedSlotAllocator;
+	private ConcurrentHashMap<String, VisibilityTimeoutExtender> visibilityTimeoutExtenderByQueue;
+	private ConcurrentHashMap<String, PrefetchBuffer> prefetchBufferByQueue;
+	private ConcurrentHashMap<String, ListenerMetrics> listenerMetricsByQueue;
+	private ConcurrentHashMap<String, QueueParking> queueParkingByQueue;
+	private ConcurrentHashMap<String, MessageDeduplicator> deduplicatorByQueue;
+	private ConcurrentHashMap<String, RateLimiter> rateLimiterByQueue;
+	private ConcurrentHashMap<String, InFlightMessages> inFlightMessagesByQueue;
+	private QueueCircuitBreakers circuitBreakers;
+	private ConcurrentHashMap<String, MessageQuarantine> quarantineByQueue;
+	private final List<ScheduledFuture<?>> scheduledTasks = new ArrayList<>();
 
 	protected AsyncTaskExecutor getTaskExecutor() {
 		return this.taskExecutor;
@@ -49,16 +134,457 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 		this.taskExecutor = taskExecutor;
 	}
 
+	protected TaskScheduler getTaskScheduler() {
+		return this.taskScheduler;
+	}
+
+	/**
+	 * The scheduler used for the timed work of the container, like flushing partially filled delete batches.
+	 * If not set, a single threaded {@link ThreadPoolTaskScheduler} is created.
+	 *
+	 * @param taskScheduler
+	 * 		the scheduler for the container's timed tasks
+	 */
+	public void setTaskScheduler(final TaskScheduler taskScheduler) {
+		this.taskScheduler = taskScheduler;
+	}
+
+	public long getDeleteBatchLingerTime() {
+		return this.deleteBatchLingerTime;
+	}
+
+	/**
+	 * The number of milliseconds a processed message waits for other messages of the same queue before they are
+	 * deleted together with one {@code DeleteMessageBatch} request. A batch is sent as soon as it holds 10 receipt
+	 * handles, regardless of this time. A value of {@code 0} deletes every message with its own request.
+	 * Default value is 100 milliseconds.
+	 *
+	 * @param deleteBatchLingerTime
+	 * 		in milliseconds
+	 */
+	public void setDeleteBatchLingerTime(final long deleteBatchLingerTime) {
+		this.deleteBatchLingerTime = deleteBatchLingerTime;
+	}
+
+	public boolean isAdaptiveConcurrency() {
+		return this.adaptiveConcurrency;
+	}
+
+	/**
+	 * Enables an AIMD concurrency limit per queue. The number of in-flight messages of a queue starts at
+	 * {@code maxNumberOfMessages} and is raised while the handler latency and error rate stay flat, and lowered
+	 * when they degrade, always within {@link #setMinConcurrency(int)} and {@link #setMaxConcurrency(int)}.
+	 * Default value is {@code false}, which keeps the number of in-flight messages at {@code maxNumberOfMessages}.
+	 *
+	 * @param adaptiveConcurrency
+	 * 		{@code true} to adapt the concurrency of each queue to its handler
+	 */
+	public void setAdaptiveConcurrency(final boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+
+	public int getMinConcurrency() {
+		return this.minConcurrency;
+	}
+
+	/**
+	 * The lowest number of in-flight messages per queue the adaptive concurrency limit backs off to.
+	 * Default value is 1.
+	 *
+	 * @param minConcurrency
+	 * 		the lower bound of the adaptive concurrency limit
+	 */
+	public void setMinConcurrency(final int minConcurrency) {
+		this.minConcurrency = minConcurrency;
+	}
+
+	public int getMaxConcurrency() {
+		return this.maxConcurrency;
+	}
+
+	/**
+	 * The highest number of in-flight messages per queue the adaptive concurrency limit grows to.
+	 * Default value is 50.
+	 *
+	 * @param maxConcurrency
+	 * 		the upper bound of the adaptive concurrency limit
+	 */
+	public void setMaxConcurrency(final int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Runs the pollers and the message handlers on virtual threads instead of a {@link ThreadPoolTaskExecutor}.
+	 * Only applies to the default executor, i.e. if no explicit {@link #setTaskExecutor(AsyncTaskExecutor)} has been
+	 * set. Requires a Java 21 or later runtime, on older runtimes the container fails to initialize. As virtual
+	 * threads are not pooled, the number of in-flight messages is bounded by {@link #setMaxInFlightMessages(int)}
+	 * instead, which defaults to 1000 in this mode.
+	 *
+	 * @param virtualThreads
+	 * 		{@code true} to execute on virtual threads
+	 */
+	public void setVirtualThreads(final boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public int getMaxInFlightMessages() {
+		return this.maxInFlightMessages;
+	}
+
+	/**
+	 * The maximum number of messages being processed at the same time across all queues of this container. A poller
+	 * only receives as many messages as it can get permits for. Default value is {@code 0}, which leaves the bound to
+	 * the executor, or 1000 when running on virtual threads.
+	 *
+	 * @param maxInFlightMessages
+	 * 		the number of in-flight messages per container
+	 */
+	public void setMaxInFlightMessages(final int maxInFlightMessages) {
+		this.maxInFlightMessages = maxInFlightMessages;
+	}
+
+	public int getPollersPerQueue() {
+		return this.pollersPerQueue;
+	}
+
+	/**
+	 * The number of pollers receiving messages in parallel from each queue. All pollers of a queue share its
+	 * available slots, so the number of in-flight messages per queue does not grow with the number of pollers.
+	 * Default value is 1.
+	 *
+	 * @param pollersPerQueue
+	 * 		the number of parallel receivers per queue
+	 */
+	public void setPollersPerQueue(final int pollersPerQueue) {
+		Assert.isTrue(pollersPerQueue > 0, "pollersPerQueue must be greater than 0");
+		this.pollersPerQueue = pollersPerQueue;
+	}
+
+	public boolean isReceivePipelining() {
+		return this.receivePipelining;
+	}
+
+	/**
+	 * Issues the next receive request as soon as a batch has arrived, while that batch is still being dispatched,
+	 * if slots are left for it. The receive round-trip then overlaps with processing. Messages of a pipelined receive
+	 * that is still pending when the queue stops become visible again only after their visibility timeout.
+	 * Default value is {@code false}.
+	 *
+	 * @param receivePipelining
+	 * 		{@code true} to overlap receiving with processing
+	 */
+	public void setReceivePipelining(final boolean receivePipelining) {
+		this.receivePipelining = receivePipelining;
+	}
+
+	public boolean isExtendVisibilityTimeout() {
+		return this.extendVisibilityTimeout;
+	}
+
+	/**
+	 * Extends the visibility timeout of messages that are still being processed. Receipt handles are tracked per
+	 * queue and extended by another visibility timeout with {@code ChangeMessageVisibilityBatch} requests once less
+	 * than half of their timeout is left, until their processing completed. This allows a short visibility timeout,
+	 * which makes SQS redeliver the messages of a crashed consumer quickly, without slow messages being delivered
+	 * twice. Requires {@link #setVisibilityTimeout(Integer)} to be set. Default value is {@code false}.
+	 *
+	 * @param extendVisibilityTimeout
+	 * 		{@code true} to extend the visibility timeout of in-flight messages
+	 */
+	public void setExtendVisibilityTimeout(final boolean extendVisibilityTimeout) {
+		this.extendVisibilityTimeout = extendVisibilityTimeout;
+	}
+
+	public int getPrefetchBatches() {
+		return this.prefetchBatches;
+	}
+
+	/**
+	 * The number of receive batches a poller may fetch ahead of free worker slots. Prefetched messages are kept in a
+	 * buffer per queue, and a worker that finishes a message takes the next one from that buffer right away instead
+	 * of waiting for the next receive round-trip. Buffered messages with less than half of their visibility timeout
+	 * left are made visible again instead of being processed late. Requires {@link #setVisibilityTimeout(Integer)}
+	 * to be set. Default value is {@code 0}, which disables prefetching.
+	 *
+	 * @param prefetchBatches
+	 * 		the number of batches of {@code maxNumberOfMessages} to buffer per queue
+	 */
+	public void setPrefetchBatches(final int prefetchBatches) {
+		this.prefetchBatches = prefetchBatches;
+	}
+
+	public long getPrefetchMaxPayloadSize() {
+		return this.prefetchMaxPayloadSize;
+	}
+
+	/**
+	 * The maximum number of payload characters the prefetch buffer of a queue may hold. Received messages that do
+	 * not fit anymore are made visible again right away. Default value is 2097152 (2 MiB of ASCII payload).
+	 *
+	 * @param prefetchMaxPayloadSize
+	 * 		the payload size limit of each prefetch buffer
+	 */
+	public void setPrefetchMaxPayloadSize(final long prefetchMaxPayloadSize) {
+		this.prefetchMaxPayloadSize = prefetchMaxPayloadSize;
+	}
+
+	public Set<String> getBatchListenerQueues() {
+		return this.batchListenerQueues;
+	}
+
+	/**
+	 * The logical names of the queues whose handler consumes all messages of a receive with one invocation. The
+	 * handler method takes a {@code List} payload, converted by the configured payload converter from the JSON
+	 * array of the message bodies, in which bodies that are not JSON are JSON strings, and may report single
+	 * messages as failed through a {@link BatchAcknowledgment} header parameter. The deletion policy is applied per
+	 * message. Batch listener queues do not prefetch and are not sampled by the adaptive concurrency limit. Default
+	 * is no batch listener queues.
+	 *
+	 * @param batchListenerQueues
+	 * 		the names as defined on the listener methods
+	 */
+	public void setBatchListenerQueues(final Collection<String> batchListenerQueues) {
+		this.batchListenerQueues = Collections.unmodifiableSet(new HashSet<>(batchListenerQueues));
+	}
+
+	public int getMaxGroupsInFlight() {
+		return this.maxGroupsInFlight;
+	}
+
+	/**
+	 * Configures how many message groups of a FIFO queue are processed at the same time. Messages of FIFO queues
+	 * (queue urls ending in {@code .fifo}) are processed in receive order within their message group, while
+	 * different groups are processed in parallel and take turns message by message. A failed message stops the
+	 * remaining received messages of its group, which are made visible again to keep their order. FIFO queues do not
+	 * prefetch. Default is {@code 0}, which limits the groups in flight by the worker slots of the queue only.
+	 *
+	 * @param maxGroupsInFlight
+	 * 		the maximum number of groups in flight per poller
+	 */
+	public void setMaxGroupsInFlight(final int maxGroupsInFlight) {
+		this.maxGroupsInFlight = maxGroupsInFlight;
+	}
+
+	public long getDeduplicationWindow() {
+		return this.deduplicationWindow;
+	}
+
+	/**
+	 * Enables skipping of redelivered messages. The key of every successfully processed message is remembered per
+	 * queue for at least the given window, and a received message with a remembered key is deleted without invoking
+	 * the handler. This protects expensive handlers from redeliveries after a visibility timeout lapsed or a delete
+	 * failed. The keys only live in memory, so duplicates received by other instances are not detected. Default is
+	 * {@code 0}, which disables deduplication.
+	 *
+	 * @param deduplicationWindow
+	 * 		the window in milliseconds
+	 */
+	public void setDeduplicationWindow(final long deduplicationWindow) {
+		this.deduplicationWindow = deduplicationWindow;
+	}
+
+	public int getDeduplicationMaxSize() {
+		return this.deduplicationMaxSize;
+	}
+
+	/**
+	 * The maximum number of keys remembered per queue. A queue that processes more than half of this number of
+	 * messages within the {@link #setDeduplicationWindow(long) window} forgets keys early. Each key takes 16 bytes
+	 * of memory. Default is {@code 100000}.
+	 *
+	 * @param deduplicationMaxSize
+	 * 		the maximum number of keys per queue
+	 */
+	public void setDeduplicationMaxSize(final int deduplicationMaxSize) {
+		this.deduplicationMaxSize = deduplicationMaxSize;
+	}
+
+	public String getDeduplicationKeyAttribute() {
+		return this.deduplicationKeyAttribute;
+	}
+
+	/**
+	 * The string message attribute that identifies a message for deduplication, for example a business key set by
+	 * the sender, so that the same payload sent twice is processed once. Messages without the attribute are keyed by
+	 * their SQS message id. Default is {@code null}, which keys all messages by their message id.
+	 *
+	 * @param deduplicationKeyAttribute
+	 * 		the name of the message attribute
+	 */
+	public void setDeduplicationKeyAttribute(final String deduplicationKeyAttribute) {
+		this.deduplicationKeyAttribute = deduplicationKeyAttribute;
+	}
+
+	public Map<String, Double> getRateLimits() {
+		return this.rateLimits;
+	}
+
+	/**
+	 * Limits how many messages per second are received from a queue, for handlers that call rate limited services.
+	 * The pollers only reserve as many worker slots as the token bucket of the queue grants, so messages are never
+	 * received ahead of their turn. The limit of a queue can be changed at runtime with the Archaius property
+	 * {@code cloud.aws.sqs.listener.rateLimit.<logical queue name>}, and the burst with the same property suffixed
+	 * with {@code .burst}. A value of {@code 0} or less removes the limit. Default is no limit for any queue.
+	 *
+	 * @param rateLimits
+	 * 		the default messages per second by logical queue name
+	 */
+	public void setRateLimits(final Map<String, Double> rateLimits) {
+		this.rateLimits = Collections.unmodifiableMap(new HashMap<>(rateLimits));
+	}
+
+	public Map<String, Integer> getQueueWeights() {
+		return this.queueWeights;
+	}
+
+	/**
+	 * Shares the in-flight messages of this container between its queues by weight, so a backlog on one queue
+	 * cannot occupy all workers while other queues wait. Every queue is guaranteed its weighted share of
+	 * {@link #setMaxInFlightMessages(int)}, or of the worker threads of a {@link ThreadPoolTaskExecutor} if that is
+	 * not set. Queues that are quiet leave their share to busy queues, which then run more messages at once than
+	 * one receive batch, and get it back as soon as they have messages again and running messages of the other
+	 * queues complete. Queues not listed have a weight of {@code 1}, a weight of {@code 0} only uses capacity other
+	 * queues leave idle. Default is no weights, in which case queues compete for in-flight messages on a first
+	 * come, first served basis.
+	 *
+	 * @param queueWeights
+	 * 		the weight by logical queue name
+	 */
+	public void setQueueWeights(final Map<String, Integer> queueWeights) {
+		this.queueWeights = Collections.unmodifiableMap(new HashMap<>(queueWeights));
+	}
+
+	public ClaimCheckStore getClaimCheckStore() {
+		return this.claimCheckStore;
+	}
+
+	/**
+	 * The store claim-check messages are resolved with. A message sent by {@code QueuePublisher} with a
+	 * {@link S3PayloadPointer} instead of its payload is downloaded before the handler is invoked, and the object is
+	 * deleted once the message was deleted from the queue. Objects of messages that are acknowledged manually or end
+	 * up in a dead letter queue are left to a lifecycle rule of the bucket. Defaults to an {@link AwsS3ClaimCheckStore}
+	 * of the {@code AwsS3Service} bean of the bean factory, if the aws-s3 module is on the classpath and there is one.
+	 *
+	 * @param claimCheckStore
+	 * 		the store with access to the claim-check bucket
+	 */
+	public void setClaimCheckStore(final ClaimCheckStore claimCheckStore) {
+		this.claimCheckStore = claimCheckStore;
+	}
+
+	/**
+	 * @return the decompression stage, its counters show how many compressed messages were received
+	 */
+	public MessageCompressor getMessageCompressor() {
+		return this.messageCompressor;
+	}
+
+	/**
+	 * The codecs compressed messages are decoded with, in addition to the built-in gzip and deflate codecs. A
+	 * message is decompressed before the handler is invoked if it carries the
+	 * {@link MessageCompressor#CONTENT_ENCODING_ATTRIBUTE} message attribute.
+	 *
+	 * @param messageCodecs
+	 * 		the additional codecs
+	 */
+	public void setMessageCodecs(final Collection<? extends MessageCodec> messageCodecs) {
+		List<MessageCodec> codecs = new ArrayList<>(MessageCompressor.defaultCodecs());
+		codecs.addAll(messageCodecs);
+		this.messageCodecs = codecs;
+		this.messageCompressor = new MessageCompressor(codecs, null, 0, this.maxDecompressedSize);
+	}
+
+	public int getMaxDecompressedSize() {
+		return this.maxDecompressedSize;
+	}
+
+	/**
+	 * The size a compressed message body may have once decompressed. A message with a larger body fails before the
+	 * handler is invoked, like a message that cannot be converted. Defaults to 16 MiB.
+	 *
+	 * @param maxDecompressedSize
+	 * 		the maximum decompressed size in bytes
+	 */
+	public void setMaxDecompressedSize(final int maxDecompressedSize) {
+		this.maxDecompressedSize = maxDecompressedSize;
+		this.messageCompressor = new MessageCompressor(this.messageCodecs, null, 0, maxDecompressedSize);
+	}
+
+	@Override
+	public void setBeanFactory(final BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
 
 	public long getBackOffTime() {
 		return this.backOffTime;
 	}
 
 
+	/**
+	 * The number of milliseconds a poller waits before it retries after its first failed receive. Every further
+	 * consecutive failure doubles the wait, up to {@link #setMaxBackOffTime(long)}, and each wait is jittered
+	 * between half and the full value. Default is {@code 1000}.
+	 *
+	 * @param backOffTime
+	 * 		the initial back off time in milliseconds
+	 */
 	public void setBackOffTime(final long backOffTime) {
 		this.backOffTime = backOffTime;
 	}
 
+	public long getMaxBackOffTime() {
+		return this.maxBackOffTime;
+	}
+
+	/**
+	 * The maximum number of milliseconds a poller backs off after consecutive failed receives, e.g. because the
+	 * queue was deleted. Default is five minutes.
+	 *
+	 * @param maxBackOffTime
+	 * 		the maximum back off time in milliseconds
+	 */
+	public void setMaxBackOffTime(final long maxBackOffTime) {
+		this.maxBackOffTime = maxBackOffTime;
+	}
+
+	public int getIdleReceivesBeforeParking() {
+		return this.idleReceivesBeforeParking;
+	}
+
+	/**
+	 * The number of consecutive empty receives after which an idle queue is parked. Default is {@code 3}.
+	 *
+	 * @param idleReceivesBeforeParking
+	 * 		the number of empty receives
+	 */
+	public void setIdleReceivesBeforeParking(final int idleReceivesBeforeParking) {
+		this.idleReceivesBeforeParking = idleReceivesBeforeParking;
+	}
+
+	public long getMaxParkTime() {
+		return this.maxParkTime;
+	}
+
+	/**
+	 * Enables parking of idle queues. A queue that returned {@link #setIdleReceivesBeforeParking(int)} empty
+	 * receives in a row is not polled for one second, and every further empty receive doubles that pause up to the
+	 * given maximum. A parked queue wakes up right away when it is started with {@link #start(String)} or a
+	 * {@link QueueMessagePublishedEvent} for it is published in the application context, which
+	 * {@code QueuePublisher} does for every message sent without delay. Messages sent by other applications are
+	 * received at the latest after the park time. Default is {@code 0}, which disables parking.
+	 *
+	 * @param maxParkTime
+	 * 		the maximum park time in milliseconds
+	 */
+	public void setMaxParkTime(final long maxParkTime) {
+		this.maxParkTime = maxParkTime;
+	}
+
 
 	public long getQueueStopTimeout() {
 		return this.queueStopTimeout;
@@ -75,14 +601,141 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 		this.queueStopTimeout = queueStopTimeout;
 	}
 
+	public long getDrainTimeout() {
+		return this.drainTimeout;
+	}
+
+	/**
+	 * Enables draining of queues on stop. After the pollers of a queue stopped, prefetched messages and messages
+	 * received while stopping are made visible again right away, the container waits up to this timeout for the
+	 * in-flight messages to complete, and then for the pending deletes to be confirmed by SQS. The numbers of
+	 * completed, released and abandoned messages are logged and recorded as metrics. When the container stops, all
+	 * queues stop receiving first and then share one drain timeout, as their in-flight messages complete in
+	 * parallel. Default is {@code 0}, which only waits for the pollers and leaves in-flight messages to the
+	 * visibility timeout.
+	 *
+	 * @param drainTimeout
+	 * 		in milliseconds
+	 */
+	public void setDrainTimeout(final long drainTimeout) {
+		this.drainTimeout = drainTimeout;
+	}
+
+	public float getCircuitBreakerFailureRate() {
+		return this.circuitBreakerFailureRate;
+	}
+
+	/**
+	 * Enables a circuit breaker per queue. When the share of failed handler invocations among the last
+	 * {@link #setCircuitBreakerWindowSize(int) window} reaches this rate, the container stops polling the queue, for
+	 * example while a downstream service the handler depends on is down. After the
+	 * {@link #setCircuitBreakerOpenTime(long) open time} polling resumes and the outcomes of the next few invocations
+	 * decide whether the queue keeps running or is paused again. A queue stopped with {@link #stop(String)} is not
+	 * resumed by its circuit breaker. Default is {@code 0}, which disables the circuit breakers.
+	 *
+	 * @param circuitBreakerFailureRate
+	 * 		the failure rate between {@code 0} and {@code 1} at which polling is paused
+	 */
+	public void setCircuitBreakerFailureRate(final float circuitBreakerFailureRate) {
+		this.circuitBreakerFailureRate = circuitBreakerFailureRate;
+	}
+
+	public int getCircuitBreakerWindowSize() {
+		return this.circuitBreakerWindowSize;
+	}
+
+	/**
+	 * The number of most recent handler invocations the failure rate of the circuit breaker is calculated over. A
+	 * batch listener invocation counts once. The circuit does not open before this many invocations completed.
+	 * Default is {@code 20}.
+	 *
+	 * @param circuitBreakerWindowSize
+	 * 		the number of invocations
+	 */
+	public void setCircuitBreakerWindowSize(final int circuitBreakerWindowSize) {
+		this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+	}
+
+	public long getCircuitBreakerOpenTime() {
+		return this.circuitBreakerOpenTime;
+	}
+
+	/**
+	 * The time polling of a queue is paused after its circuit breaker opened. Default is {@code 30000}.
+	 *
+	 * @param circuitBreakerOpenTime
+	 * 		in milliseconds
+	 */
+	public void setCircuitBreakerOpenTime(final long circuitBreakerOpenTime) {
+		this.circuitBreakerOpenTime = circuitBreakerOpenTime;
+	}
+
+	public int getMaxReceiveCount() {
+		return this.maxReceiveCount;
+	}
+
+	/**
+	 * Moves poison messages out of the way. A message of a queue with a {@link #setQuarantineQueues(Map) quarantine
+	 * queue} that was received more often than this count is sent to the quarantine queue and deleted, instead of
+	 * invoking the handler again. Unlike a redrive policy this also covers messages that are never acknowledged, for
+	 * example because the handler crashes the worker or times out. Default is {@code 0}, which disables quarantining.
+	 *
+	 * @param maxReceiveCount
+	 * 		the number of receives after which a message is quarantined
+	 */
+	public void setMaxReceiveCount(final int maxReceiveCount) {
+		this.maxReceiveCount = maxReceiveCount;
+	}
+
+	public Map<String, String> getQuarantineQueues() {
+		return this.quarantineQueues;
+	}
+
+	/**
+	 * The queues poison messages are moved to once they exceed the {@link #setMaxReceiveCount(int) maximum receive
+	 * count}. The body and the message attributes are kept, and the logical name of the source queue is added as the
+	 * {@code QuarantinedFrom} attribute if the message has room for it. Default is no quarantine queue for any queue.
+	 *
+	 * @param quarantineQueues
+	 * 		the name or url of the quarantine queue by logical queue name
+	 */
+	public void setQuarantineQueues(final Map<String, String> quarantineQueues) {
+		this.quarantineQueues = Collections.unmodifiableMap(new HashMap<>(quarantineQueues));
+	}
+
 	@Override
 	protected void initialize() {
 		if (this.taskExecutor == null) {
+			Assert.state(!this.virtualThreads || VirtualThreadTaskExecutor.isSupported(),
+					"virtualThreads requires Java 21 or later, running on " + System.getProperty("java.version"));
 			this.defaultTaskExecutor = true;
 			this.taskExecutor = createDefaultTaskExecutor();
 		}
+		if (this.taskScheduler == null) {
+			this.defaultTaskScheduler = true;
+			this.taskScheduler = createDefaultTaskScheduler();
+		}
+		if (this.claimCheckStore == null && this.beanFactory != null &&
+				ClassUtils.isPresent(AwsS3ClaimCheckStore.AWS_S3_SERVICE_CLASS_NAME, getClass().getClassLoader())) {
+			this.claimCheckStore = AwsS3ClaimCheckStore.create(this.beanFactory);
+		}
+		if (this.claimCheckStore == null) {
+			getLogger().debug("No claim-check store available, claim-check messages cannot be received");
+		}
 		super.initialize();
 		initializeRunningStateByQueue();
+		initializeInFlightPermits();
+		initializeAvailableSlotsByQueue();
+		initializeListenerMetricsByQueue();
+		initializeDeleteMessageBatcherByQueue();
+		initializeVisibilityTimeoutExtenderByQueue();
+		initializePrefetchBufferByQueue();
+		initializeQueueParkingByQueue();
+		initializeDeduplicatorByQueue();
+		initializeRateLimiterByQueue();
+		initializeInFlightMessagesByQueue();
+		initializeCircuitBreakers();
+		initializeQuarantineByQueue();
 		this.scheduledFutureByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
 	}
 
@@ -93,26 +746,246 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 		}
 	}
 
+	private void initializeDeleteMessageBatcherByQueue() {
+		this.deleteMessageBatcherByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
+			String queueUrl = registeredQueue.getValue().getReceiveMessageRequest().getQueueUrl();
+			this.deleteMessageBatcherByQueue.put(registeredQueue.getKey(),
+					new DeleteMessageBatcher(getAmazonSqs(), queueUrl, this.taskScheduler, this.deleteBatchLingerTime,
+							this.listenerMetricsByQueue.get(registeredQueue.getKey()), getLogger()));
+		}
+	}
+
+	/**
+	 * Records the hot path metrics of every queue in the {@code MeterRegistry} of the application context, if
+	 * Micrometer is on the classpath and such a bean exists.
+	 */
+	private void initializeListenerMetricsByQueue() {
+		this.listenerMetricsByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		boolean micrometerPresent = this.beanFactory != null &&
+				ClassUtils.isPresent(MicrometerListenerMetrics.METER_REGISTRY_CLASS_NAME, getClass().getClassLoader());
+		for (String queueName : getRegisteredQueues().keySet()) {
+			ListenerMetrics listenerMetrics = null;
+			if (micrometerPresent) {
+				listenerMetrics = MicrometerListenerMetrics.create(this.beanFactory, queueName, this.availableSlotsByQueue.get(queueName));
+			}
+			this.listenerMetricsByQueue.put(queueName, listenerMetrics != null ? listenerMetrics : ListenerMetrics.NOOP);
+		}
+	}
+
+	private void initializeAvailableSlotsByQueue() {
+		this.availableSlotsByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		this.concurrencyLimiterByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
+			int maxNumberOfMessages = registeredQueue.getValue().getReceiveMessageRequest().getMaxNumberOfMessages();
+			// with weights the allocator caps the queues, so a busy queue can take the capacity idle queues leave
+			int slots = this.weightedSlotAllocator != null ? Math.max(maxNumberOfMessages, this.weightedSlotAllocator.getCapacity()) : maxNumberOfMessages;
+			final AvailableSlots availableSlots = new AvailableSlots(slots);
+			if (this.adaptiveConcurrency) {
+				AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(maxNumberOfMessages,
+						this.minConcurrency, this.maxConcurrency, delta -> adjustAvailableSlots(availableSlots, delta));
+				availableSlots.set(concurrencyLimiter.getLimit());
+				this.concurrencyLimiterByQueue.put(registeredQueue.getKey(), concurrencyLimiter);
+			}
+			this.availableSlotsByQueue.put(registeredQueue.getKey(), availableSlots);
+		}
+	}
+
+	private void initializeInFlightPermits() {
+		int permits = this.maxInFlightMessages;
+		if (permits <= 0 && this.virtualThreads && this.defaultTaskExecutor) {
+			permits = DEFAULT_VIRTUAL_THREADS_MAX_IN_FLIGHT_MESSAGES;
+		}
+		if (!this.queueWeights.isEmpty()) {
+			if (permits <= 0 && getTaskExecutor() instanceof ThreadPoolTaskExecutor) {
+				// the pollers run on the same executor
+				int workerThreads = ((ThreadPoolTaskExecutor) getTaskExecutor()).getMaxPoolSize() - getRegisteredQueues().size() * this.pollersPerQueue;
+				permits = Math.max(1, workerThreads);
+			}
+			Assert.state(permits > 0, "maxInFlightMessages must be set to weight the queues of a custom executor");
+			Map<String, Integer> weights = new HashMap<>(getRegisteredQueues().size());
+			for (String queueName : getRegisteredQueues().keySet()) {
+				Integer weight = this.queueWeights.get(queueName);
+				weights.put(queueName, weight != null ? weight : 1);
+			}
+			this.weightedSlotAllocator = new WeightedSlotAllocator(permits, weights);
+			return;
+		}
+		this.inFlightPermits = permits > 0 ? new Semaphore(permits) : null;
+	}
+
+	private void initializeVisibilityTimeoutExtenderByQueue() {
+		this.visibilityTimeoutExtenderByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		if (!this.extendVisibilityTimeout) {
+			return;
+		}
+
+		Assert.state(getVisibilityTimeout() != null, "visibilityTimeout must be set to extend the visibility timeout of in-flight messages");
+		for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
+			String queueUrl = registeredQueue.getValue().getReceiveMessageRequest().getQueueUrl();
+			VisibilityTimeoutExtender visibilityTimeoutExtender = new VisibilityTimeoutExtender(getAmazonSqs(), queueUrl, getVisibilityTimeout(), getLogger());
+			this.visibilityTimeoutExtenderByQueue.put(registeredQueue.getKey(), visibilityTimeoutExtender);
+			this.scheduledTasks.add(this.taskScheduler.scheduleAtFixedRate(visibilityTimeoutExtender::extendExpiringMessages,
+					visibilityTimeoutExtender.getCheckInterval()));
+		}
+	}
+
+	private void initializePrefetchBufferByQueue() {
+		this.prefetchBufferByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		if (this.prefetchBatches <= 0) {
+			return;
+		}
+
+		Assert.state(getVisibilityTimeout() != null, "visibilityTimeout must be set to prefetch messages");
+		for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
+			ReceiveMessageRequest receiveMessageRequest = registeredQueue.getValue().getReceiveMessageRequest();
+			if (this.batchListenerQueues.contains(registeredQueue.getKey()) || FifoGroupDispatcher.isFifoQueue(receiveMessageRequest.getQueueUrl())) {
+				continue;
+			}
+			PrefetchBuffer prefetchBuffer = new PrefetchBuffer(getAmazonSqs(), receiveMessageRequest.getQueueUrl(),
+					this.prefetchBatches * receiveMessageRequest.getMaxNumberOfMessages(), this.prefetchMaxPayloadSize,
+					getVisibilityTimeout(), getLogger());
+			this.prefetchBufferByQueue.put(registeredQueue.getKey(), prefetchBuffer);
+			this.scheduledTasks.add(this.taskScheduler.scheduleAtFixedRate(prefetchBuffer::releaseExpiringMessages,
+					prefetchBuffer.getCheckInterval()));
+		}
+	}
+
+	private void initializeQueueParkingByQueue() {
+		this.queueParkingByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		for (String queueName : getRegisteredQueues().keySet()) {
+			this.queueParkingByQueue.put(queueName, new QueueParking());
+		}
+	}
+
+	private void initializeDeduplicatorByQueue() {
+		this.deduplicatorByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		if (this.deduplicationWindow <= 0) {
+			return;
+		}
+		for (String queueName : getRegisteredQueues().keySet()) {
+			this.deduplicatorByQueue.put(queueName, new MessageDeduplicator(queueName,
+					new DeduplicationCache(this.deduplicationWindow, this.deduplicationMaxSize), this.deduplicationKeyAttribute,
+					this.deleteMessageBatcherByQueue.get(queueName), this.listenerMetricsByQueue.get(queueName), getLogger()));
+		}
+	}
+
+	private void initializeInFlightMessagesByQueue() {
+		this.inFlightMessagesByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		for (String queueName : getRegisteredQueues().keySet()) {
+			this.inFlightMessagesByQueue.put(queueName, new InFlightMessages());
+		}
+	}
+
+	private void initializeCircuitBreakers() {
+		this.circuitBreakers = new QueueCircuitBreakers(getRegisteredQueues().keySet(), this.circuitBreakerFailureRate,
+				this.circuitBreakerWindowSize, this.circuitBreakerOpenTime, getBackOffTime(), this.taskScheduler,
+				this.getLifecycleMonitor(), new QueueCircuitBreakers.PausableQueues() {
+
+					@Override
+					public boolean isRunning() {
+						return NonBlockingMessageListenerContainer.this.isRunning();
+					}
+
+					@Override
+					public boolean isRunning(String logicalQueueName) {
+						return NonBlockingMessageListenerContainer.this.isRunning(logicalQueueName);
+					}
+
+					@Override
+					public void pause(String logicalQueueName) {
+						pauseQueue(logicalQueueName);
+					}
+
+					@Override
+					public void resume(String logicalQueueName) {
+						startQueue(logicalQueueName, getRegisteredQueues().get(logicalQueueName));
+					}
+				}, getLogger());
+	}
+
+	private void initializeQuarantineByQueue() {
+		this.quarantineByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		if (this.maxReceiveCount <= 0) {
+			return;
+		}
+		for (Map.Entry<String, String> quarantineQueue : this.quarantineQueues.entrySet()) {
+			String queueName = quarantineQueue.getKey();
+			Assert.isTrue(getRegisteredQueues().containsKey(queueName), "Queue with name '" + queueName + "' does not exist");
+			this.quarantineByQueue.put(queueName, new MessageQuarantine(getAmazonSqs(), queueName,
+					getDestinationResolver().resolveDestination(quarantineQueue.getValue()), this.maxReceiveCount,
+					this.deleteMessageBatcherByQueue.get(queueName), this.listenerMetricsByQueue.get(queueName), getLogger()));
+		}
+	}
+
+	private void initializeRateLimiterByQueue() {
+		this.rateLimiterByQueue = new ConcurrentHashMap<>(getRegisteredQueues().size());
+		for (String queueName : getRegisteredQueues().keySet()) {
+			Double rateLimit = this.rateLimits.get(queueName);
+			this.rateLimiterByQueue.put(queueName, new RateLimiter(RATE_LIMIT_PROPERTY_PREFIX + queueName, rateLimit != null ? rateLimit : 0));
+		}
+	}
+
+	private static void adjustAvailableSlots(AvailableSlots availableSlots, int delta) {
+		// may drop below zero, the poller then waits until enough in-flight messages completed
+		if (availableSlots.addAndGet(delta) > 0 && delta > 0) {
+			availableSlots.signalRelease();
+		}
+	}
+
 	@Override
 	protected void doStart() {
 		synchronized (this.getLifecycleMonitor()) {
+			this.circuitBreakers.resetAll();
 			scheduleMessageListeners();
 		}
 	}
 
 	@Override
 	protected void doStop() {
+		List<String> runningQueues = new ArrayList<>();
 		for (Map.Entry<String, Boolean> runningStateByQueue : this.runningStateByQueue.entrySet()) {
-			if (runningStateByQueue.getValue()) {
-				stop(runningStateByQueue.getKey());
+			String queueName = runningStateByQueue.getKey();
+			this.circuitBreakers.cancelHalfOpenTask(queueName);
+			// a queue paused by its circuit breaker still has in-flight messages and deletes to drain
+			if (runningStateByQueue.getValue() || this.circuitBreakers.isOpen(queueName)) {
+				runningQueues.add(queueName);
 			}
 		}
+		// stop receiving on all queues before waiting for any of them, so they drain in parallel
+		for (String runningQueue : runningQueues) {
+			stopQueue(runningQueue);
+		}
+		List<String> stoppedQueues = new ArrayList<>(runningQueues.size());
+		for (String runningQueue : runningQueues) {
+			this.circuitBreakers.reset(runningQueue);
+			if (awaitPollers(runningQueue)) {
+				stoppedQueues.add(runningQueue);
+			}
+		}
+		long drainDeadline = System.currentTimeMillis() + this.drainTimeout;
+		for (String stoppedQueue : stoppedQueues) {
+			drain(stoppedQueue, drainDeadline);
+		}
 	}
 
 	@Override
 	protected void doDestroy() {
+		for (ScheduledFuture<?> scheduledTask : this.scheduledTasks) {
+			scheduledTask.cancel(false);
+		}
+		for (DeleteMessageBatcher deleteMessageBatcher : this.deleteMessageBatcherByQueue.values()) {
+			deleteMessageBatcher.flush();
+		}
 		if (this.defaultTaskExecutor) {
-			((ThreadPoolTaskExecutor) this.taskExecutor).destroy();
+			try {
+				((DisposableBean) this.taskExecutor).destroy();
+			} catch (Exception e) {
+				getLogger().warn("Error destroying default task executor", e);
+			}
+		}
+		if (this.defaultTaskScheduler) {
+			((ThreadPoolTaskScheduler) this.taskScheduler).destroy();
 		}
 	}
 
@@ -126,6 +999,10 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 	 */
 	protected AsyncTaskExecutor createDefaultTaskExecutor() {
 		String beanName = getBeanName();
+		if (this.virtualThreads) {
+			return new VirtualThreadTaskExecutor(beanName != null ? beanName + "-" : DEFAULT_THREAD_NAME_PREFIX);
+		}
+
 		ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
 		threadPoolTaskExecutor.setThreadNamePrefix(beanName != null ? beanName + "-" : DEFAULT_THREAD_NAME_PREFIX);
 		int spinningThreads = this.getRegisteredQueues().size();
@@ -134,7 +1011,8 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 			threadPoolTaskExecutor.setCorePoolSize(spinningThreads * DEFAULT_WORKER_THREADS);
 
 			int maxNumberOfMessagePerBatch = getMaxNumberOfMessages() != null ? getMaxNumberOfMessages() : DEFAULT_WORKER_THREADS;
-			threadPoolTaskExecutor.setMaxPoolSize(spinningThreads * maxNumberOfMessagePerBatch);
+			int maxInFlightMessagesPerQueue = this.adaptiveConcurrency ? Math.max(this.maxConcurrency, maxNumberOfMessagePerBatch) : maxNumberOfMessagePerBatch;
+			threadPoolTaskExecutor.setMaxPoolSize(spinningThreads * (maxInFlightMessagesPerQueue + this.pollersPerQueue - 1));
 		}
 
 		// No use of a thread pool executor queue to avoid retaining message to long in memory
@@ -145,6 +1023,51 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 
 	}
 
+	/**
+	 * Create a default TaskScheduler. Called if no explicit TaskScheduler has been specified.
+	 *
+	 * @return a single threaded {@link ThreadPoolTaskScheduler} running daemon threads
+	 */
+	protected TaskScheduler createDefaultTaskScheduler() {
+		String beanName = getBeanName();
+		ThreadPoolTaskScheduler threadPoolTaskScheduler = new ThreadPoolTaskScheduler();
+		threadPoolTaskScheduler.setThreadNamePrefix((beanName != null ? beanName + "-" : DEFAULT_THREAD_NAME_PREFIX) + "scheduler-");
+		threadPoolTaskScheduler.setDaemon(true);
+		threadPoolTaskScheduler.afterPropertiesSet();
+
+		return threadPoolTaskScheduler;
+	}
+
+	/**
+	 * Acquires up to {@code wantedPermits} in-flight permits, waiting at most {@code maxWaitTime} for the first one.
+	 *
+	 * @return the number of acquired permits, {@code 0} if none became available in time
+	 */
+	private int acquireInFlightPermits(String logicalQueueName, int wantedPermits, long maxWaitTime) throws InterruptedException {
+		if (this.weightedSlotAllocator != null) {
+			return this.weightedSlotAllocator.acquire(logicalQueueName, wantedPermits, maxWaitTime);
+		}
+		if (this.inFlightPermits == null) {
+			return wantedPermits;
+		}
+		if (!this.inFlightPermits.tryAcquire(maxWaitTime, TimeUnit.MILLISECONDS)) {
+			return 0;
+		}
+		int acquiredPermits = 1;
+		while (acquiredPermits < wantedPermits && this.inFlightPermits.tryAcquire()) {
+			acquiredPermits++;
+		}
+		return acquiredPermits;
+	}
+
+	private void releaseInFlightPermits(String logicalQueueName, int permits) {
+		if (this.weightedSlotAllocator != null) {
+			this.weightedSlotAllocator.release(logicalQueueName, permits);
+		} else if (this.inFlightPermits != null && permits > 0) {
+			this.inFlightPermits.release(permits);
+		}
+	}
+
 	private void scheduleMessageListeners() {
 		for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
 			startQueue(registeredQueue.getKey(), registeredQueue.getValue());
@@ -164,31 +1087,110 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 	 */
 	public void stop(String logicalQueueName) {
 		stopQueue(logicalQueueName);
+		this.circuitBreakers.reset(logicalQueueName);
+
+		if (awaitPollers(logicalQueueName)) {
+			drain(logicalQueueName, System.currentTimeMillis() + this.drainTimeout);
+		}
+	}
 
+	/**
+	 * Waits for the pollers of a queue that stopped receiving, at most {@link #getQueueStopTimeout()} milliseconds.
+	 *
+	 * @return {@code false} if the current thread was interrupted
+	 */
+	private boolean awaitPollers(final String logicalQueueName) {
 		try {
 			if (isRunning(logicalQueueName)) {
-				Future<?> future = this.scheduledFutureByQueue.remove(logicalQueueName);
-				future.get(this.queueStopTimeout, TimeUnit.MILLISECONDS);
+				List<Future<?>> futures = this.scheduledFutureByQueue.remove(logicalQueueName);
+				long deadline = System.currentTimeMillis() + this.queueStopTimeout;
+				for (Future<?> future : futures) {
+					future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
 			}
 		} catch (InterruptedException e) {
 			Thread.currentThread().interrupt();
+			return false;
 		} catch (ExecutionException | TimeoutException e) {
 			getLogger().warn("Error stopping queue with name: '" + logicalQueueName + "'", e);
 		}
+		return true;
+	}
+
+	private void drain(final String logicalQueueName, final long deadline) {
+		if (this.drainTimeout <= 0) {
+			return;
+		}
+		try {
+			new QueueDrainer(logicalQueueName, this.inFlightMessagesByQueue.get(logicalQueueName),
+					this.prefetchBufferByQueue.get(logicalQueueName), this.deleteMessageBatcherByQueue.get(logicalQueueName),
+					this.listenerMetricsByQueue.get(logicalQueueName), getLogger()).drain(deadline);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	protected void stopQueue(final String logicalQueueName) {
 		Assert.isTrue(this.runningStateByQueue.containsKey(logicalQueueName), "Queue with name '" + logicalQueueName + "' does not exist");
 		this.runningStateByQueue.put(logicalQueueName, false);
+		// parked pollers see the stop right away
+		this.queueParkingByQueue.get(logicalQueueName).wakeUp();
+		// only messages returned while stopping are reported by the drain
+		this.inFlightMessagesByQueue.get(logicalQueueName).takeReturned();
 	}
 
+	/**
+	 * Starts the specified queue, or wakes up its pollers if it is already running but parked.
+	 *
+	 * @param logicalQueueName
+	 * 		the name as defined on the listener method
+	 */
 	public void start(final String logicalQueueName) {
 		Assert.isTrue(this.runningStateByQueue.containsKey(logicalQueueName), "Queue with name '" + logicalQueueName + "' does not exist");
+		this.queueParkingByQueue.get(logicalQueueName).wakeUp();
+		this.circuitBreakers.reset(logicalQueueName);
 
 		QueueAttributes queueAttributes = this.getRegisteredQueues().get(logicalQueueName);
 		startQueue(logicalQueueName, queueAttributes);
 	}
 
+	/**
+	 * Pauses polling of a queue whose circuit breaker opened. Prefetched messages are made visible again, running
+	 * messages complete as usual.
+	 */
+	private void pauseQueue(final String logicalQueueName) {
+		stopQueue(logicalQueueName);
+		PrefetchBuffer prefetchBuffer = this.prefetchBufferByQueue.get(logicalQueueName);
+		if (prefetchBuffer != null) {
+			prefetchBuffer.releaseAll();
+		}
+		this.listenerMetricsByQueue.get(logicalQueueName).circuitBreakerOpened();
+	}
+
+	/**
+	 * Wakes up the parked pollers of the queue a message was published to. Pollers backing off after errors keep
+	 * waiting. The event carries the name or url the publisher sent to, which is matched against the logical names
+	 * and urls of the registered queues.
+	 */
+	@Override
+	public void onApplicationEvent(final QueueMessagePublishedEvent event) {
+		if (this.queueParkingByQueue == null) {
+			return;
+		}
+		QueueParking queueParking = this.queueParkingByQueue.get(event.getQueueName());
+		if (queueParking == null) {
+			for (Map.Entry<String, QueueAttributes> registeredQueue : getRegisteredQueues().entrySet()) {
+				if (event.getQueueName().equals(registeredQueue.getValue().getReceiveMessageRequest().getQueueUrl())) {
+					queueParking = this.queueParkingByQueue.get(registeredQueue.getKey());
+					break;
+				}
+			}
+		}
+		if (queueParking != null) {
+			queueParking.wakeUpIdle();
+		}
+	}
+
 	/**
 	 * Checks if the spinning thread for the specified queue {@code logicalQueueName} is still running (polling for new
 	 * messages) or not.
@@ -198,8 +1200,27 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 	 * @return {@code true} if the spinning thread for the specified queue is running otherwise {@code false}.
 	 */
 	public boolean isRunning(final String logicalQueueName) {
-		Future<?> future = this.scheduledFutureByQueue.get(logicalQueueName);
-		return future != null && !future.isCancelled() && !future.isDone();
+		List<Future<?>> futures = this.scheduledFutureByQueue.get(logicalQueueName);
+		if (futures != null) {
+			for (Future<?> future : futures) {
+				if (!future.isCancelled() && !future.isDone()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the current adaptive concurrency limit of the specified queue.
+	 *
+	 * @param logicalQueueName
+	 * 		the name as defined on the listener method
+	 * @return the concurrency limit or {@code null} if adaptive concurrency is disabled or the queue is not registered
+	 */
+	public Integer getConcurrencyLimit(final String logicalQueueName) {
+		AdaptiveConcurrencyLimiter concurrencyLimiter = this.concurrencyLimiterByQueue.get(logicalQueueName);
+		return concurrencyLimiter != null ? concurrencyLimiter.getLimit() : null;
 	}
 
 	protected void startQueue(final String queueName, QueueAttributes queueAttributes) {
@@ -208,20 +1229,52 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 		}
 
 		this.runningStateByQueue.put(queueName, true);
-		Future<?> future = getTaskExecutor().submit(new AsynchronousMessageListener(queueName, queueAttributes));
-		this.scheduledFutureByQueue.put(queueName, future);
+		List<Future<?>> futures = new ArrayList<>(this.pollersPerQueue);
+		for (int i = 0; i < this.pollersPerQueue; i++) {
+			futures.add(getTaskExecutor().submit(new AsynchronousMessageListener(queueName, queueAttributes)));
+		}
+		this.scheduledFutureByQueue.put(queueName, futures);
 	}
 
 	class AsynchronousMessageListener implements Runnable {
 
 		private final QueueAttributes queueAttributes;
 		private final String logicalQueueName;
-		private final AtomicInteger availableSlots;
+		private final AvailableSlots availableSlots;
+		private final VisibilityTimeoutExtender visibilityTimeoutExtender;
+		private final PrefetchBuffer prefetchBuffer;
+		private final boolean batchListener;
+		private final FifoGroupDispatcher fifoGroupDispatcher;
+		private final ListenerMetrics listenerMetrics;
+		private final QueueParking queueParking;
+		private final PollerBackOff backOff;
+		private final MessageDeduplicator deduplicator;
+		private final RateLimiter rateLimiter;
+		private final InFlightMessages inFlightMessages;
+		private final MessageQuarantine quarantine;
 
 		AsynchronousMessageListener(final String logicalQueueName, final QueueAttributes queueAttributes) {
 			this.logicalQueueName = logicalQueueName;
 			this.queueAttributes = queueAttributes;
-			this.availableSlots = new AtomicInteger(this.queueAttributes.getReceiveMessageRequest().getMaxNumberOfMessages());
+			this.availableSlots = NonBlockingMessageListenerContainer.this.availableSlotsByQueue.get(logicalQueueName);
+			this.visibilityTimeoutExtender = NonBlockingMessageListenerContainer.this.visibilityTimeoutExtenderByQueue.get(logicalQueueName);
+			this.prefetchBuffer = NonBlockingMessageListenerContainer.this.prefetchBufferByQueue.get(logicalQueueName);
+			this.batchListener = NonBlockingMessageListenerContainer.this.batchListenerQueues.contains(logicalQueueName);
+			this.listenerMetrics = NonBlockingMessageListenerContainer.this.listenerMetricsByQueue.get(logicalQueueName);
+			this.queueParking = NonBlockingMessageListenerContainer.this.queueParkingByQueue.get(logicalQueueName);
+			this.deduplicator = NonBlockingMessageListenerContainer.this.deduplicatorByQueue.get(logicalQueueName);
+			this.rateLimiter = NonBlockingMessageListenerContainer.this.rateLimiterByQueue.get(logicalQueueName);
+			this.inFlightMessages = NonBlockingMessageListenerContainer.this.inFlightMessagesByQueue.get(logicalQueueName);
+			this.quarantine = NonBlockingMessageListenerContainer.this.quarantineByQueue.get(logicalQueueName);
+			this.backOff = new PollerBackOff(getBackOffTime(), NonBlockingMessageListenerContainer.this.maxBackOffTime,
+					NonBlockingMessageListenerContainer.this.idleReceivesBeforeParking, NonBlockingMessageListenerContainer.this.maxParkTime);
+			if (FifoGroupDispatcher.isFifoQueue(queueAttributes.getReceiveMessageRequest().getQueueUrl())) {
+				this.fifoGroupDispatcher = new FifoGroupDispatcher(getTaskExecutor(),
+						NonBlockingMessageListenerContainer.this.maxGroupsInFlight, this::processInOrder,
+						this::releaseSkippedMessages, getLogger());
+			} else {
+				this.fifoGroupDispatcher = null;
+			}
 		}
 
 		private int calculateMinimumAvailableSlotsToPollThreshold() {
@@ -252,52 +1305,384 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 			final int maximumFreeWorkerSlotWaitTime = calculateMaximumFreeWorkerSlotWaitTime();
 			final int minimumAvailableSlotsToPollThreshold = calculateMinimumAvailableSlotsToPollThreshold();
 
+			Future<ReceiveMessageResult> pendingReceive = null;
+			int pendingReservedSlots = 0;
+			ReceiveTime pendingReceiveTime = null;
+			long pendingReceiveNanos = 0;
 			while (isQueueRunning()) {
 				try {
-					// if we don't have any slots, wait for some to become available
-					if (availableSlots.get() == 0) {
-						synchronized (availableSlots) {
-							availableSlots.wait(maximumFreeWorkerSlotWaitTime);
-						}
+					if (this.prefetchBuffer != null) {
+						receiveIntoPrefetchBuffer(maximumFreeWorkerSlotWaitTime, minimumAvailableSlotsToPollThreshold);
+						parkIfIdle();
 						continue;
 					}
 
-					// receive as many messages as we have slots available
-					ReceiveMessageResult receiveMessageResult = getAmazonSqs().receiveMessage(this
-							.queueAttributes
-							.getReceiveMessageRequest()
-							.withMaxNumberOfMessages(availableSlots.get())
-					);
+					ReceiveMessageResult receiveMessageResult;
+					int reservedSlots;
+					long receiveTime;
+					if (pendingReceive != null) {
+						// the receive was issued while the previous batch was dispatched
+						Future<ReceiveMessageResult> receive = pendingReceive;
+						reservedSlots = pendingReservedSlots;
+						pendingReceive = null;
+						pendingReservedSlots = 0;
+						try {
+							receiveMessageResult = receive.get();
+						} catch (Exception e) {
+							releaseReservedSlots(reservedSlots);
+							throw e;
+						}
+						receiveTime = pendingReceiveTime.get();
+						// includes the time the receive overlapped with the previous batch
+						this.listenerMetrics.receiveCompleted(System.nanoTime() - pendingReceiveNanos,
+								receiveMessageResult.getMessages().size());
+						this.backOff.receiveCompleted(receiveMessageResult.getMessages().size());
+					} else {
+						// if we don't have any slots, wait for some to become available
+						reservedSlots = reserveSlots(maximumFreeWorkerSlotWaitTime);
+						if (reservedSlots == 0) {
+							continue;
+						}
+
+						// receive as many messages as we have reserved slots
+						long receiveNanos = System.nanoTime();
+						try {
+							receiveMessageResult = getAmazonSqs().receiveMessage(createReceiveMessageRequest(reservedSlots));
+						} catch (RuntimeException e) {
+							releaseReservedSlots(reservedSlots);
+							throw e;
+						}
+						// the visibility timeout starts when the long poll returns, not when it was sent
+						receiveTime = System.currentTimeMillis();
+						this.listenerMetrics.receiveCompleted(System.nanoTime() - receiveNanos, receiveMessageResult.getMessages().size());
+						this.backOff.receiveCompleted(receiveMessageResult.getMessages().size());
+					}
+
+					List<Message> messages = filterReceivedMessages(receiveMessageResult.getMessages());
+					releaseReservedSlots(reservedSlots - messages.size());
+
+					// overlap the next receive with the dispatching and processing of this batch
+					if (NonBlockingMessageListenerContainer.this.receivePipelining && !messages.isEmpty() && isQueueRunning()) {
+						int nextReservedSlots = tryReserveSlots(false);
+						if (nextReservedSlots > 0) {
+							try {
+								pendingReceiveTime = new ReceiveTime();
+								pendingReceiveNanos = System.nanoTime();
+								pendingReceive = getAmazonSqs().receiveMessageAsync(createReceiveMessageRequest(nextReservedSlots), pendingReceiveTime);
+								pendingReservedSlots = nextReservedSlots;
+							} catch (RuntimeException e) {
+								releaseReservedSlots(nextReservedSlots);
+								throw e;
+							}
+						}
+					}
 
-					for (Message message : receiveMessageResult.getMessages()) {
-						availableSlots.decrementAndGet();
+					if (this.batchListener) {
+						if (isQueueRunning()) {
+							dispatchBatch(messages, receiveTime, minimumAvailableSlotsToPollThreshold);
+						} else {
+							returnToQueue(messages);
+						}
+					} else if (this.fifoGroupDispatcher != null) {
 						if (isQueueRunning()) {
-							MessageExecutor messageExecutor = new MessageExecutor(
-									this.logicalQueueName,
-									message,
-									this.queueAttributes
-							);
-							getTaskExecutor().execute(new SignalExecutingRunnable(
-									messageExecutor,
-									availableSlots,
-									minimumAvailableSlotsToPollThreshold
-							));
+							this.inFlightMessages.started(messages.size());
+							this.fifoGroupDispatcher.dispatch(messages, receiveTime);
 						} else {
-							availableSlots.incrementAndGet();
+							returnToQueue(messages);
+						}
+					} else {
+						for (int i = 0; i < messages.size(); i++) {
+							if (!isQueueRunning()) {
+								returnToQueue(messages.subList(i, messages.size()));
+								break;
+							}
+							dispatch(messages.get(i), receiveTime, minimumAvailableSlotsToPollThreshold);
 						}
 					}
 
+					parkIfIdle();
 				} catch (Exception e) {
+					long backOffTime = this.backOff.nextErrorBackOff();
 					getLogger().warn("An Exception occurred while polling queue '{}'. The failing operation will be " +
-							"retried in {} milliseconds", this.logicalQueueName, getBackOffTime(), e);
+							"retried in {} milliseconds", this.logicalQueueName, backOffTime, e);
 					try {
-						//noinspection BusyWait
-						Thread.sleep(getBackOffTime());
+						this.queueParking.backOff(backOffTime);
 					} catch (InterruptedException ie) {
 						Thread.currentThread().interrupt();
 					}
 				}
 			}
+
+			if (pendingReceive != null) {
+				// messages of a cancelled receive become visible again after the visibility timeout
+				pendingReceive.cancel(true);
+				releaseReservedSlots(pendingReservedSlots);
+			}
+		}
+
+		/**
+		 * Skips the duplicates among the received messages and moves the poison messages to the quarantine queue.
+		 *
+		 * @return the messages to process
+		 */
+		private List<Message> filterReceivedMessages(List<Message> messages) {
+			if (this.deduplicator != null) {
+				messages = this.deduplicator.skipDuplicates(messages);
+			}
+			if (this.quarantine != null) {
+				messages = this.quarantine.quarantinePoisonMessages(messages);
+			}
+			return messages;
+		}
+
+		/**
+		 * Parks the poller while the queue is idle. A wake up resets the idle state, so the poller long-polls again
+		 * until the queue turns out to be idle once more.
+		 */
+		private void parkIfIdle() throws InterruptedException {
+			long parkTime = this.backOff.nextParkTime();
+			if (parkTime > 0 && isQueueRunning()) {
+				getLogger().debug("Parking idle queue '{}' for {} milliseconds", this.logicalQueueName, parkTime);
+				if (this.queueParking.park(parkTime)) {
+					this.backOff.wokenUp();
+				}
+			}
+		}
+
+		/**
+		 * Hands buffered messages to free slots and tops the buffer up. The receive does not need free slots, so
+		 * the workers keep taking buffered messages while it is in progress.
+		 */
+		private void receiveIntoPrefetchBuffer(int maximumFreeWorkerSlotWaitTime, int minimumAvailableSlotsToPollThreshold) throws InterruptedException {
+			dispatchBufferedMessages(minimumAvailableSlotsToPollThreshold);
+
+			int remainingCapacity = this.prefetchBuffer.remainingCapacity();
+			if (remainingCapacity <= 0) {
+				// the buffer is full, wait for workers to drain it
+				this.availableSlots.awaitRelease(maximumFreeWorkerSlotWaitTime);
+				return;
+			}
+
+			long receiveNanos = System.nanoTime();
+			ReceiveMessageResult receiveMessageResult = getAmazonSqs().receiveMessage(
+					createReceiveMessageRequest(Math.min(remainingCapacity, MAX_MESSAGES_PER_RECEIVE)));
+			// the visibility timeout starts when the long poll returns, not when it was sent
+			long receiveTime = System.currentTimeMillis();
+			this.listenerMetrics.receiveCompleted(System.nanoTime() - receiveNanos, receiveMessageResult.getMessages().size());
+			this.backOff.receiveCompleted(receiveMessageResult.getMessages().size());
+			this.prefetchBuffer.addAll(filterReceivedMessages(receiveMessageResult.getMessages()), receiveTime);
+
+			dispatchBufferedMessages(minimumAvailableSlotsToPollThreshold);
+		}
+
+		private void dispatchBufferedMessages(int minimumAvailableSlotsToPollThreshold) throws InterruptedException {
+			while (!this.prefetchBuffer.isEmpty() && isQueueRunning()) {
+				int reservedSlots = tryReserveSlots(true);
+				if (reservedSlots == 0) {
+					return;
+				}
+
+				int dispatchedMessages = 0;
+				PrefetchBuffer.BufferedMessage bufferedMessage;
+				while (dispatchedMessages < reservedSlots && (bufferedMessage = this.prefetchBuffer.poll()) != null) {
+					dispatch(bufferedMessage.getMessage(), bufferedMessage.getReceiveTime(), minimumAvailableSlotsToPollThreshold);
+					dispatchedMessages++;
+				}
+				releaseReservedSlots(reservedSlots - dispatchedMessages);
+			}
+		}
+
+		/**
+		 * Executes the message on a reserved slot. When the message completed, the worker continues with the next
+		 * buffered message, if prefetching is enabled, before it gives the slot back.
+		 */
+		private void dispatch(Message message, long receiveTime, int minimumAvailableSlotsToPollThreshold) {
+			getTaskExecutor().execute(new SignalExecutingRunnable(
+					createMessageExecutor(message, receiveTime),
+					1,
+					this.availableSlots,
+					minimumAvailableSlotsToPollThreshold,
+					this::releaseInFlightPermits,
+					this.prefetchBuffer != null ? this::takeBufferedMessage : null
+			));
+		}
+
+		/**
+		 * Executes all messages of a receive with one handler invocation, holding one reserved slot per message.
+		 */
+		private void dispatchBatch(List<Message> messages, long receiveTime, int minimumAvailableSlotsToPollThreshold) {
+			if (messages.isEmpty()) {
+				return;
+			}
+			if (this.visibilityTimeoutExtender != null) {
+				for (Message message : messages) {
+					this.visibilityTimeoutExtender.track(message.getReceiptHandle(), receiveTime);
+				}
+			}
+			getTaskExecutor().execute(new SignalExecutingRunnable(
+					new BatchMessageExecutor(this.logicalQueueName, messages, this.queueAttributes),
+					messages.size(),
+					this.availableSlots,
+					minimumAvailableSlotsToPollThreshold,
+					this::releaseInFlightPermits,
+					null
+			));
+		}
+
+		/**
+		 * Processes a message of a FIFO queue on the worker of its group lane, which holds the slot reserved for it.
+		 */
+		private boolean processInOrder(Message message, long receiveTime) {
+			MessageExecutor messageExecutor = createMessageExecutor(message, receiveTime);
+			// the executor counts the message from here on
+			this.inFlightMessages.completed(1);
+			new SignalExecutingRunnable(
+					messageExecutor,
+					1,
+					this.availableSlots,
+					calculateMinimumAvailableSlotsToPollThreshold(),
+					this::releaseInFlightPermits,
+					null
+			).run();
+			return !messageExecutor.isFailed();
+		}
+
+		/**
+		 * Makes the messages of a group that follow a failed message visible again, so they are received again in
+		 * order once the failed message was processed.
+		 */
+		private void releaseSkippedMessages(List<Message> messages) {
+			returnToQueue(messages);
+			this.inFlightMessages.completed(messages.size());
+		}
+
+		/**
+		 * Makes received messages that are not processed visible again and gives their slots back.
+		 */
+		private void returnToQueue(List<Message> messages) {
+			List<String> receiptHandles = new ArrayList<>(messages.size());
+			for (Message message : messages) {
+				receiptHandles.add(message.getReceiptHandle());
+			}
+			MessageVisibility.changeVisibility(getAmazonSqs(), this.queueAttributes.getReceiveMessageRequest().getQueueUrl(),
+					receiptHandles, 0, getLogger());
+			releaseReservedSlots(messages.size());
+			this.inFlightMessages.returned(messages.size());
+		}
+
+		private Runnable takeBufferedMessage() {
+			if (!isQueueRunning()) {
+				return null;
+			}
+			if (!this.rateLimiter.tryAcquire()) {
+				// the poller dispatches the message once the rate allows it
+				return null;
+			}
+			PrefetchBuffer.BufferedMessage bufferedMessage = this.prefetchBuffer.poll();
+			if (bufferedMessage == null) {
+				this.rateLimiter.release(1);
+				return null;
+			}
+			// there is room in the buffer again, wake up a poller waiting for it
+			this.availableSlots.signalRelease();
+			return createMessageExecutor(bufferedMessage.getMessage(), bufferedMessage.getReceiveTime());
+		}
+
+		private MessageExecutor createMessageExecutor(Message message, long receiveTime) {
+			if (this.visibilityTimeoutExtender != null) {
+				this.visibilityTimeoutExtender.track(message.getReceiptHandle(), receiveTime);
+			}
+			return new MessageExecutor(this.logicalQueueName, message, this.queueAttributes);
+		}
+
+		/**
+		 * The pollers of a queue share its receive request, so every receive sends a copy of its own.
+		 */
+		private ReceiveMessageRequest createReceiveMessageRequest(int maxNumberOfMessages) {
+			return this.queueAttributes.getReceiveMessageRequest().clone().withMaxNumberOfMessages(maxNumberOfMessages);
+		}
+
+		/**
+		 * Reserves up to one receive batch of slots and in-flight permits, waiting at most
+		 * {@code maximumFreeWorkerSlotWaitTime} for slots to become available. Slots are shared by all pollers of
+		 * the queue, so they are taken before receiving instead of being counted down per received message.
+		 *
+		 * @return the number of reserved slots, {@code 0} if none became available in time
+		 */
+		private int reserveSlots(int maximumFreeWorkerSlotWaitTime) throws InterruptedException {
+			int slots = takeFreeSlots();
+			if (slots == 0) {
+				long waitNanos = System.nanoTime();
+				this.availableSlots.awaitRelease(maximumFreeWorkerSlotWaitTime);
+				this.listenerMetrics.slotWaitCompleted(System.nanoTime() - waitNanos);
+				return 0;
+			}
+			int permits = acquireInFlightPermits(this.logicalQueueName, slots, maximumFreeWorkerSlotWaitTime);
+			releaseSlots(slots - permits);
+			return limitRate(permits, maximumFreeWorkerSlotWaitTime);
+		}
+
+		/**
+		 * Reserves up to one receive batch of slots and in-flight permits without waiting.
+		 *
+		 * @param waitForRate
+		 * 		whether to wait for the rate limit of the queue, up to the free worker slot wait time
+		 */
+		private int tryReserveSlots(boolean waitForRate) throws InterruptedException {
+			int slots = takeFreeSlots();
+			if (slots == 0) {
+				return 0;
+			}
+			int permits = acquireInFlightPermits(this.logicalQueueName, slots, 0);
+			releaseSlots(slots - permits);
+			return limitRate(permits, waitForRate ? calculateMaximumFreeWorkerSlotWaitTime() : 0);
+		}
+
+		/**
+		 * Reduces the reserved slots to the number of messages the rate limit of the queue grants.
+		 */
+		private int limitRate(int reservedSlots, int maximumWaitTime) throws InterruptedException {
+			if (reservedSlots == 0 || !this.rateLimiter.isLimited()) {
+				return reservedSlots;
+			}
+			int grantedSlots = 0;
+			try {
+				grantedSlots = this.rateLimiter.acquireUpTo(reservedSlots, maximumWaitTime, TimeUnit.MILLISECONDS);
+			} finally {
+				releaseSlots(reservedSlots - grantedSlots);
+				releaseInFlightPermits(reservedSlots - grantedSlots);
+			}
+			return grantedSlots;
+		}
+
+		private int takeFreeSlots() {
+			while (true) {
+				int freeSlots = this.availableSlots.get();
+				if (freeSlots <= 0) {
+					return 0;
+				}
+				int slots = Math.min(freeSlots, MAX_MESSAGES_PER_RECEIVE);
+				if (this.availableSlots.compareAndSet(freeSlots, freeSlots - slots)) {
+					return slots;
+				}
+			}
+		}
+
+		private void releaseSlots(int slots) {
+			if (slots > 0) {
+				adjustAvailableSlots(this.availableSlots, slots);
+			}
+		}
+
+		private void releaseInFlightPermits(int permits) {
+			NonBlockingMessageListenerContainer.this.releaseInFlightPermits(this.logicalQueueName, permits);
+		}
+
+		private void releaseReservedSlots(int slots) {
+			releaseSlots(slots);
+			releaseInFlightPermits(slots);
+			// the messages were not received or not processed, so they do not count against the rate limit
+			this.rateLimiter.release(slots);
 		}
 
 		private boolean isQueueRunning() {
@@ -310,35 +1695,53 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 		}
 	}
 
-	private class MessageExecutor implements Runnable {
+	private abstract class AbstractMessageExecutor implements Runnable {
 
-		private final Message message;
-		private final String logicalQueueName;
-		private final String queueUrl;
+		protected final String logicalQueueName;
+		protected final String queueUrl;
+		protected final SqsMessageDeletionPolicy deletionPolicy;
+		protected final ListenerMetrics listenerMetrics;
 		private final boolean hasRedrivePolicy;
-		private final SqsMessageDeletionPolicy deletionPolicy;
-
-		private MessageExecutor(String logicalQueueName, Message message, QueueAttributes queueAttributes) {
+		private final DeleteMessageBatcher deleteMessageBatcher;
+		private final VisibilityTimeoutExtender visibilityTimeoutExtender;
+		private final MessageDeduplicator deduplicator;
+		private final InFlightMessages inFlightMessages;
+		private Map<String, S3PayloadPointer> payloadPointers;
+
+		/**
+		 * @param messages
+		 * 		the number of messages the executor processes, they count as in flight until they are completed
+		 */
+		private AbstractMessageExecutor(String logicalQueueName, QueueAttributes queueAttributes, int messages) {
 			this.logicalQueueName = logicalQueueName;
-			this.message = message;
 			this.queueUrl = queueAttributes.getReceiveMessageRequest().getQueueUrl();
 			this.hasRedrivePolicy = queueAttributes.hasRedrivePolicy();
 			this.deletionPolicy = queueAttributes.getDeletionPolicy();
+			this.listenerMetrics = NonBlockingMessageListenerContainer.this.listenerMetricsByQueue.get(logicalQueueName);
+			this.deleteMessageBatcher = NonBlockingMessageListenerContainer.this.deleteMessageBatcherByQueue.get(logicalQueueName);
+			this.visibilityTimeoutExtender = NonBlockingMessageListenerContainer.this.visibilityTimeoutExtenderByQueue.get(logicalQueueName);
+			this.deduplicator = NonBlockingMessageListenerContainer.this.deduplicatorByQueue.get(logicalQueueName);
+			this.inFlightMessages = NonBlockingMessageListenerContainer.this.inFlightMessagesByQueue.get(logicalQueueName);
+			this.inFlightMessages.started(messages);
 		}
 
-		@Override
-		public void run() {
-			String receiptHandle = this.message.getReceiptHandle();
-			org.springframework.messaging.Message<String> queueMessage = getMessageForExecution();
-			try {
-				executeMessage(queueMessage);
-				applyDeletionPolicyOnSuccess(receiptHandle);
-			} catch (MessagingException messagingException) {
-				applyDeletionPolicyOnError(receiptHandle, messagingException);
+		/**
+		 * Feeds the outcome of a handler invocation to the circuit breaker of the queue.
+		 */
+		protected void recordOutcome(final boolean failed) {
+			NonBlockingMessageListenerContainer.this.circuitBreakers.record(this.logicalQueueName, failed);
+		}
+
+		/**
+		 * Remembers a successfully processed message, so that redeliveries of it are skipped.
+		 */
+		protected void recordProcessed(final Message message) {
+			if (this.deduplicator != null) {
+				this.deduplicator.processed(message);
 			}
 		}
 
-		private void applyDeletionPolicyOnSuccess(final String receiptHandle) {
+		protected void applyDeletionPolicyOnSuccess(final String receiptHandle) {
 			if (this.deletionPolicy == SqsMessageDeletionPolicy.ON_SUCCESS ||
 					this.deletionPolicy == SqsMessageDeletionPolicy.ALWAYS ||
 					this.deletionPolicy == SqsMessageDeletionPolicy.NO_REDRIVE) {
@@ -346,58 +1749,259 @@ import static org.springframework.cloud.aws.messaging.core.QueueMessageUtils.cre
 			}
 		}
 
-		private void applyDeletionPolicyOnError(final String receiptHandle, final MessagingException messagingException) {
+		/**
+		 * @return {@code true} if the failed message was deleted
+		 */
+		protected boolean applyDeletionPolicyOnError(final String receiptHandle) {
 			if (this.deletionPolicy == SqsMessageDeletionPolicy.ALWAYS ||
 					(this.deletionPolicy == SqsMessageDeletionPolicy.NO_REDRIVE && !this.hasRedrivePolicy)) {
 				deleteMessage(receiptHandle);
-			} else if (this.deletionPolicy == SqsMessageDeletionPolicy.ON_SUCCESS) {
-				getLogger().error("Exception encountered while processing message.", messagingException);
+				return true;
 			}
+			return false;
+		}
+
+		protected void completeMessage(final String receiptHandle) {
+			if (this.visibilityTimeoutExtender != null) {
+				this.visibilityTimeoutExtender.complete(receiptHandle);
+			}
+			this.inFlightMessages.completed(1);
 		}
 
 		private void deleteMessage(final String receiptHandle) {
-			getAmazonSqs().deleteMessageAsync(new DeleteMessageRequest(this.queueUrl, receiptHandle));
+			S3PayloadPointer payloadPointer = this.payloadPointers != null ? this.payloadPointers.get(receiptHandle) : null;
+			if (payloadPointer != null) {
+				this.deleteMessageBatcher.acknowledge(receiptHandle, () -> deletePayload(payloadPointer));
+			} else {
+				this.deleteMessageBatcher.acknowledge(receiptHandle);
+			}
+		}
+
+		/**
+		 * Restores the original body of a message, fetching it from S3 and decompressing it as needed.
+		 */
+		protected void restorePayload(final Message message) {
+			fetchPayload(message);
+			try {
+				String body = message.getBody();
+				byte[] data = NonBlockingMessageListenerContainer.this.messageCompressor.decompressToBytes(body, message.getMessageAttributes());
+				if (data != null) {
+					message.setBody(new String(data, StandardCharsets.UTF_8));
+					this.listenerMetrics.messageDecompressed(body.length(), data.length);
+				}
+			} catch (IOException | IllegalArgumentException e) {
+				throw new MessagingException("Could not decompress the body of message '" + message.getMessageId() + "'", e);
+			}
+		}
+
+		/**
+		 * Replaces the body of a claim-check message with the payload it points to.
+		 */
+		private void fetchPayload(final Message message) {
+			S3PayloadPointer payloadPointer;
+			try {
+				payloadPointer = S3PayloadPointer.fromMessage(message.getBody(), message.getMessageAttributes());
+			} catch (IllegalArgumentException e) {
+				throw new MessagingException("Message '" + message.getMessageId() + "' has an invalid S3 payload pointer", e);
+			}
+			if (payloadPointer == null) {
+				return;
+			}
+			if (NonBlockingMessageListenerContainer.this.claimCheckStore == null) {
+				throw new MessagingException("Message '" + message.getMessageId() + "' of queue '" + this.logicalQueueName +
+						"' points to an S3 payload but no claim-check store is configured");
+			}
+			try {
+				byte[] payload = NonBlockingMessageListenerContainer.this.claimCheckStore.download(
+						payloadPointer.getS3BucketName(), payloadPointer.getS3Key());
+				message.setBody(new String(payload, StandardCharsets.UTF_8));
+			} catch (Exception e) {
+				throw new MessagingException("Could not fetch the payload of message '" + message.getMessageId() +
+						"' from '" + payloadPointer.getS3BucketName() + "/" + payloadPointer.getS3Key() + "'", e);
+			}
+			if (this.payloadPointers == null) {
+				this.payloadPointers = new HashMap<>();
+			}
+			this.payloadPointers.put(message.getReceiptHandle(), payloadPointer);
+		}
+
+		private void deletePayload(final S3PayloadPointer payloadPointer) {
+			try {
+				NonBlockingMessageListenerContainer.this.claimCheckStore.delete(payloadPointer.getS3BucketName(), payloadPointer.getS3Key());
+			} catch (Exception e) {
+				getLogger().warn("Could not delete the payload '{}/{}' of a deleted message", payloadPointer.getS3BucketName(),
+						payloadPointer.getS3Key(), e);
+			}
+		}
+	}
+
+	private class MessageExecutor extends AbstractMessageExecutor {
+
+		private final Message message;
+		private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+		private volatile boolean failed;
+
+		private MessageExecutor(String logicalQueueName, Message message, QueueAttributes queueAttributes) {
+			super(logicalQueueName, queueAttributes, 1);
+			this.message = message;
+			this.concurrencyLimiter = NonBlockingMessageListenerContainer.this.concurrencyLimiterByQueue.get(logicalQueueName);
+		}
+
+		@Override
+		public void run() {
+			String receiptHandle = this.message.getReceiptHandle();
+			if (this.concurrencyLimiter != null) {
+				this.concurrencyLimiter.onStart();
+			}
+			long startNanos = System.nanoTime();
+			try {
+				restorePayload(this.message);
+				executeMessage(getMessageForExecution());
+				recordProcessed(this.message);
+				applyDeletionPolicyOnSuccess(receiptHandle);
+			} catch (MessagingException messagingException) {
+				this.failed = true;
+				applyDeletionPolicyOnError(receiptHandle, messagingException);
+			} finally {
+				completeMessage(receiptHandle);
+				long durationNanos = System.nanoTime() - startNanos;
+				this.listenerMetrics.executionCompleted(durationNanos, this.failed);
+				recordOutcome(this.failed);
+				if (this.concurrencyLimiter != null) {
+					this.concurrencyLimiter.onComplete(durationNanos, this.failed);
+				}
+			}
+		}
+
+		private boolean isFailed() {
+			return this.failed;
+		}
+
+		private void applyDeletionPolicyOnError(final String receiptHandle, final MessagingException messagingException) {
+			if (!applyDeletionPolicyOnError(receiptHandle) && this.deletionPolicy == SqsMessageDeletionPolicy.ON_SUCCESS) {
+				getLogger().error("Exception encountered while processing message.", messagingException);
+			}
 		}
 
 		private org.springframework.messaging.Message<String> getMessageForExecution() {
-			HashMap<String, Object> additionalHeaders = new HashMap<>();
-			additionalHeaders.put(LOGICAL_RESOURCE_ID, this.logicalQueueName);
-			if (this.deletionPolicy == SqsMessageDeletionPolicy.NEVER) {
-				String receiptHandle = this.message.getReceiptHandle();
-				QueueMessageAcknowledgment acknowledgment = new QueueMessageAcknowledgment(NonBlockingMessageListenerContainer.this.getAmazonSqs(), this.queueUrl, receiptHandle);
-				additionalHeaders.put(ACKNOWLEDGMENT, acknowledgment);
+			if (this.deletionPolicy != SqsMessageDeletionPolicy.NEVER) {
+				return createMessage(this.message, Collections.singletonMap(LOGICAL_RESOURCE_ID, this.logicalQueueName));
 			}
 
+			HashMap<String, Object> additionalHeaders = new HashMap<>(4);
+			additionalHeaders.put(LOGICAL_RESOURCE_ID, this.logicalQueueName);
+			String receiptHandle = this.message.getReceiptHandle();
+			QueueMessageAcknowledgment acknowledgment = new QueueMessageAcknowledgment(NonBlockingMessageListenerContainer.this.getAmazonSqs(), this.queueUrl, receiptHandle);
+			additionalHeaders.put(ACKNOWLEDGMENT, acknowledgment);
 			return createMessage(this.message, additionalHeaders);
 		}
 	}
 
+	/**
+	 * Invokes the handler of a batch listener queue once for all messages of a receive. The bodies are passed as
+	 * one {@link BatchPayload JSON array}, which the payload converter of the handler turns into the {@code List}
+	 * parameter.
+	 */
+	private class BatchMessageExecutor extends AbstractMessageExecutor {
+
+		private final List<Message> messages;
+
+		private BatchMessageExecutor(String logicalQueueName, List<Message> messages, QueueAttributes queueAttributes) {
+			super(logicalQueueName, queueAttributes, messages.size());
+			this.messages = messages;
+		}
+
+		@Override
+		public void run() {
+			BatchAcknowledgment acknowledgment = new BatchAcknowledgment(this.messages);
+			long startNanos = System.nanoTime();
+			boolean failed = false;
+			int failedMessages = 0;
+			try {
+				for (Message message : this.messages) {
+					restorePayload(message);
+				}
+				executeMessage(getMessageForExecution(acknowledgment));
+				for (int i = 0; i < this.messages.size(); i++) {
+					String receiptHandle = this.messages.get(i).getReceiptHandle();
+					if (acknowledgment.isFailed(i)) {
+						failedMessages++;
+						applyDeletionPolicyOnError(receiptHandle);
+					} else {
+						recordProcessed(this.messages.get(i));
+						applyDeletionPolicyOnSuccess(receiptHandle);
+					}
+				}
+				if (failedMessages > 0) {
+					getLogger().warn("{} of {} messages of queue '{}' were reported as failed by the batch listener.",
+							failedMessages, this.messages.size(), this.logicalQueueName);
+				}
+			} catch (MessagingException messagingException) {
+				failed = true;
+				boolean deleted = false;
+				for (Message message : this.messages) {
+					deleted = applyDeletionPolicyOnError(message.getReceiptHandle());
+				}
+				if (!deleted && this.deletionPolicy == SqsMessageDeletionPolicy.ON_SUCCESS) {
+					getLogger().error("Exception encountered while processing a batch of {} messages.", this.messages.size(), messagingException);
+				}
+			} finally {
+				for (Message message : this.messages) {
+					completeMessage(message.getReceiptHandle());
+				}
+				this.listenerMetrics.executionCompleted(System.nanoTime() - startNanos, failed);
+				// a batch that reports every message as failed counts as a failed invocation
+				recordOutcome(failed || failedMessages == this.messages.size());
+			}
+		}
+
+		private org.springframework.messaging.Message<String> getMessageForExecution(BatchAcknowledgment acknowledgment) {
+			HashMap<String, Object> headers = new HashMap<>(4);
+			headers.put(LOGICAL_RESOURCE_ID, this.logicalQueueName);
+			headers.put(BatchAcknowledgment.HEADER, acknowledgment);
+			return new GenericMessage<>(BatchPayload.toJsonArray(this.messages), headers);
+		}
+	}
+
 	private static class SignalExecutingRunnable implements Runnable {
 		private final Runnable runnable;
-		private final AtomicInteger availableSlots;
+		private final int slots;
+		private final AvailableSlots availableSlots;
 		private final int minimumAvailableSlotsToPollThreshold;
+		private final IntConsumer inFlightPermitsReleaser;
+		private final Supplier<Runnable> followUpRunnables;
 
 		private SignalExecutingRunnable(
 				final Runnable runnable,
-				final AtomicInteger availableSlots,
-				final int minimumAvailableSlotsToPollThreshold
+				final int slots,
+				final AvailableSlots availableSlots,
+				final int minimumAvailableSlotsToPollThreshold,
+				final IntConsumer inFlightPermitsReleaser,
+				final Supplier<Runnable> followUpRunnables
 		) {
 			this.minimumAvailableSlotsToPollThreshold = minimumAvailableSlotsToPollThreshold;
 			this.availableSlots = availableSlots;
 			this.runnable = runnable;
+			this.slots = slots;
+			this.inFlightPermitsReleaser = inFlightPermitsReleaser;
+			this.followUpRunnables = followUpRunnables;
 		}
 
 		@Override
 		public void run() {
 			try {
-				this.runnable.run();
+				Runnable current = this.runnable;
+				while (current != null) {
+					current.run();
+					// keep the slot while there is more work waiting for it
+					current = this.followUpRunnables != null ? this.followUpRunnables.get() : null;
+				}
 			} finally {
+				this.inFlightPermitsReleaser.accept(this.slots);
 				// after finishing this work, are we ready to fetch more messages off the queue?
-				if (this.availableSlots.incrementAndGet() >= this.minimumAvailableSlotsToPollThreshold) {
+				if (this.availableSlots.addAndGet(this.slots) >= this.minimumAvailableSlotsToPollThreshold) {
 					// if so, wake up the message receiving worker
-					synchronized (this.availableSlots) {
-						this.availableSlots.notify();
-					}
+					this.availableSlots.signalRelease();
 				}
 			}
 		}
@@ -0,0 +1,86 @@
+package com.example.consumer.nonblocking;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how long a poller pauses between receives. Consecutive errors back off exponentially from the initial
+ * back off time up to the maximum back off time, so transient throttling is retried quickly while a deleted queue
+ * is hardly polled at all. A queue that keeps returning empty receives is parked for progressively longer
+ * intervals, up to the maximum park time. A receive that returns messages resets both. All pauses are jittered
+ * between half and the full interval, so pollers of many queues do not fall into lockstep.
+ * <p>
+ * An instance belongs to a single poller thread and is not thread-safe.
+ */
+class PollerBackOff {
+
+	static final long INITIAL_PARK_TIME_MS = 1000;
+
+	private final long initialBackOffTime;
+	private final long maxBackOffTime;
+	private final int idleReceivesBeforeParking;
+	private final long maxParkTime;
+
+	private int consecutiveErrors;
+	private int consecutiveEmptyReceives;
+
+	/**
+	 * @param maxParkTime
+	 * 		the maximum number of milliseconds an idle queue is parked, {@code 0} or less disables parking
+	 */
+	PollerBackOff(long initialBackOffTime, long maxBackOffTime, int idleReceivesBeforeParking, long maxParkTime) {
+		this.initialBackOffTime = initialBackOffTime;
+		this.maxBackOffTime = Math.max(initialBackOffTime, maxBackOffTime);
+		this.idleReceivesBeforeParking = idleReceivesBeforeParking;
+		this.maxParkTime = maxParkTime;
+	}
+
+	void receiveCompleted(int messages) {
+		this.consecutiveErrors = 0;
+		if (messages > 0) {
+			this.consecutiveEmptyReceives = 0;
+		} else if (this.consecutiveEmptyReceives < Integer.MAX_VALUE) {
+			this.consecutiveEmptyReceives++;
+		}
+	}
+
+	/**
+	 * Resets the idle state, e.g. because a message was published to the queue.
+	 */
+	void wokenUp() {
+		this.consecutiveEmptyReceives = 0;
+	}
+
+	/**
+	 * @return the number of milliseconds to wait before the failed operation is retried
+	 */
+	long nextErrorBackOff() {
+		if (this.consecutiveErrors < Integer.MAX_VALUE) {
+			this.consecutiveErrors++;
+		}
+		return jitter(grow(this.initialBackOffTime, this.consecutiveErrors - 1, this.maxBackOffTime));
+	}
+
+	/**
+	 * @return the number of milliseconds to park the poller before its next receive, {@code 0} to receive right away
+	 */
+	long nextParkTime() {
+		if (this.maxParkTime <= 0 || this.consecutiveEmptyReceives < this.idleReceivesBeforeParking) {
+			return 0;
+		}
+		return jitter(grow(Math.min(INITIAL_PARK_TIME_MS, this.maxParkTime),
+				this.consecutiveEmptyReceives - this.idleReceivesBeforeParking, this.maxParkTime));
+	}
+
+	private static long grow(long initial, int doublings, long max) {
+		if (initial <= 0) {
+			return 0;
+		}
+		int shift = Math.min(doublings, Long.numberOfLeadingZeros(initial) - 1);
+		return Math.min(max, initial << shift);
+	}
+
+	private static long jitter(long interval) {
+		long half = interval / 2;
+		return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+	}
+}
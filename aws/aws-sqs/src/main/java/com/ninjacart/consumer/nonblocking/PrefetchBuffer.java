@@ -0,0 +1,189 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.Message;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages a poller received ahead of free worker slots, bounded by message count and by the number of payload
+ * characters. Messages are taken in receive order. A message that has less than half of its visibility timeout left
+ * is not handed out anymore but made visible again, so that it is not processed after its lease lapsed.
+ */
+class PrefetchBuffer {
+
+	private final AmazonSQSAsync amazonSqs;
+	private final String queueUrl;
+	private final int maxMessages;
+	private final long maxPayloadSize;
+	private final long releaseThresholdMillis;
+	private final long visibilityTimeoutMillis;
+	private final Logger logger;
+
+	private final ArrayDeque<BufferedMessage> messages = new ArrayDeque<>();
+	private long payloadSize;
+	private long releasedMessages;
+
+	/**
+	 * @param visibilityTimeout
+	 * 		the visibility timeout in seconds the messages are received with
+	 */
+	PrefetchBuffer(AmazonSQSAsync amazonSqs, String queueUrl, int maxMessages, long maxPayloadSize, int visibilityTimeout, Logger logger) {
+		this.amazonSqs = amazonSqs;
+		this.queueUrl = queueUrl;
+		this.maxMessages = maxMessages;
+		this.maxPayloadSize = maxPayloadSize;
+		this.visibilityTimeoutMillis = TimeUnit.SECONDS.toMillis(visibilityTimeout);
+		this.releaseThresholdMillis = this.visibilityTimeoutMillis / 2;
+		this.logger = logger;
+	}
+
+	/**
+	 * @return the interval in milliseconds {@link #releaseExpiringMessages()} should be called with
+	 */
+	long getCheckInterval() {
+		return Math.max(500, this.visibilityTimeoutMillis / 4);
+	}
+
+	/**
+	 * @return the number of messages that can still be buffered, {@code 0} if the buffer is full by count or size
+	 */
+	synchronized int remainingCapacity() {
+		return this.payloadSize >= this.maxPayloadSize ? 0 : this.maxMessages - this.messages.size();
+	}
+
+	synchronized boolean isEmpty() {
+		return this.messages.isEmpty();
+	}
+
+	synchronized int size() {
+		return this.messages.size();
+	}
+
+	synchronized long getPayloadSize() {
+		return this.payloadSize;
+	}
+
+	synchronized long getReleasedMessages() {
+		return this.releasedMessages;
+	}
+
+	/**
+	 * Buffers the received messages. Messages that do not fit anymore are made visible again right away.
+	 */
+	void addAll(List<Message> receivedMessages, long receiveTime) {
+		List<String> overflow = new ArrayList<>();
+		synchronized (this) {
+			for (Message message : receivedMessages) {
+				int messagePayloadSize = message.getBody().length();
+				if (this.messages.size() < this.maxMessages && this.payloadSize + messagePayloadSize <= this.maxPayloadSize) {
+					this.messages.addLast(new BufferedMessage(message, receiveTime, messagePayloadSize));
+					this.payloadSize += messagePayloadSize;
+				} else {
+					overflow.add(message.getReceiptHandle());
+				}
+			}
+			this.releasedMessages += overflow.size();
+		}
+		release(overflow);
+	}
+
+	/**
+	 * @return the oldest buffered message that still has enough visibility left, or {@code null} if there is none
+	 */
+	BufferedMessage poll() {
+		List<String> expired = null;
+		BufferedMessage next;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			while ((next = this.messages.pollFirst()) != null) {
+				this.payloadSize -= next.payloadSize;
+				if (!isExpiring(next, now)) {
+					break;
+				}
+				if (expired == null) {
+					expired = new ArrayList<>();
+				}
+				expired.add(next.message.getReceiptHandle());
+			}
+			if (expired != null) {
+				this.releasedMessages += expired.size();
+			}
+		}
+		if (expired != null) {
+			release(expired);
+		}
+		return next;
+	}
+
+	void releaseExpiringMessages() {
+		List<String> expired = new ArrayList<>();
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			for (Iterator<BufferedMessage> iterator = this.messages.iterator(); iterator.hasNext(); ) {
+				BufferedMessage bufferedMessage = iterator.next();
+				if (isExpiring(bufferedMessage, now)) {
+					iterator.remove();
+					this.payloadSize -= bufferedMessage.payloadSize;
+					expired.add(bufferedMessage.message.getReceiptHandle());
+				}
+			}
+			this.releasedMessages += expired.size();
+		}
+		release(expired);
+	}
+
+	/**
+	 * Empties the buffer and makes all buffered messages visible again.
+	 *
+	 * @return the number of released messages
+	 */
+	int releaseAll() {
+		List<String> receiptHandles = new ArrayList<>();
+		synchronized (this) {
+			for (BufferedMessage bufferedMessage : this.messages) {
+				receiptHandles.add(bufferedMessage.message.getReceiptHandle());
+			}
+			this.messages.clear();
+			this.payloadSize = 0;
+			this.releasedMessages += receiptHandles.size();
+		}
+		release(receiptHandles);
+		return receiptHandles.size();
+	}
+
+	private boolean isExpiring(BufferedMessage bufferedMessage, long now) {
+		return bufferedMessage.receiveTime + this.visibilityTimeoutMillis - now < this.releaseThresholdMillis;
+	}
+
+	private void release(List<String> receiptHandles) {
+		if (!receiptHandles.isEmpty()) {
+			MessageVisibility.changeVisibility(this.amazonSqs, this.queueUrl, receiptHandles, 0, this.logger);
+		}
+	}
+
+	static class BufferedMessage {
+		private final Message message;
+		private final long receiveTime;
+		private final int payloadSize;
+
+		private BufferedMessage(Message message, long receiveTime, int payloadSize) {
+			this.message = message;
+			this.receiveTime = receiveTime;
+			this.payloadSize = payloadSize;
+		}
+
+		Message getMessage() {
+			return this.message;
+		}
+
+		long getReceiveTime() {
+			return this.receiveTime;
+		}
+	}
+}
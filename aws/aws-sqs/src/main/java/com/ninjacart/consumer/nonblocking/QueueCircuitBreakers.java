@@ -0,0 +1,151 @@
+package com.example.consumer.nonblocking;
+
+import org.slf4j.Logger;
+import org.springframework.scheduling.TaskScheduler;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * The {@link CircuitBreaker}s of the queues of a container and their half-open probes. A queue whose circuit opens
+ * is paused; after the open time the probe resumes it, unless the container stopped or the queue was started or
+ * stopped explicitly in the meantime. Without a failure rate threshold no queue has a circuit breaker.
+ */
+class QueueCircuitBreakers {
+
+	/**
+	 * The container side of the circuit breakers.
+	 */
+	interface PausableQueues {
+
+		boolean isRunning();
+
+		/**
+		 * @return {@code true} if a poller of the queue has not returned yet
+		 */
+		boolean isRunning(String logicalQueueName);
+
+		void pause(String logicalQueueName);
+
+		void resume(String logicalQueueName);
+	}
+
+	private static final int HALF_OPEN_PROBES = 5;
+
+	private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakerByQueue;
+	private final ConcurrentHashMap<String, ScheduledFuture<?>> halfOpenTaskByQueue;
+	private final long openTime;
+	private final long retryTime;
+	private final TaskScheduler taskScheduler;
+	private final Object lifecycleMonitor;
+	private final PausableQueues pausableQueues;
+	private final Logger logger;
+
+	/**
+	 * @param failureRate
+	 * 		the share of failed invocations at which a circuit opens, {@code 0} or less disables the circuit breakers
+	 * @param retryTime
+	 * 		the number of milliseconds a probe waits for the pollers of a paused queue to return
+	 * @param lifecycleMonitor
+	 * 		the monitor the container starts and stops under, the probes resume queues under it as well
+	 */
+	QueueCircuitBreakers(Collection<String> logicalQueueNames, float failureRate, int windowSize, long openTime,
+			long retryTime, TaskScheduler taskScheduler, Object lifecycleMonitor, PausableQueues pausableQueues,
+			Logger logger) {
+		this.circuitBreakerByQueue = new ConcurrentHashMap<>(logicalQueueNames.size());
+		this.halfOpenTaskByQueue = new ConcurrentHashMap<>(logicalQueueNames.size());
+		this.openTime = openTime;
+		this.retryTime = retryTime;
+		this.taskScheduler = taskScheduler;
+		this.lifecycleMonitor = lifecycleMonitor;
+		this.pausableQueues = pausableQueues;
+		this.logger = logger;
+		if (failureRate <= 0) {
+			return;
+		}
+		int halfOpenProbes = Math.min(HALF_OPEN_PROBES, windowSize);
+		for (String logicalQueueName : logicalQueueNames) {
+			this.circuitBreakerByQueue.put(logicalQueueName, new CircuitBreaker(failureRate, windowSize, halfOpenProbes));
+		}
+	}
+
+	/**
+	 * Feeds the outcome of a handler invocation to the circuit breaker of the queue, and pauses the queue if its
+	 * circuit opened.
+	 */
+	void record(final String logicalQueueName, final boolean failed) {
+		CircuitBreaker circuitBreaker = this.circuitBreakerByQueue.get(logicalQueueName);
+		if (circuitBreaker != null && circuitBreaker.record(failed)) {
+			open(logicalQueueName, circuitBreaker);
+		}
+	}
+
+	/**
+	 * @return {@code true} if the queue is paused by its circuit breaker
+	 */
+	boolean isOpen(final String logicalQueueName) {
+		CircuitBreaker circuitBreaker = this.circuitBreakerByQueue.get(logicalQueueName);
+		return circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.OPEN;
+	}
+
+	void resetAll() {
+		for (CircuitBreaker circuitBreaker : this.circuitBreakerByQueue.values()) {
+			circuitBreaker.reset();
+		}
+	}
+
+	/**
+	 * Closes the circuit breaker of a queue that is started or stopped explicitly, so it neither resumes a stopped
+	 * queue nor ignores the outcomes of a started one.
+	 */
+	void reset(final String logicalQueueName) {
+		cancelHalfOpenTask(logicalQueueName);
+		CircuitBreaker circuitBreaker = this.circuitBreakerByQueue.get(logicalQueueName);
+		if (circuitBreaker != null) {
+			circuitBreaker.reset();
+		}
+	}
+
+	void cancelHalfOpenTask(final String logicalQueueName) {
+		ScheduledFuture<?> halfOpenTask = this.halfOpenTaskByQueue.remove(logicalQueueName);
+		if (halfOpenTask != null) {
+			halfOpenTask.cancel(false);
+		}
+	}
+
+	private void scheduleHalfOpenTask(final String logicalQueueName, final CircuitBreaker circuitBreaker, final long delay) {
+		this.halfOpenTaskByQueue.put(logicalQueueName, this.taskScheduler.schedule(() -> halfOpen(logicalQueueName, circuitBreaker),
+				new Date(System.currentTimeMillis() + delay)));
+	}
+
+	private void open(final String logicalQueueName, final CircuitBreaker circuitBreaker) {
+		this.logger.warn("Circuit breaker of queue '{}' opened, polling is paused for {} milliseconds",
+				logicalQueueName, this.openTime);
+		this.pausableQueues.pause(logicalQueueName);
+		scheduleHalfOpenTask(logicalQueueName, circuitBreaker, this.openTime);
+	}
+
+	/**
+	 * Resumes polling of a paused queue. Runs under the lifecycle monitor, so it either sees the container stopping
+	 * or resumes the queue before the container collects the queues to stop.
+	 */
+	private void halfOpen(final String logicalQueueName, final CircuitBreaker circuitBreaker) {
+		synchronized (this.lifecycleMonitor) {
+			if (!this.pausableQueues.isRunning() || circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+				return;
+			}
+			if (this.pausableQueues.isRunning(logicalQueueName)) {
+				// a poller of the paused queue has not returned from its last receive yet
+				scheduleHalfOpenTask(logicalQueueName, circuitBreaker, this.retryTime);
+				return;
+			}
+			if (!circuitBreaker.halfOpen()) {
+				return;
+			}
+			this.logger.info("Circuit breaker of queue '{}' is half-open, polling resumes", logicalQueueName);
+			this.pausableQueues.resume(logicalQueueName);
+		}
+	}
+}
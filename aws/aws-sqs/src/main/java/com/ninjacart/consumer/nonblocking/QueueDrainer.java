@@ -0,0 +1,58 @@
+package com.example.consumer.nonblocking;
+
+import org.slf4j.Logger;
+
+/**
+ * Drains a single stopped queue: returns its prefetched messages, waits for its in-flight messages and flushes its
+ * deletes, all before one deadline. The outcome is logged and recorded in the {@link ListenerMetrics} of the
+ * queue.
+ */
+class QueueDrainer {
+
+	private final String logicalQueueName;
+	private final InFlightMessages inFlightMessages;
+	private final PrefetchBuffer prefetchBuffer;
+	private final DeleteMessageBatcher deleteMessageBatcher;
+	private final ListenerMetrics listenerMetrics;
+	private final Logger logger;
+
+	/**
+	 * @param prefetchBuffer
+	 * 		the prefetch buffer of the queue, {@code null} if it does not prefetch messages
+	 */
+	QueueDrainer(String logicalQueueName, InFlightMessages inFlightMessages, PrefetchBuffer prefetchBuffer,
+			DeleteMessageBatcher deleteMessageBatcher, ListenerMetrics listenerMetrics, Logger logger) {
+		this.logicalQueueName = logicalQueueName;
+		this.inFlightMessages = inFlightMessages;
+		this.prefetchBuffer = prefetchBuffer;
+		this.deleteMessageBatcher = deleteMessageBatcher;
+		this.listenerMetrics = listenerMetrics;
+		this.logger = logger;
+	}
+
+	/**
+	 * @param deadline
+	 * 		the time in milliseconds the drain gives up at, queues stopped together share it
+	 */
+	void drain(long deadline) throws InterruptedException {
+		if (this.prefetchBuffer != null) {
+			this.inFlightMessages.returned(this.prefetchBuffer.releaseAll());
+		}
+
+		int inFlightBeforeDrain = this.inFlightMessages.getInFlight();
+		int abandoned = this.inFlightMessages.awaitCompletion(Math.max(0, deadline - System.currentTimeMillis()));
+		int completed = Math.max(0, inFlightBeforeDrain - abandoned);
+		int released = this.inFlightMessages.takeReturned();
+		int pendingDeletes = this.deleteMessageBatcher.flushAndAwait(Math.max(0, deadline - System.currentTimeMillis()));
+
+		this.listenerMetrics.drainCompleted(completed, released, abandoned);
+		if (abandoned > 0 || pendingDeletes > 0) {
+			this.logger.warn("Drain of queue '{}' timed out: {} in-flight messages completed, {} released, " +
+					"{} abandoned, {} deletes unconfirmed", this.logicalQueueName, completed, released, abandoned,
+					pendingDeletes);
+		} else {
+			this.logger.info("Drained queue '{}': {} in-flight messages completed, {} released", this.logicalQueueName,
+					completed, released);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package com.example.consumer.nonblocking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The place where the pollers of a single queue wait while they back off or are parked. A {@link #wakeUp()} ends
+ * all waits of the queue that are in progress, e.g. because the queue was started or stopped. A
+ * {@link #wakeUpIdle()}, e.g. because a message was published to the queue, only ends the waits of idle pollers,
+ * so a poller backing off after errors keeps waiting out its back off.
+ * <p>
+ * The pollers wait on a {@link Condition}, not on a monitor, so a poller running on a virtual thread does not pin
+ * its carrier thread while it is parked.
+ */
+class QueueParking {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition wokenUp = this.lock.newCondition();
+	private long wakeUps;
+	private long idleWakeUps;
+
+	/**
+	 * Parks an idle poller.
+	 *
+	 * @return {@code true} if the wait was ended by {@link #wakeUp()} or {@link #wakeUpIdle()}, {@code false} if the
+	 * time elapsed
+	 */
+	boolean park(long timeMillis) throws InterruptedException {
+		return await(timeMillis, true);
+	}
+
+	/**
+	 * Backs off a poller after an error.
+	 *
+	 * @return {@code true} if the wait was ended by {@link #wakeUp()}, {@code false} if the time elapsed
+	 */
+	boolean backOff(long timeMillis) throws InterruptedException {
+		return await(timeMillis, false);
+	}
+
+	void wakeUp() {
+		this.lock.lock();
+		try {
+			this.wakeUps++;
+			this.wokenUp.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	void wakeUpIdle() {
+		this.lock.lock();
+		try {
+			this.idleWakeUps++;
+			this.wokenUp.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private boolean await(long timeMillis, boolean idle) throws InterruptedException {
+		this.lock.lock();
+		try {
+			long wakeUpsBefore = this.wakeUps;
+			long idleWakeUpsBefore = this.idleWakeUps;
+			long remaining = TimeUnit.MILLISECONDS.toNanos(timeMillis);
+			while (this.wakeUps == wakeUpsBefore && (!idle || this.idleWakeUps == idleWakeUpsBefore)) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = this.wokenUp.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+}
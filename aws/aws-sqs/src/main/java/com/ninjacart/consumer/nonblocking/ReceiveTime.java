@@ -0,0 +1,33 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+/**
+ * Records when an asynchronous receive returned. The visibility timeout of the received messages starts then, not
+ * when the receive was sent, which for a long poll can be up to 20 seconds earlier.
+ */
+class ReceiveTime implements AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> {
+
+	private volatile long receiveTime;
+
+	@Override
+	public void onError(Exception exception) {
+		this.receiveTime = System.currentTimeMillis();
+	}
+
+	@Override
+	public void onSuccess(ReceiveMessageRequest request, ReceiveMessageResult receiveMessageResult) {
+		this.receiveTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return the time in milliseconds the receive returned, or the current time if the client completed the future
+	 * of the receive before it called this handler
+	 */
+	long get() {
+		long receiveTime = this.receiveTime;
+		return receiveTime != 0 ? receiveTime : System.currentTimeMillis();
+	}
+}
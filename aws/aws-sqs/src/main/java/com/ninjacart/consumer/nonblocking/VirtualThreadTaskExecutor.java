@@ -0,0 +1,73 @@
+package com.example.consumer.nonblocking;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * {@link AsyncTaskExecutor} starting a new virtual thread for every task. The project is compiled for Java 8, so
+ * the virtual thread API is looked up reflectively, and callers check {@link #isSupported()} before creating this
+ * executor. The executor does not bound the number of tasks, callers are expected to limit the work they submit.
+ */
+class VirtualThreadTaskExecutor implements AsyncTaskExecutor, DisposableBean {
+
+	private final ExecutorService executorService;
+
+	VirtualThreadTaskExecutor(String threadNamePrefix) {
+		this.executorService = createVirtualThreadPerTaskExecutor(threadNamePrefix);
+	}
+
+	static boolean isSupported() {
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	private static ExecutorService createVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+			ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+		} catch (ClassNotFoundException | NoSuchMethodException e) {
+			throw new IllegalStateException("Virtual threads require Java 21 or later, running on " + System.getProperty("java.version"), e);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Could not create virtual thread executor", e);
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		this.executorService.execute(task);
+	}
+
+	@Override
+	public void execute(Runnable task, long startTimeout) {
+		this.executorService.execute(task);
+	}
+
+	@Override
+	public Future<?> submit(Runnable task) {
+		return this.executorService.submit(task);
+	}
+
+	@Override
+	public <T> Future<T> submit(Callable<T> task) {
+		return this.executorService.submit(task);
+	}
+
+	@Override
+	public void destroy() {
+		this.executorService.shutdownNow();
+	}
+}
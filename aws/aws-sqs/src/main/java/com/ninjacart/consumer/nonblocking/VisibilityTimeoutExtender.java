@@ -0,0 +1,90 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the messages of a single queue invisible while they are processed. Every in-flight receipt handle is
+ * tracked with the time its visibility timeout lapses. Each call to {@link #extendExpiringMessages()} extends the
+ * visibility of all messages that are closer than half a visibility timeout to that deadline, using
+ * {@code ChangeMessageVisibilityBatch} requests of up to 10 entries. The base visibility timeout of the queue can
+ * therefore stay short while slow messages are still protected.
+ */
+class VisibilityTimeoutExtender {
+
+	// SQS rejects extensions beyond 12 hours after a message was received
+	private static final long MAX_VISIBILITY_MILLIS = TimeUnit.HOURS.toMillis(12);
+
+	private final AmazonSQSAsync amazonSqs;
+	private final String queueUrl;
+	private final int visibilityTimeout;
+	private final long extensionThresholdMillis;
+	private final Logger logger;
+	private final ConcurrentHashMap<String, InFlightMessage> inFlightMessages = new ConcurrentHashMap<>();
+
+	/**
+	 * @param visibilityTimeout
+	 * 		the visibility timeout in seconds the messages are received with and extended by
+	 */
+	VisibilityTimeoutExtender(AmazonSQSAsync amazonSqs, String queueUrl, int visibilityTimeout, Logger logger) {
+		this.amazonSqs = amazonSqs;
+		this.queueUrl = queueUrl;
+		this.visibilityTimeout = visibilityTimeout;
+		this.extensionThresholdMillis = TimeUnit.SECONDS.toMillis(visibilityTimeout) / 2;
+		this.logger = logger;
+	}
+
+	/**
+	 * @return the interval in milliseconds {@link #extendExpiringMessages()} should be called with
+	 */
+	long getCheckInterval() {
+		return Math.max(500, TimeUnit.SECONDS.toMillis(this.visibilityTimeout) / 4);
+	}
+
+	void track(String receiptHandle, long receivedAtMillis) {
+		this.inFlightMessages.put(receiptHandle, new InFlightMessage(receivedAtMillis,
+				receivedAtMillis + TimeUnit.SECONDS.toMillis(this.visibilityTimeout)));
+	}
+
+	void complete(String receiptHandle) {
+		this.inFlightMessages.remove(receiptHandle);
+	}
+
+	int getInFlightMessages() {
+		return this.inFlightMessages.size();
+	}
+
+	void extendExpiringMessages() {
+		long now = System.currentTimeMillis();
+		long newDeadline = now + TimeUnit.SECONDS.toMillis(this.visibilityTimeout);
+		List<String> expiringReceiptHandles = new ArrayList<>();
+		for (Map.Entry<String, InFlightMessage> inFlightMessage : this.inFlightMessages.entrySet()) {
+			InFlightMessage message = inFlightMessage.getValue();
+			if (message.deadline <= now) {
+				// too late, the message is visible again and may already be processed by another consumer
+				this.inFlightMessages.remove(inFlightMessage.getKey(), message);
+			} else if (message.deadline - now <= this.extensionThresholdMillis && newDeadline - message.receivedAt < MAX_VISIBILITY_MILLIS) {
+				message.deadline = newDeadline;
+				expiringReceiptHandles.add(inFlightMessage.getKey());
+			}
+		}
+
+		MessageVisibility.changeVisibility(this.amazonSqs, this.queueUrl, expiringReceiptHandles, this.visibilityTimeout, this.logger);
+	}
+
+	private static class InFlightMessage {
+		private final long receivedAt;
+		private volatile long deadline;
+
+		private InFlightMessage(long receivedAt, long deadline) {
+			this.receivedAt = receivedAt;
+			this.deadline = deadline;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.consumer.nonblocking;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shares a fixed number of in-flight message permits between the queues of a container by weight. Every queue is
+ * guaranteed {@code capacity * weight / sum of weights} permits. Permits a queue does not use can be taken by busy
+ * queues, but only as long as no other queue waits for permits below its guaranteed share: while such a queue
+ * waits, released permits are held back for it. Permits are never taken away from running messages, so a queue
+ * that wakes up gets its share as the messages of the other queues complete.
+ * <p>
+ * Permits are acquired once per receive, not per message, so a lock is used instead of a lock-free scheme. It is a
+ * {@link ReentrantLock} rather than a monitor, so a poller running on a virtual thread does not pin its carrier
+ * thread while it waits for permits.
+ */
+class WeightedSlotAllocator {
+
+	private final int capacity;
+	private final Map<String, QueueShare> shares = new HashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = this.lock.newCondition();
+	private int inUse;
+
+	/**
+	 * @param weights
+	 * 		the weight of every queue, queues with a weight of {@code 0} or less are only served from idle capacity
+	 */
+	WeightedSlotAllocator(int capacity, Map<String, Integer> weights) {
+		this.capacity = capacity;
+		long totalWeight = 0;
+		for (Integer weight : weights.values()) {
+			totalWeight += Math.max(0, weight);
+		}
+		for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+			int guaranteed = totalWeight > 0 ? (int) (capacity * Math.max(0, weight.getValue()) / totalWeight) : 0;
+			// every weighted queue can make progress, even if its exact share rounds down to zero
+			this.shares.put(weight.getKey(), new QueueShare(weight.getValue() > 0 ? Math.max(1, guaranteed) : 0));
+		}
+	}
+
+	int getCapacity() {
+		return this.capacity;
+	}
+
+	int getInUse(String queue) {
+		this.lock.lock();
+		try {
+			return this.shares.get(queue).inUse;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	int getGuaranteed(String queue) {
+		this.lock.lock();
+		try {
+			return this.shares.get(queue).guaranteed;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes at least one and at most the wanted number of permits for the queue.
+	 *
+	 * @return the number of permits taken, {@code 0} if none could be taken within the wait time
+	 */
+	int acquire(String queue, int wantedPermits, long maxWaitTime) throws InterruptedException {
+		this.lock.lock();
+		try {
+			QueueShare share = this.shares.get(queue);
+			int acquired = grant(share, wantedPermits);
+			if (acquired > 0 || maxWaitTime <= 0) {
+				return acquired;
+			}
+
+			long remaining = TimeUnit.MILLISECONDS.toNanos(maxWaitTime);
+			share.waiting++;
+			try {
+				while ((acquired = grant(share, wantedPermits)) == 0 && remaining > 0) {
+					remaining = this.released.awaitNanos(remaining);
+				}
+			} finally {
+				share.waiting--;
+			}
+			return acquired;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	void release(String queue, int permits) {
+		if (permits <= 0) {
+			return;
+		}
+		this.lock.lock();
+		try {
+			this.shares.get(queue).inUse -= permits;
+			this.inUse -= permits;
+			this.released.signalAll();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private int grant(QueueShare share, int wantedPermits) {
+		int free = this.capacity - this.inUse;
+		if (free <= 0) {
+			return 0;
+		}
+		// up to its guaranteed share a queue is served from any free permit
+		int granted = Math.min(wantedPermits, Math.min(free, Math.max(0, share.guaranteed - share.inUse)));
+		// beyond that only from permits no other waiting queue is entitled to
+		int idle = free - granted - heldBack(share);
+		if (idle > 0) {
+			granted += Math.min(wantedPermits - granted, idle);
+		}
+		share.inUse += granted;
+		this.inUse += granted;
+		return granted;
+	}
+
+	private int heldBack(QueueShare requester) {
+		int heldBack = 0;
+		for (QueueShare share : this.shares.values()) {
+			if (share != requester && share.waiting > 0) {
+				heldBack += Math.max(0, share.guaranteed - share.inUse);
+			}
+		}
+		return heldBack;
+	}
+
+	private static class QueueShare {
+		private final int guaranteed;
+		private int inUse;
+		private int waiting;
+
+		private QueueShare(int guaranteed) {
+			this.guaranteed = guaranteed;
+		}
+	}
+}
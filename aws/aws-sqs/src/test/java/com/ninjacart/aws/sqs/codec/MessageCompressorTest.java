@@ -0,0 +1,107 @@
+package com.example.aws.sqs.codec;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MessageCompressorTest {
+
+	private static final int MAX_DECOMPRESSED_SIZE = 64 * 1024;
+
+	@Test
+	public void decompressesBodyWithinLimit() throws IOException {
+		MessageCompressor compressor = new MessageCompressor(MessageCompressor.defaultCodecs(), GzipMessageCodec.NAME, 0, MAX_DECOMPRESSED_SIZE);
+		String body = repeat('a', MAX_DECOMPRESSED_SIZE);
+		Map<String, MessageAttributeValue> attributes = new HashMap<>();
+
+		String compressed = compressor.compress(body, attributes);
+
+		assertEquals(body, compressor.decompress(compressed, attributes));
+		assertEquals(1, compressor.getDecompressedMessages());
+	}
+
+	@Test
+	public void rejectsGzipBodyAboveLimit() {
+		assertRejected(GzipMessageCodec.NAME);
+	}
+
+	@Test
+	public void rejectsDeflateBodyAboveLimit() {
+		assertRejected(DeflateMessageCodec.NAME);
+	}
+
+	@Test
+	public void rejectsBodyOfCodecWithoutLimitAboveLimit() throws IOException {
+		MessageCodec identity = new MessageCodec() {
+
+			@Override
+			public String getName() {
+				return "identity";
+			}
+
+			@Override
+			public byte[] encode(byte[] data) {
+				return data;
+			}
+
+			@Override
+			public byte[] decode(byte[] data) {
+				return data;
+			}
+		};
+		MessageCompressor compressor = new MessageCompressor(Collections.singletonList(identity), null, 0, 4);
+
+		try {
+			compressor.decompress("AAAAAAA=", attributes("identity"));
+			fail("a body of 5 bytes was decompressed with a limit of 4 bytes");
+		} catch(IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeds 4 bytes"));
+		}
+	}
+
+	@Test
+	public void leavesUncompressedBodyAlone() throws IOException {
+		MessageCompressor compressor = new MessageCompressor(MessageCompressor.defaultCodecs(), null, 0, MAX_DECOMPRESSED_SIZE);
+
+		assertNull(compressor.decompressToBytes("plain", new HashMap<>()));
+		assertEquals("plain", compressor.decompress("plain", null));
+	}
+
+	private static void assertRejected(String codecName) {
+		// the sender has no limit, a receiver allowing 64 KiB gets a body that inflates to 1 MiB
+		MessageCompressor sender = new MessageCompressor(MessageCompressor.defaultCodecs(), codecName, 0, Integer.MAX_VALUE);
+		MessageCompressor receiver = new MessageCompressor(MessageCompressor.defaultCodecs(), null, 0, MAX_DECOMPRESSED_SIZE);
+		Map<String, MessageAttributeValue> attributes = new HashMap<>();
+		String compressed = sender.compress(repeat('a', 1024 * 1024), attributes);
+
+		try {
+			receiver.decompress(compressed, attributes);
+			fail("a body of 1 MiB was decompressed with a limit of 64 KiB");
+		} catch(IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("exceeds " + MAX_DECOMPRESSED_SIZE + " bytes"));
+		}
+		assertEquals(0, receiver.getDecompressedMessages());
+	}
+
+	private static Map<String, MessageAttributeValue> attributes(String contentEncoding) {
+		Map<String, MessageAttributeValue> attributes = new HashMap<>();
+		attributes.put(MessageCompressor.CONTENT_ENCODING_ATTRIBUTE, new MessageAttributeValue().withDataType("String").withStringValue(contentEncoding));
+		return attributes;
+	}
+
+	private static String repeat(char c, int count) {
+		char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+}
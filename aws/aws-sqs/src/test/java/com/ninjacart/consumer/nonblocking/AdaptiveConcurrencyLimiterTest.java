@@ -0,0 +1,126 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+	private static final long HEALTHY_LATENCY = 1_000_000;
+
+	private final List<Integer> limitChanges = new ArrayList<>();
+
+	@Test
+	public void firstWindowOnlySetsBaseline() {
+		AdaptiveConcurrencyLimiter limiter = limiter(5, 1, 20);
+
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		assertEquals(5, limiter.getLimit());
+		assertEquals(0, limitChanges.size());
+	}
+
+	@Test
+	public void increasesUsedLimitAdditively() {
+		AdaptiveConcurrencyLimiter limiter = limiter(5, 1, 20);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		assertEquals(7, limiter.getLimit());
+		assertEquals(Arrays.asList(1, 1), limitChanges);
+	}
+
+	@Test
+	public void keepsUnusedLimit() {
+		AdaptiveConcurrencyLimiter limiter = limiter(5, 1, 20);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		window(limiter, 10, HEALTHY_LATENCY, 0, false);
+
+		assertEquals(5, limiter.getLimit());
+	}
+
+	@Test
+	public void decreasesLimitMultiplicativelyOnLatency() {
+		AdaptiveConcurrencyLimiter limiter = limiter(20, 1, 50);
+		window(limiter, 20, HEALTHY_LATENCY, 0, true);
+
+		window(limiter, 20, 3 * HEALTHY_LATENCY, 0, true);
+
+		assertEquals(18, limiter.getLimit());
+		assertEquals(Arrays.asList(-2), limitChanges);
+	}
+
+	@Test
+	public void decreasesSmallLimitByAtLeastOne() {
+		AdaptiveConcurrencyLimiter limiter = limiter(5, 1, 20);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		window(limiter, 10, HEALTHY_LATENCY, 2, true);
+
+		assertEquals(4, limiter.getLimit());
+	}
+
+	@Test
+	public void toleratesErrorsUpToMaxErrorRate() {
+		AdaptiveConcurrencyLimiter limiter = limiter(5, 1, 20);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+
+		window(limiter, 10, HEALTHY_LATENCY, 1, true);
+
+		assertEquals(6, limiter.getLimit());
+	}
+
+	@Test
+	public void staysWithinBounds() {
+		AdaptiveConcurrencyLimiter limiter = limiter(3, 2, 4);
+		window(limiter, 10, HEALTHY_LATENCY, 0, true);
+		for (int i = 0; i < 5; i++) {
+			window(limiter, 10, HEALTHY_LATENCY, 0, true);
+		}
+		assertEquals(4, limiter.getLimit());
+
+		for (int i = 0; i < 5; i++) {
+			window(limiter, 10, HEALTHY_LATENCY, 10, true);
+		}
+		assertEquals(2, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	public void clampsInitialLimit() {
+		assertEquals(4, limiter(10, 2, 4).getLimit());
+		assertEquals(2, limiter(0, 2, 4).getLimit());
+	}
+
+	private AdaptiveConcurrencyLimiter limiter(int initialLimit, int minLimit, int maxLimit) {
+		return new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, limitChanges::add);
+	}
+
+	/**
+	 * Completes one sampling window of executions, the first {@code failures} of them failed.
+	 *
+	 * @param concurrent
+	 * 		{@code true} to start all executions before the first completes, so the window uses the limit
+	 */
+	private static void window(AdaptiveConcurrencyLimiter limiter, int executions, long latencyNanos, int failures,
+			boolean concurrent) {
+		if (concurrent) {
+			for (int i = 0; i < executions; i++) {
+				limiter.onStart();
+			}
+		}
+		for (int i = 0; i < executions; i++) {
+			if (!concurrent) {
+				limiter.onStart();
+			}
+			limiter.onComplete(latencyNanos, i < failures);
+		}
+	}
+}
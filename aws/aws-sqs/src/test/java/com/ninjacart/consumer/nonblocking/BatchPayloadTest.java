@@ -0,0 +1,48 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchPayloadTest {
+
+	@Test
+	public void embedsJsonBodiesAsTheyAre() {
+		String payload = BatchPayload.toJsonArray(Arrays.asList(message("{\"id\":1}"), message("[1,2]"), message("42")));
+
+		assertEquals("[{\"id\":1},[1,2],42]", payload);
+	}
+
+	@Test
+	public void quotesBodiesThatAreNotJson() {
+		String payload = BatchPayload.toJsonArray(Arrays.asList(message("plain text"), message("{\"id\":1}"),
+				message("say \"hi\"\n")));
+
+		assertEquals("[\"plain text\",{\"id\":1},\"say \\\"hi\\\"\\n\"]", payload);
+	}
+
+	@Test
+	public void quotesTruncatedAndConcatenatedJson() {
+		assertFalse(BatchPayload.isJsonValue("{\"id\":1"));
+		assertFalse(BatchPayload.isJsonValue("{\"id\":1}{\"id\":2}"));
+		assertFalse(BatchPayload.isJsonValue("1 2"));
+		assertFalse(BatchPayload.isJsonValue(""));
+		assertTrue(BatchPayload.isJsonValue(" {\"id\":[1,{\"a\":null}]} "));
+		assertTrue(BatchPayload.isJsonValue("\"quoted\""));
+	}
+
+	@Test
+	public void buildsAnArrayOfOneMessage() {
+		assertEquals("[\"text\"]", BatchPayload.toJsonArray(Collections.singletonList(message("text"))));
+	}
+
+	private static Message message(String body) {
+		return new Message().withMessageId(body).withBody(body);
+	}
+}
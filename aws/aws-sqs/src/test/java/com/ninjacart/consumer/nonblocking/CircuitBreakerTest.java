@@ -0,0 +1,108 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void staysClosedUntilWindowIsFull() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(0.5f, 4, 2);
+
+		assertFalse(circuitBreaker.record(true));
+		assertFalse(circuitBreaker.record(true));
+		assertFalse(circuitBreaker.record(true));
+
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+	}
+
+	@Test
+	public void opensAtFailureRateThreshold() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(0.5f, 4, 2);
+		circuitBreaker.record(false);
+		circuitBreaker.record(true);
+		circuitBreaker.record(false);
+
+		assertTrue(circuitBreaker.record(true));
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void slidesWindowOverOldOutcomes() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(0.5f, 4, 2);
+		circuitBreaker.record(true);
+		circuitBreaker.record(false);
+		circuitBreaker.record(false);
+		circuitBreaker.record(false);
+
+		// the failure of the first call drops out of the window
+		assertFalse(circuitBreaker.record(false));
+		assertFalse(circuitBreaker.record(true));
+		assertTrue(circuitBreaker.record(true));
+	}
+
+	@Test
+	public void ignoresOutcomesWhileOpen() {
+		CircuitBreaker circuitBreaker = open(new CircuitBreaker(0.5f, 2, 2));
+
+		assertFalse(circuitBreaker.record(false));
+		assertFalse(circuitBreaker.record(true));
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void closesAfterSuccessfulProbes() {
+		CircuitBreaker circuitBreaker = open(new CircuitBreaker(0.5f, 2, 2));
+
+		assertTrue(circuitBreaker.halfOpen());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+		assertFalse(circuitBreaker.record(false));
+		assertFalse(circuitBreaker.record(false));
+
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		// the window starts over after closing
+		assertFalse(circuitBreaker.record(true));
+		assertTrue(circuitBreaker.record(true));
+	}
+
+	@Test
+	public void reopensAfterFailedProbes() {
+		CircuitBreaker circuitBreaker = open(new CircuitBreaker(0.5f, 2, 2));
+		circuitBreaker.halfOpen();
+
+		assertFalse(circuitBreaker.record(false));
+		assertTrue(circuitBreaker.record(true));
+
+		assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	public void halfOpensOnlyOpenCircuit() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker(0.5f, 2, 2);
+
+		assertFalse(circuitBreaker.halfOpen());
+		open(circuitBreaker);
+		assertTrue(circuitBreaker.halfOpen());
+		assertFalse(circuitBreaker.halfOpen());
+	}
+
+	@Test
+	public void resetClosesCircuitAndClearsWindow() {
+		CircuitBreaker circuitBreaker = open(new CircuitBreaker(0.5f, 2, 2));
+
+		circuitBreaker.reset();
+
+		assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertFalse(circuitBreaker.record(true));
+	}
+
+	private static CircuitBreaker open(CircuitBreaker circuitBreaker) {
+		while (!circuitBreaker.record(true)) {
+			assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		}
+		return circuitBreaker;
+	}
+}
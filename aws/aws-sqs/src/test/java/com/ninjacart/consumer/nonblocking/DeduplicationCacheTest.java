@@ -0,0 +1,79 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeduplicationCacheTest {
+
+	@Test
+	public void remembersProcessedKeys() {
+		DeduplicationCache cache = new DeduplicationCache(60000, 100);
+
+		assertFalse(cache.contains("message-1"));
+		cache.add("message-1");
+		cache.add("message-1");
+
+		assertTrue(cache.contains("message-1"));
+		assertFalse(cache.contains("message-2"));
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test
+	public void rollsOverGenerationWhenHalfFull() {
+		DeduplicationCache cache = new DeduplicationCache(60000, 4);
+		cache.add("message-1");
+		cache.add("message-2");
+
+		// the full generation becomes the previous one and is still consulted
+		cache.add("message-3");
+		assertTrue(cache.contains("message-1"));
+		assertTrue(cache.contains("message-3"));
+		assertEquals(3, cache.size());
+
+		cache.add("message-4");
+		cache.add("message-5");
+		assertFalse(cache.contains("message-1"));
+		assertFalse(cache.contains("message-2"));
+		assertTrue(cache.contains("message-3"));
+		assertTrue(cache.contains("message-5"));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void rollsOverGenerationAfterWindow() throws InterruptedException {
+		DeduplicationCache cache = new DeduplicationCache(200, 100);
+		cache.add("message-1");
+
+		Thread.sleep(250);
+		// one window later the key is in the previous generation
+		assertTrue(cache.contains("message-1"));
+		cache.add("message-2");
+
+		Thread.sleep(250);
+		assertFalse(cache.contains("message-1"));
+		assertTrue(cache.contains("message-2"));
+	}
+
+	@Test
+	public void forgetsBothGenerationsAfterTwoWindows() throws InterruptedException {
+		DeduplicationCache cache = new DeduplicationCache(50, 100);
+		cache.add("message-1");
+
+		Thread.sleep(110);
+
+		assertFalse(cache.contains("message-1"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void hashNeverReturnsEmptyMarker() {
+		assertNotEquals(0, DeduplicationCache.hash(""));
+		assertNotEquals(DeduplicationCache.hash("message-1"), DeduplicationCache.hash("message-2"));
+	}
+}
@@ -0,0 +1,148 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.Message;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class FifoGroupDispatcherTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final List<String> processed = Collections.synchronizedList(new ArrayList<>());
+	private final List<String> skipped = Collections.synchronizedList(new ArrayList<>());
+
+	@After
+	public void shutdown() {
+		this.executor.shutdownNow();
+	}
+
+	@Test
+	public void processesEachGroupInReceiveOrder() throws InterruptedException {
+		Map<String, AtomicBoolean> groupBusy = new HashMap<>();
+		AtomicBoolean overlapped = new AtomicBoolean();
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < 30; i++) {
+			String group = "group-" + i % 3;
+			groupBusy.put(group, new AtomicBoolean());
+			messages.add(message(group, group + ":" + i / 3));
+		}
+		FifoGroupDispatcher dispatcher = dispatcher(this.executor, 0, (message, receiveTime) -> {
+			AtomicBoolean busy = groupBusy.get(message.getAttributes().get(FifoGroupDispatcher.MESSAGE_GROUP_ID));
+			if (!busy.compareAndSet(false, true)) {
+				overlapped.set(true);
+			}
+			this.processed.add(message.getBody());
+			busy.set(false);
+			return true;
+		});
+
+		dispatcher.dispatch(messages.subList(0, 15), 0);
+		dispatcher.dispatch(messages.subList(15, 30), 0);
+		awaitIdle(dispatcher);
+
+		assertFalse(overlapped.get());
+		assertEquals(30, this.processed.size());
+		for (String group : groupBusy.keySet()) {
+			List<String> groupOrder = new ArrayList<>();
+			for (String body : this.processed) {
+				if (body.startsWith(group + ":")) {
+					groupOrder.add(body.substring(group.length() + 1));
+				}
+			}
+			assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), groupOrder);
+		}
+	}
+
+	@Test
+	public void alternatesBetweenGroupsOfOneWorker() {
+		FifoGroupDispatcher dispatcher = dispatcher(Runnable::run, 1, (message, receiveTime) -> this.processed.add(message.getBody()));
+
+		dispatcher.dispatch(Arrays.asList(message("a", "a1"), message("a", "a2"), message("a", "a3"), message("b", "b1"),
+				message("b", "b2")), 0);
+
+		assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3"), this.processed);
+		assertEquals(0, dispatcher.getPendingGroups());
+		assertEquals(0, dispatcher.getActiveGroups());
+	}
+
+	@Test
+	public void skipsRemainingMessagesOfFailedGroup() {
+		FifoGroupDispatcher dispatcher = dispatcher(Runnable::run, 1, (message, receiveTime) -> {
+			this.processed.add(message.getBody());
+			if (message.getBody().equals("a1")) {
+				throw new IllegalStateException("handler failed");
+			}
+			return !message.getBody().equals("b1");
+		});
+
+		dispatcher.dispatch(Arrays.asList(message("a", "a1"), message("a", "a2"), message("b", "b1"), message("b", "b2"),
+				message("b", "b3"), message("c", "c1"), message("c", "c2")), 0);
+
+		assertEquals(Arrays.asList("a1", "b1", "c1", "c2"), this.processed);
+		assertEquals(Arrays.asList("a2", "b2", "b3"), this.skipped);
+		assertEquals(0, dispatcher.getPendingGroups());
+	}
+
+	@Test
+	public void keepsLanesPendingIfExecutorRejects() {
+		AtomicBoolean reject = new AtomicBoolean(true);
+		FifoGroupDispatcher dispatcher = dispatcher(task -> {
+			if (reject.get()) {
+				throw new RejectedExecutionException("no worker available");
+			}
+			task.run();
+		}, 0, (message, receiveTime) -> this.processed.add(message.getBody()));
+
+		try {
+			dispatcher.dispatch(Arrays.asList(message("a", "a1"), message("b", "b1")), 0);
+			fail("The rejection was not reported");
+		} catch (RejectedExecutionException e) {
+			assertEquals(2, dispatcher.getPendingGroups());
+			assertEquals(0, dispatcher.getActiveGroups());
+		}
+
+		reject.set(false);
+		dispatcher.dispatch(Collections.singletonList(message("a", "a2")), 0);
+
+		assertEquals(Arrays.asList("a1", "a2", "b1"), this.processed);
+		assertEquals(0, dispatcher.getPendingGroups());
+	}
+
+	private FifoGroupDispatcher dispatcher(Executor executor, int maxGroupsInFlight,
+			FifoGroupDispatcher.MessageProcessor messageProcessor) {
+		return new FifoGroupDispatcher(executor, maxGroupsInFlight, messageProcessor, skippedMessages -> {
+			for (Message message : skippedMessages) {
+				this.skipped.add(message.getBody());
+			}
+		}, LoggerFactory.getLogger(FifoGroupDispatcherTest.class));
+	}
+
+	private static void awaitIdle(FifoGroupDispatcher dispatcher) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while ((dispatcher.getPendingGroups() > 0 || dispatcher.getActiveGroups() > 0) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+
+	private static Message message(String groupId, String body) {
+		Message message = new Message().withMessageId(body).withBody(body);
+		message.addAttributesEntry(FifoGroupDispatcher.MESSAGE_GROUP_ID, groupId);
+		return message;
+	}
+}
@@ -0,0 +1,69 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightMessagesTest {
+
+	@Test
+	public void countsMessagesInFlight() {
+		InFlightMessages inFlightMessages = new InFlightMessages();
+
+		inFlightMessages.started(10);
+		inFlightMessages.completed(3);
+		inFlightMessages.completed(1);
+
+		assertEquals(6, inFlightMessages.getInFlight());
+	}
+
+	@Test
+	public void takesReturnedMessagesOnce() {
+		InFlightMessages inFlightMessages = new InFlightMessages();
+
+		inFlightMessages.returned(2);
+		inFlightMessages.returned(3);
+
+		assertEquals(5, inFlightMessages.takeReturned());
+		assertEquals(0, inFlightMessages.takeReturned());
+	}
+
+	@Test
+	public void awaitsCompletionOfAllMessages() throws Exception {
+		InFlightMessages inFlightMessages = new InFlightMessages();
+		inFlightMessages.started(2);
+
+		CompletableFuture<Integer> drained = CompletableFuture.supplyAsync(() -> {
+			try {
+				return inFlightMessages.awaitCompletion(5000);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		inFlightMessages.completed(1);
+		Thread.sleep(20);
+		inFlightMessages.completed(1);
+
+		assertEquals(0, (int) drained.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void reportsMessagesStillInFlightAfterTimeout() throws InterruptedException {
+		InFlightMessages inFlightMessages = new InFlightMessages();
+		inFlightMessages.started(3);
+		inFlightMessages.completed(1);
+
+		long start = System.currentTimeMillis();
+		assertEquals(2, inFlightMessages.awaitCompletion(50));
+		assertTrue(System.currentTimeMillis() - start >= 50);
+	}
+
+	@Test
+	public void returnsRightAwayWithoutMessagesInFlight() throws InterruptedException {
+		assertEquals(0, new InFlightMessages().awaitCompletion(5000));
+	}
+}
@@ -0,0 +1,129 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AbstractAmazonSQSAsync;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cloud.aws.messaging.listener.QueueMessageHandler;
+import org.springframework.cloud.aws.messaging.listener.SqsMessageDeletionPolicy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertTrue;
+
+public class NonBlockingMessageListenerContainerTest {
+
+	private static final String BUSY_QUEUE_URL = "https://sqs.local/000000000000/busy";
+	private static final String IDLE_QUEUE_URL = "https://sqs.local/000000000000/idle";
+	private static final int BATCH_SIZE = 2;
+
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+	private final BlockingContainer container = new BlockingContainer();
+
+	@After
+	public void shutdown() {
+		this.release.countDown();
+		this.container.destroy();
+		this.taskExecutor.shutdown();
+	}
+
+	@Test
+	public void weightedQueueRunsMoreThanOneReceiveBatch() throws Exception {
+		this.taskExecutor.setCorePoolSize(16);
+		this.taskExecutor.setMaxPoolSize(16);
+		this.taskExecutor.setQueueCapacity(0);
+		this.taskExecutor.afterPropertiesSet();
+		Map<String, Integer> queueWeights = new HashMap<>();
+		queueWeights.put("busy", 3);
+		queueWeights.put("idle", 1);
+
+		this.container.setAmazonSqs(new StubSqs());
+		this.container.setMessageHandler(new QueueMessageHandler());
+		this.container.setTaskExecutor(this.taskExecutor);
+		this.container.setQueueStopTimeout(2000);
+		this.container.setMaxInFlightMessages(8);
+		this.container.setQueueWeights(queueWeights);
+		this.container.register("busy", BUSY_QUEUE_URL);
+		this.container.register("idle", IDLE_QUEUE_URL);
+		this.container.afterPropertiesSet();
+		this.container.start();
+
+		// the busy queue is guaranteed 6 of the 8 in-flight messages, three receive batches
+		long deadline = System.currentTimeMillis() + 5000;
+		while (this.maxRunning.get() < 6 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertTrue("at most " + this.maxRunning.get() + " messages ran at once", this.maxRunning.get() >= 6);
+	}
+
+	private class BlockingContainer extends NonBlockingMessageListenerContainer {
+
+		void register(String logicalQueueName, String queueUrl) {
+			getRegisteredQueues().put(logicalQueueName,
+					new QueueAttributes(false, SqsMessageDeletionPolicy.NEVER, queueUrl, BATCH_SIZE, null, null));
+		}
+
+		@Override
+		protected void executeMessage(org.springframework.messaging.Message<String> stringMessage) {
+			int nowRunning = NonBlockingMessageListenerContainerTest.this.running.incrementAndGet();
+			NonBlockingMessageListenerContainerTest.this.maxRunning.accumulateAndGet(nowRunning, Math::max);
+			try {
+				NonBlockingMessageListenerContainerTest.this.release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				NonBlockingMessageListenerContainerTest.this.running.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Fills every receive of the busy queue, the idle queue never has messages.
+	 */
+	private static class StubSqs extends AbstractAmazonSQSAsync {
+
+		private final AtomicInteger messageIds = new AtomicInteger();
+
+		@Override
+		public ReceiveMessageResult receiveMessage(ReceiveMessageRequest receiveMessageRequest) {
+			List<Message> messages = new ArrayList<>();
+			if (BUSY_QUEUE_URL.equals(receiveMessageRequest.getQueueUrl())) {
+				for (int i = 0; i < receiveMessageRequest.getMaxNumberOfMessages(); i++) {
+					String messageId = Integer.toString(this.messageIds.incrementAndGet());
+					messages.add(new Message().withMessageId(messageId).withReceiptHandle("receipt-" + messageId).withBody("{}"));
+				}
+			} else {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return new ReceiveMessageResult().withMessages(messages);
+		}
+
+		@Override
+		public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(ChangeMessageVisibilityBatchRequest request,
+				AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+			return CompletableFuture.completedFuture(new ChangeMessageVisibilityBatchResult());
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QueueParkingTest {
+
+	@Test
+	public void idleWakeUpEndsParking() throws Exception {
+		QueueParking queueParking = new QueueParking();
+		CompletableFuture<Boolean> parked = wait(queueParking, true);
+
+		queueParking.wakeUpIdle();
+
+		assertTrue(parked.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void idleWakeUpDoesNotEndBackOff() throws Exception {
+		QueueParking queueParking = new QueueParking();
+		long start = System.currentTimeMillis();
+		CompletableFuture<Boolean> backingOff = wait(queueParking, false);
+
+		queueParking.wakeUpIdle();
+
+		assertFalse(backingOff.get(5, TimeUnit.SECONDS));
+		assertTrue(System.currentTimeMillis() - start >= 500);
+	}
+
+	@Test
+	public void wakeUpEndsBackOff() throws Exception {
+		QueueParking queueParking = new QueueParking();
+		CompletableFuture<Boolean> backingOff = wait(queueParking, false);
+
+		queueParking.wakeUp();
+
+		assertTrue(backingOff.get(5, TimeUnit.SECONDS));
+	}
+
+	private static CompletableFuture<Boolean> wait(QueueParking queueParking, boolean idle) throws InterruptedException {
+		CompletableFuture<Boolean> woken = new CompletableFuture<>();
+		Thread poller = new Thread(() -> {
+			try {
+				woken.complete(idle ? queueParking.park(500) : queueParking.backOff(500));
+			} catch (InterruptedException e) {
+				woken.completeExceptionally(e);
+			}
+		});
+		poller.start();
+		// the poller holds the monitor only until it waits
+		while (poller.getState() != Thread.State.TIMED_WAITING && !woken.isDone()) {
+			Thread.sleep(1);
+		}
+		return woken;
+	}
+}
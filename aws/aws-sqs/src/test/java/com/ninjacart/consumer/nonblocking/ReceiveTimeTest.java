@@ -0,0 +1,48 @@
+package com.example.consumer.nonblocking;
+
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReceiveTimeTest {
+
+	@Test
+	public void startsVisibilityTimeoutWhenLongPollReturns() throws InterruptedException {
+		// a visibility timeout of one second and a long poll that returns after one and a half seconds
+		VisibilityTimeoutExtender visibilityTimeoutExtender = new VisibilityTimeoutExtender(null, "queue", 1,
+				LoggerFactory.getLogger(ReceiveTimeTest.class));
+		ReceiveTime receiveTime = new ReceiveTime();
+		long sendTime = System.currentTimeMillis();
+		Thread longPoll = new Thread(() -> {
+			try {
+				Thread.sleep(1500);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			receiveTime.onSuccess(new ReceiveMessageRequest(), new ReceiveMessageResult());
+		});
+		longPoll.start();
+		longPoll.join();
+
+		visibilityTimeoutExtender.track("received", receiveTime.get());
+		visibilityTimeoutExtender.track("sent", sendTime);
+		visibilityTimeoutExtender.extendExpiringMessages();
+
+		assertTrue(receiveTime.get() - sendTime >= 1500);
+		// only the message tracked from the send of the receive looks expired
+		assertEquals(1, visibilityTimeoutExtender.getInFlightMessages());
+	}
+
+	@Test
+	public void usesCurrentTimeBeforeHandlerRan() throws InterruptedException {
+		ReceiveTime receiveTime = new ReceiveTime();
+		long before = System.currentTimeMillis();
+		Thread.sleep(20);
+
+		assertTrue(receiveTime.get() >= before + 20);
+	}
+}
@@ -0,0 +1,105 @@
+package com.example.consumer.nonblocking;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedSlotAllocatorTest {
+
+	@Test
+	public void sharesCapacityByWeight() {
+		WeightedSlotAllocator allocator = allocator(10, "orders", 3, "reports", 1, "audit", 0);
+
+		assertEquals(7, allocator.getGuaranteed("orders"));
+		assertEquals(2, allocator.getGuaranteed("reports"));
+		assertEquals(0, allocator.getGuaranteed("audit"));
+	}
+
+	@Test
+	public void guaranteesAtLeastOnePermitToWeightedQueues() {
+		WeightedSlotAllocator allocator = allocator(10, "orders", 100, "reports", 1);
+
+		assertEquals(9, allocator.getGuaranteed("orders"));
+		assertEquals(1, allocator.getGuaranteed("reports"));
+	}
+
+	@Test
+	public void borrowsCapacityOfIdleQueues() throws InterruptedException {
+		WeightedSlotAllocator allocator = allocator(10, "orders", 1, "reports", 1);
+
+		assertEquals(10, allocator.acquire("orders", 20, 0));
+		assertEquals(0, allocator.acquire("reports", 5, 0));
+		assertEquals(10, allocator.getInUse("orders"));
+	}
+
+	@Test
+	public void unweightedQueuesOnlyUseIdleCapacity() throws InterruptedException {
+		WeightedSlotAllocator allocator = allocator(10, "orders", 1, "audit", 0);
+
+		assertEquals(4, allocator.acquire("audit", 4, 0));
+		assertEquals(6, allocator.acquire("orders", 10, 0));
+		assertEquals(0, allocator.acquire("audit", 1, 0));
+	}
+
+	@Test
+	public void holdsReleasedPermitsBackForWaitingQueue() throws Exception {
+		WeightedSlotAllocator allocator = allocator(10, "orders", 1, "reports", 1);
+		assertEquals(10, allocator.acquire("orders", 10, 0));
+
+		CompletableFuture<Integer> reports = acquireInBackground(allocator, "reports", 5);
+
+		allocator.release("orders", 2);
+		// orders is beyond its share, so the released permits belong to the waiting queue
+		assertEquals(0, allocator.acquire("orders", 2, 0));
+		assertEquals(2, (int) reports.get(5, TimeUnit.SECONDS));
+		assertEquals(2, allocator.getInUse("reports"));
+
+		allocator.release("orders", 8);
+		assertEquals(5, allocator.acquire("orders", 5, 0));
+		assertEquals(3, allocator.acquire("reports", 5, 0));
+	}
+
+	@Test
+	public void givesUpAfterWaitTime() throws InterruptedException {
+		WeightedSlotAllocator allocator = allocator(2, "orders", 1, "reports", 1);
+		assertEquals(2, allocator.acquire("orders", 2, 0));
+
+		long start = System.currentTimeMillis();
+		assertEquals(0, allocator.acquire("reports", 1, 50));
+		assertTrue(System.currentTimeMillis() - start >= 50);
+	}
+
+	/**
+	 * @return the permits acquired by a thread that is waiting for them when this method returns
+	 */
+	private static CompletableFuture<Integer> acquireInBackground(WeightedSlotAllocator allocator, String queue,
+			int wantedPermits) throws InterruptedException {
+		CompletableFuture<Integer> acquired = new CompletableFuture<>();
+		Thread thread = new Thread(() -> {
+			try {
+				acquired.complete(allocator.acquire(queue, wantedPermits, 5000));
+			} catch (InterruptedException e) {
+				acquired.completeExceptionally(e);
+			}
+		});
+		thread.start();
+		while (thread.getState() != Thread.State.TIMED_WAITING && !acquired.isDone()) {
+			Thread.sleep(1);
+		}
+		return acquired;
+	}
+
+	private static WeightedSlotAllocator allocator(int capacity, Object... weights) {
+		Map<String, Integer> weightByQueue = new HashMap<>();
+		for (int i = 0; i < weights.length; i += 2) {
+			weightByQueue.put((String) weights[i], (Integer) weights[i + 1]);
+		}
+		return new WeightedSlotAllocator(capacity, weightByQueue);
+	}
+}
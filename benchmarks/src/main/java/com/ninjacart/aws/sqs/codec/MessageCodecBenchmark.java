@@ -0,0 +1,93 @@
+package com.example.aws.sqs.codec;
+
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresses and decompresses JSON order payloads of growing size with every default codec. The compressed size,
+ * Base64 included, is printed once per trial, so the output shows the ratio behind the default threshold next to
+ * the time it costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageCodecBenchmark {
+
+	@Param({"1", "10", "100"})
+	private int orders;
+
+	@Param({GzipMessageCodec.NAME, DeflateMessageCodec.NAME})
+	private String codec;
+
+	private MessageCompressor compressor;
+	private String body;
+	private String compressedBody;
+	private Map<String, MessageAttributeValue> compressedAttributes;
+
+	@Setup
+	public void setUp() {
+		// threshold 0, so the smallest payload shows what compressing it would cost
+		compressor = new MessageCompressor(MessageCompressor.defaultCodecs(), codec, 0);
+		body = orders(orders);
+		compressedAttributes = new HashMap<>();
+		compressedBody = compressor.compress(body, compressedAttributes);
+		int size = body.getBytes(StandardCharsets.UTF_8).length;
+		System.out.printf("%n%s, %d orders: %d bytes, compressed %d bytes (%d%%)%s%n", codec, orders, size,
+				compressedBody.length(), compressedBody.length() * 100 / size,
+				compressedAttributes.isEmpty() ? ", sent uncompressed" : "");
+	}
+
+	@Benchmark
+	public String compress() {
+		return compressor.compress(body, new HashMap<>());
+	}
+
+	@Benchmark
+	public String decompress() throws IOException {
+		return compressor.decompress(compressedBody, compressedAttributes);
+	}
+
+	private static String orders(int count) {
+		StringBuilder json = new StringBuilder("[");
+		for(int i = 0; i < count; i++) {
+			if(i > 0) {
+				json.append(',');
+			}
+			json.append("{\"orderId\":").append(100000 + i)
+					.append(",\"customerId\":").append(5000 + i % 97)
+					.append(",\"facilityId\":").append(i % 7)
+					.append(",\"status\":\"").append(i % 3 == 0 ? "CONFIRMED" : "PENDING").append('"')
+					.append(",\"createdAt\":\"2018-06-").append(10 + i % 18).append("T10:").append(10 + i % 50).append(":00Z\"")
+					.append(",\"items\":[");
+			for(int item = 0; item < 3; item++) {
+				if(item > 0) {
+					json.append(',');
+				}
+				json.append("{\"skuId\":").append(2000 + (i * 3 + item) % 211)
+						.append(",\"quantity\":").append(1 + (i + item) % 9)
+						.append(",\"unitPrice\":").append(10 + (i * 7 + item) % 90).append(".50}");
+			}
+			json.append("]}");
+		}
+		return json.append(']').toString();
+	}
+}
@@ -0,0 +1,122 @@
+package com.example.aws.sqs.converter;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.MethodParameter;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts an order with three items the way a listener receives it and a publisher sends it. The plain converter
+ * is configured like the handler converter before {@link CachingJackson2MessageConverter} replaced it, indented
+ * output included. Run with {@code -prof gc} to compare the allocation per message as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageConverterBenchmark {
+
+	private MappingJackson2MessageConverter plainConverter;
+	private CachingJackson2MessageConverter cachingConverter;
+	private MethodParameter orderParameter;
+	private Order order;
+	private Message<?> plainMessage;
+	private Message<?> cachingMessage;
+
+	@Setup
+	public void setUp() throws NoSuchMethodException {
+		plainConverter = new MappingJackson2MessageConverter();
+		plainConverter.setObjectMapper(new ObjectMapper()
+				.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+				.registerModule(new JavaTimeModule())
+				.enable(SerializationFeature.INDENT_OUTPUT));
+		plainConverter.setSerializedPayloadClass(String.class);
+		plainConverter.setStrictContentTypeMatch(false);
+
+		cachingConverter = new CachingJackson2MessageConverter(new ObjectMapper()
+				.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+				.registerModule(new JavaTimeModule()));
+		cachingConverter.setStrictContentTypeMatch(false);
+
+		orderParameter = new MethodParameter(OrderListener.class.getMethod("onOrder", Order.class), 0);
+		order = order();
+		plainMessage = plainConverter.toMessage(order, null);
+		cachingMessage = cachingConverter.toMessage(order, null);
+	}
+
+	@Benchmark
+	public Message<?> writePlain() {
+		return plainConverter.toMessage(order, null);
+	}
+
+	@Benchmark
+	public Message<?> writeCaching() {
+		return cachingConverter.toMessage(order, null);
+	}
+
+	@Benchmark
+	public Object readPlain() {
+		return plainConverter.fromMessage(plainMessage, Order.class, orderParameter);
+	}
+
+	@Benchmark
+	public Object readCaching() {
+		return cachingConverter.fromMessage(cachingMessage, Order.class, orderParameter);
+	}
+
+	private static Order order() {
+		Order order = new Order();
+		order.orderId = 100042;
+		order.customerId = 5017;
+		order.status = "CONFIRMED";
+		order.createdAt = Instant.parse("2018-06-12T10:15:30Z");
+		order.items = new ArrayList<>();
+		for(int i = 0; i < 3; i++) {
+			OrderItem item = new OrderItem();
+			item.skuId = 2000 + i;
+			item.quantity = 1 + i;
+			item.unitPrice = 10.5 * (i + 1);
+			order.items.add(item);
+		}
+		return order;
+	}
+
+	public static class Order {
+		public long orderId;
+		public long customerId;
+		public String status;
+		public Instant createdAt;
+		public List<OrderItem> items;
+	}
+
+	public static class OrderItem {
+		public long skuId;
+		public int quantity;
+		public double unitPrice;
+	}
+
+	public static class OrderListener {
+		public void onOrder(Order order) {
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.example.consumer.nonblocking;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs pollers on platform and on virtual threads that compete for the free worker slots of a queue the way the
+ * pollers of the container do: a poller takes a slot, or waits for one to be released, handles a message with a
+ * simulated blocking call and releases the slot again. The virtual variant requires a Java 21 or later runtime.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PollerThreadsBenchmark {
+
+	private static final int SLOTS = 64;
+	private static final int MESSAGES_PER_POLLER = 20;
+	private static final long BLOCKING_CALL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Param({"platform", "virtual"})
+	private String threads;
+
+	@Param({"16", "256", "1024"})
+	private int pollers;
+
+	private ExecutorService platformExecutor;
+	private VirtualThreadTaskExecutor virtualExecutor;
+	private AvailableSlots availableSlots;
+
+	@Setup
+	public void setUp() {
+		if ("virtual".equals(threads)) {
+			virtualExecutor = new VirtualThreadTaskExecutor("benchmark-poller-");
+		} else {
+			platformExecutor = Executors.newFixedThreadPool(pollers);
+		}
+		availableSlots = new AvailableSlots(SLOTS);
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (virtualExecutor != null) {
+			virtualExecutor.destroy();
+		}
+		if (platformExecutor != null) {
+			platformExecutor.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	public void pollers() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(pollers);
+		for (int i = 0; i < pollers; i++) {
+			Runnable poller = () -> {
+				try {
+					for (int message = 0; message < MESSAGES_PER_POLLER; message++) {
+						reserveSlot();
+						LockSupport.parkNanos(BLOCKING_CALL_NANOS);
+						availableSlots.incrementAndGet();
+						availableSlots.signalRelease();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			};
+			if (virtualExecutor != null) {
+				virtualExecutor.execute(poller);
+			} else {
+				platformExecutor.execute(poller);
+			}
+		}
+		done.await();
+	}
+
+	private void reserveSlot() throws InterruptedException {
+		while (true) {
+			int slots = availableSlots.get();
+			if (slots > 0) {
+				if (availableSlots.compareAndSet(slots, slots - 1)) {
+					return;
+				}
+			} else {
+				availableSlots.awaitRelease(10);
+			}
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.example.example.controller;
 import com.example.example.s3.S3Upload;
 import com.example.example.sqs.Publisher;
 import com.example.example.sqs.SqsSampleMessage;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
@@ -10,7 +11,12 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
+@Slf4j
 @Controller
 @RequestMapping (value = "event")
 public class ExampleController {
@@ -22,9 +28,27 @@ public class ExampleController {
 
     @RequestMapping (value = "/publish", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseBody
-    public ApiResponse<String> messagePublish(@RequestBody SqsSampleMessage payload) {
-        publisher.publish(payload);
-        return ApiResponse.<String>builder().data("Message Published").build();
+    public CompletableFuture<ApiResponse<String>> messagePublish(@RequestBody SqsSampleMessage payload) {
+        return publisher.publishAsync(payload).handle((result, throwable) -> {
+            if (throwable != null) {
+                return publishFailure(throwable instanceof CompletionException ? throwable.getCause() : throwable);
+            }
+            return result.isSuccessful()
+                    ? ApiResponse.<String>builder().data("Message Published").build()
+                    : ApiResponse.<String>builder().errorCode(result.getErrorCode()).errorResponse(result.getErrorMessage()).success(false).build();
+        });
+    }
+
+    /**
+     * The future fails if the message was not sent at all: rejected by the backpressure policy or the rate limit,
+     * the claim-check upload failed or the publishing thread was interrupted
+     */
+    private ApiResponse<String> publishFailure(Throwable cause) {
+        if (cause instanceof RejectedExecutionException) {
+            return ApiResponse.<String>builder().errorCode("PUBLISH_REJECTED").errorResponse(cause.getMessage()).success(false).build();
+        }
+        log.error("Unable to publish message", cause);
+        return ApiResponse.<String>builder().errorCode("PUBLISH_FAILED").errorResponse("Unable to publish message").success(false).build();
     }
 
 
@@ -39,9 +63,8 @@ public class ExampleController {
     @PostMapping ("/upload")
     @ResponseBody
     public ApiResponse<String> singleFileUpload(@RequestParam ("file") MultipartFile file) throws Exception {
-        try {
-            byte[] bytes = file.getBytes();
-            return ApiResponse.<String>builder().data(s3Upload.upload(bytes, file.getName())).build();
+        try (InputStream inputStream = file.getInputStream()) {
+            return ApiResponse.<String>builder().data(s3Upload.upload(inputStream, file.getSize(), file.getName())).build();
         } catch (Exception e) {
             e.printStackTrace();
             return ApiResponse.<String>builder().errorCode("TEST").errorResponse("Unable to upload").success(false).build();
@@ -5,6 +5,8 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+
 @Service
 @Slf4j
 public class S3Upload {
@@ -15,5 +17,9 @@ public class S3Upload {
        return awsS3Service.upload("test",fileName,fileBytes,"application/css");
     }
 
+    public String upload(InputStream fileStream,long size,String fileName) throws Exception {
+       return awsS3Service.upload("test",fileName,fileStream,size,"application/css");
+    }
+
 
 }
@@ -1,9 +1,12 @@
 package com.example.example.sqs;
 
 import com.example.aws.sqs.service.QueuePublisher;
+import com.example.aws.sqs.service.SendResult;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class Publisher {
     @Autowired
@@ -17,6 +20,14 @@ public class Publisher {
         queuePublisher.sendMessageToQueue(QueueNames.TEST_QUEUE,sqsSampleMessage);
     }
 
+    /**
+     * Messages will be visible in the queue instantly. Does not wait for SQS to accept the message
+     * @param sqsSampleMessage
+     */
+    public CompletableFuture<SendResult<SqsSampleMessage>> publishAsync(SqsSampleMessage sqsSampleMessage){
+        return queuePublisher.sendMessageToQueueAsync(QueueNames.TEST_QUEUE,sqsSampleMessage);
+    }
+
     /**
      * Messages will be available in queue after delay. Max delay supported by aws sqs is 15 minutes
      * @param sqsSampleMessage